@@ -0,0 +1,19 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+//All callbacks are made on the connection's writer thread.
+public interface FileTransferListener {
+
+    void onTransferProgress(long transferredBytes, long totalBytes);
+
+    void onTransferComplete(long transferredBytes);
+
+    void onTransferCancelled(long transferredBytes);
+
+    void onTransferError(TRANSFER_ERROR transfer_error, long transferredBytes);
+
+    enum TRANSFER_ERROR {
+        FILE_ERROR,
+        CONNECTION_ERROR,
+        NOT_CONNECTED
+    }
+}
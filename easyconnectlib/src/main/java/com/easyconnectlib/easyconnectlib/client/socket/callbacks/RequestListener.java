@@ -0,0 +1,10 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+import java.nio.ByteBuffer;
+
+//Requests sent by the peer. Answer with RequestCorrelator.respond, passing the same correlation id.
+//Called on the connection's reader thread, payload is only valid during the call.
+public interface RequestListener {
+
+    void onRequestReceived(int correlationId, ByteBuffer payload);
+}
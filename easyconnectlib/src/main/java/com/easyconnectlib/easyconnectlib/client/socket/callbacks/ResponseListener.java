@@ -0,0 +1,19 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+import java.nio.ByteBuffer;
+
+//Callbacks are made on the executor passed to ResponseFuture.addListener, or on the thread that finished the request.
+public interface ResponseListener {
+
+    void onResponse(ByteBuffer response);
+
+    void onRequestError(REQUEST_ERROR request_error);
+
+    enum REQUEST_ERROR {
+        INTERNAL_ERROR,
+        CONNECTION_ERROR,
+        NOT_CONNECTED,
+        TIME_OUT,
+        CANCELLED
+    }
+}
@@ -17,6 +17,7 @@ public interface SocketConnectionListener {
     enum SOCKET_ERROR {
         INTERNAL_ERROR,
         CONNECTION_ERROR,
-        NOT_CONNECTED
+        NOT_CONNECTED,
+        TIME_OUT
     }
 }
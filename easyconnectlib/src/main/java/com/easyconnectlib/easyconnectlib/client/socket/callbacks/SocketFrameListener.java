@@ -0,0 +1,9 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+import java.nio.ByteBuffer;
+
+public interface SocketFrameListener {
+
+    //frameBuffer holds exactly one frame between its position and limit and is only valid during this call.
+    void onFrameReceived(ByteBuffer frameBuffer);
+}
@@ -0,0 +1,7 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+public interface TextRecordListener {
+
+    //record holds one record without its delimiter and is only valid during this call, toString() keeps a copy.
+    void onRecordReceived(CharSequence record);
+}
@@ -0,0 +1,8 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+//Optional, registered on its own so implementers of the other listeners are not forced to handle it.
+public interface WritabilityListener {
+
+    //false once the outbound queue passes its high water mark, true again once it drained to the low water mark.
+    void onWritabilityChanged(boolean isWritable);
+}
@@ -0,0 +1,18 @@
+package com.easyconnectlib.easyconnectlib.client.callbacks;
+
+//Callbacks are made on the executor passed to WriteFuture.addListener, or on the writer thread if none was given.
+public interface WriteListener {
+
+    void onWriteComplete(int writtenBytes);
+
+    void onWriteCancelled();
+
+    void onWriteError(WRITE_ERROR write_error, int writtenBytes);
+
+    enum WRITE_ERROR {
+        INTERNAL_ERROR,
+        CONNECTION_ERROR,
+        NOT_CONNECTED,
+        QUEUE_FULL
+    }
+}
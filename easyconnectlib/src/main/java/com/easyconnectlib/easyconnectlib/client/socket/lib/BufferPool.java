@@ -0,0 +1,156 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import android.util.Log;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Pool of ByteBuffers in power of two size classes from 64 bytes to 64 KB. Larger requests are allocated and never pooled.
+//Once warmed up acquire() and release() do not allocate unless leak detection is enabled.
+public class BufferPool {
+
+    private static final String TAG = BufferPool.class.getSimpleName();
+    public static final int MIN_POOLED_SIZE = 64;
+    public static final int MAX_POOLED_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_BUFFERS_PER_CLASS = 32;
+    private static final int MIN_SIZE_SHIFT = 6;
+    private static final BufferPool DIRECT_POOL = new BufferPool(true, DEFAULT_MAX_BUFFERS_PER_CLASS);
+    private static final BufferPool HEAP_POOL = new BufferPool(false, DEFAULT_MAX_BUFFERS_PER_CLASS);
+
+    private final boolean isDirect;
+    private final SizeClass[] mSizeClasses;
+    private final AtomicLong mAllocationCount = new AtomicLong();
+    private volatile boolean isLeakDetectionEnabled;
+    private final ReferenceQueue<PooledBuffer> mLeakQueue = new ReferenceQueue<>();
+    private final Set<LeakRecord> mLeakRecords = Collections.synchronizedSet(new HashSet<LeakRecord>());
+
+    public BufferPool(boolean direct, int maxBuffersPerClass) {
+        isDirect = direct;
+        mSizeClasses = new SizeClass[sizeClassIndex(MAX_POOLED_SIZE) + 1];
+        for (int i = 0; i < mSizeClasses.length; i++) {
+            mSizeClasses[i] = new SizeClass(maxBuffersPerClass);
+        }
+    }
+
+    public static BufferPool getDirectPool() {
+        return DIRECT_POOL;
+    }
+
+    public static BufferPool getHeapPool() {
+        return HEAP_POOL;
+    }
+
+    public boolean isDirect() {
+        return isDirect;
+    }
+
+    //Records the acquiring stack of every lease and logs leases that were garbage collected without being released.
+    public void setLeakDetectionEnabled(boolean enabled) {
+        isLeakDetectionEnabled = enabled;
+    }
+
+    //Number of buffers this pool had to allocate, stays flat once the pool is warm.
+    public long getAllocationCount() {
+        return mAllocationCount.get();
+    }
+
+    //Returns a lease whose buffer is cleared with its limit set to capacity.
+    public PooledBuffer acquire(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        }
+        if (isLeakDetectionEnabled) {
+            reportLeaks();
+        }
+        PooledBuffer pooledBuffer;
+        if (capacity > MAX_POOLED_SIZE) {
+            pooledBuffer = new PooledBuffer(this, allocate(capacity), -1);
+        } else {
+            int sizeClass = sizeClassIndex(capacity);
+            pooledBuffer = mSizeClasses[sizeClass].poll();
+            if (pooledBuffer == null) {
+                pooledBuffer = new PooledBuffer(this, allocate(MIN_POOLED_SIZE << sizeClass), sizeClass);
+            }
+        }
+        pooledBuffer.init(capacity);
+        if (isLeakDetectionEnabled) {
+            LeakRecord leakRecord = new LeakRecord(pooledBuffer, mLeakQueue, capacity);
+            pooledBuffer.mLeakRecord = leakRecord;
+            mLeakRecords.add(leakRecord);
+        }
+        return pooledBuffer;
+    }
+
+    void recycle(PooledBuffer pooledBuffer) {
+        LeakRecord leakRecord = pooledBuffer.mLeakRecord;
+        if (leakRecord != null) {
+            pooledBuffer.mLeakRecord = null;
+            leakRecord.clear();
+            mLeakRecords.remove(leakRecord);
+        }
+        if (pooledBuffer.getSizeClass() >= 0) {
+            mSizeClasses[pooledBuffer.getSizeClass()].offer(pooledBuffer);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        mAllocationCount.incrementAndGet();
+        return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private void reportLeaks() {
+        LeakRecord leakRecord;
+        while ((leakRecord = (LeakRecord) mLeakQueue.poll()) != null) {
+            if (mLeakRecords.remove(leakRecord)) {
+                Log.e(TAG, "Buffer of " + leakRecord.mCapacity + " bytes was garbage collected without release()", leakRecord.mAcquireTrace);
+            }
+        }
+    }
+
+    private static int sizeClassIndex(int capacity) {
+        if (capacity <= MIN_POOLED_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SIZE_SHIFT;
+    }
+
+    static final class LeakRecord extends WeakReference<PooledBuffer> {
+        private final Throwable mAcquireTrace;
+        private final int mCapacity;
+
+        private LeakRecord(PooledBuffer pooledBuffer, ReferenceQueue<PooledBuffer> leakQueue, int capacity) {
+            super(pooledBuffer, leakQueue);
+            mAcquireTrace = new Throwable("Buffer acquired here");
+            mCapacity = capacity;
+        }
+    }
+
+    private static final class SizeClass {
+        private final PooledBuffer[] mFreeBuffers;
+        private int mFreeCount;
+
+        private SizeClass(int maxBuffers) {
+            mFreeBuffers = new PooledBuffer[maxBuffers];
+        }
+
+        private synchronized PooledBuffer poll() {
+            if (mFreeCount == 0) {
+                return null;
+            }
+            PooledBuffer pooledBuffer = mFreeBuffers[--mFreeCount];
+            mFreeBuffers[mFreeCount] = null;
+            return pooledBuffer;
+        }
+
+        private synchronized void offer(PooledBuffer pooledBuffer) {
+            if (mFreeCount < mFreeBuffers.length) {
+                mFreeBuffers[mFreeCount++] = pooledBuffer;
+            }
+        }
+    }
+}
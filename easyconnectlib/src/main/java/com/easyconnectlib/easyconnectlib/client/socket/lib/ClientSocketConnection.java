@@ -2,28 +2,121 @@ package com.easyconnectlib.easyconnectlib.client.socket.lib;
 
 import android.util.Log;
 
+import com.easyconnectlib.easyconnectlib.client.callbacks.FileTransferListener;
 import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.TextRecordListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.WritabilityListener;
+import com.easyconnectlib.easyconnectlib.metrics.ConnectionMetrics;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.Callable;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLPeerUnverifiedException;
 
 public class ClientSocketConnection {
 
     private final String TAG = ClientSocketConnection.class.getSimpleName();
-    public static final int READ_TIMEOUT = 100;
     public static final int READ_BUFFER_SIZE = 10 * 1024;
-    private SocketChannel mSocketChannel;
+    public static final int FILE_TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+    public static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    //Delay between two connect attempts to different addresses of the same host, as recommended by RFC 8305.
+    public static final long CONNECTION_ATTEMPT_DELAY_MILLIS = 250;
+    //Kept below IOV_MAX so one gathering write maps to a single writev call.
+    public static final int MAX_BATCH_BUFFERS = 64;
+    //Fastest zlib level, small repetitive payloads gain little from the slower ones.
+    public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    private volatile SocketChannel mSocketChannel;
+    private volatile Selector mReadSelector;
+    private volatile WriteData mWriteData;
     private SocketConnectionListener mSocketConnectionListener;
-    private boolean isConnectToSocketRunning;
-    private boolean isReadThreadRunning = true;
+    private volatile WritabilityListener mWritabilityListener;
+    private volatile SocketFrameListener mSocketFrameListener;
+    private volatile LengthFieldFrameCodec mFrameCodec;
+    private volatile TextRecordListener mTextRecordListener;
+    private volatile StreamingTextDecoder mRecordDecoder;
+    private final FrameCompressor mFrameCompressor = new FrameCompressor();
+    private final ConnectionMetrics mMetrics = new ConnectionMetrics();
+    private volatile BufferPool mBufferPool = BufferPool.getDirectPool();
+    private volatile FlushPolicy mFlushPolicy = FlushPolicy.immediate();
+    private volatile int mLowWaterMark = DEFAULT_LOW_WATER_MARK;
+    private volatile int mHighWaterMark = DEFAULT_HIGH_WATER_MARK;
+    private volatile long mMaxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+    private volatile OverflowPolicy mOverflowPolicy = OverflowPolicy.REJECT;
+    private volatile long mHeartbeatIntervalMillis;
+    private volatile int mMaxMissedHeartbeats;
+    private volatile Heartbeat mHeartbeat;
+    private volatile long mSmoothedRttNanos = -1;
+    private volatile long mRttVariationNanos = -1;
+    private volatile SSLContext mSslContext;
+    private volatile HostnameVerifier mHostnameVerifier;
+    private volatile TlsSession mTlsSession;
+    private volatile ReceiveMode mReceiveMode = ReceiveMode.TEXT;
+    private volatile Charset mReceiveCharset = Charset.defaultCharset();
+    private static final ThreadLocal<CharsetEncoder> sCharsetEncoder = new ThreadLocal<>();
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    private final AtomicReference<ConnectTask> mConnectTask = new AtomicReference<>();
+    //Writes that were queued but not started when the connection dropped, handed to the writer of the next one.
+    private final ArrayDeque<WriteRequest> mUnsentRequests = new ArrayDeque<>();
+    private volatile boolean isRetainUnsentWrites;
+    private volatile boolean isReadThreadRunning = true;
+
+    public enum ReceiveMode {
+        //onDataReceived gets the buffer and the bytes decoded as a String. A character split across two reads is
+        //kept until the rest of it arrives.
+        TEXT,
+        //onDataReceived gets a read-only view of the buffer and a null String, nothing is decoded or logged.
+        BINARY
+    }
+
+    //What a write does when the outbound queue already holds more than the max queued bytes.
+    public enum OverflowPolicy {
+        //The caller waits until the queue has drained to the low water mark. Never blocks the writer thread itself.
+        BLOCK,
+        //The oldest writes not yet started are cancelled to make room.
+        DROP_OLDEST,
+        //The new write fails at once with WriteQueueFullException.
+        REJECT
+    }
 
     public ClientSocketConnection() {
         mSocketConnectionListener = null;
@@ -41,48 +134,260 @@ public class ClientSocketConnection {
         mSocketConnectionListener = null;
     }
 
-    public void openSocket(final String serverIp, final int port) {
-        isConnectToSocketRunning = false;
+    //Called on the thread that crossed a water mark, must not block.
+    public void registerWritabilityListener(WritabilityListener writabilityListener) {
+        mWritabilityListener = writabilityListener;
+    }
+
+    public void unRegisterWritabilityListener() {
+        mWritabilityListener = null;
+    }
+
+    //Takes effect from the next openSocket call.
+    public void setReceiveMode(ReceiveMode receiveMode) {
+        mReceiveMode = receiveMode;
+    }
+
+    //charset is used to build the String passed to onDataReceived in TEXT mode.
+    public void setReceiveMode(ReceiveMode receiveMode, Charset charset) {
+        mReceiveCharset = charset;
+        mReceiveMode = receiveMode;
+    }
+
+    public ReceiveMode getReceiveMode() {
+        return mReceiveMode;
+    }
+
+    //Decodes the remaining bytes of dataBuffer without moving its position, for BINARY mode listeners that need text.
+    public static String decodeText(ByteBuffer dataBuffer, Charset charset) {
+        if (dataBuffer.hasArray()) {
+            return new String(dataBuffer.array(), dataBuffer.arrayOffset() + dataBuffer.position(), dataBuffer.remaining(), charset);
+        }
+        return charset.decode(dataBuffer.duplicate()).toString();
+    }
+
+    //Can be changed at any time, the writer picks it up for its next batch.
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        mFlushPolicy = flushPolicy;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return mFlushPolicy;
+    }
+
+    //WritabilityListener.onWritabilityChanged(false) is called once queued bytes reach highWaterMark, (true) once they are back to lowWaterMark.
+    //highWaterMark may not exceed the bound set by setMaxQueuedBytes.
+    public void setWriteBufferWaterMarks(int lowWaterMark, int highWaterMark) {
+        if (lowWaterMark < 0 || lowWaterMark >= highWaterMark) {
+            throw new IllegalArgumentException("lowWaterMark must be at least 0 and below highWaterMark");
+        }
+        if (highWaterMark > mMaxQueuedBytes) {
+            throw new IllegalArgumentException("highWaterMark must not exceed maxQueuedBytes");
+        }
+        mLowWaterMark = lowWaterMark;
+        mHighWaterMark = highWaterMark;
+    }
+
+    //Bound of the outbound queue, the overflow policy decides what happens to writes beyond it.
+    //A single write larger than the bound is still accepted when the queue is empty. BLOCK waits for the queue to
+    //become writable again, so the bound must be at least the high water mark or writes would never wait.
+    public void setMaxQueuedBytes(long maxQueuedBytes, OverflowPolicy overflowPolicy) {
+        if (maxQueuedBytes < mHighWaterMark) {
+            throw new IllegalArgumentException("maxQueuedBytes must be at least highWaterMark");
+        }
+        mMaxQueuedBytes = maxQueuedBytes;
+        mOverflowPolicy = overflowPolicy;
+    }
+
+    //Sends a FrameType.PING whenever nothing was received for intervalMillis and reports CONNECTION_ERROR once
+    //maxMissedHeartbeats pings in a row went unanswered, so a peer that vanished without a FIN is noticed within
+    //(maxMissedHeartbeats + 1) * intervalMillis. Needs typed framing, a RequestCorrelator registered on this connection,
+    //and a peer that answers PING with PONG. Takes effect from the next openSocket call.
+    public void enableHeartbeat(long intervalMillis, int maxMissedHeartbeats) {
+        if (intervalMillis <= 0 || maxMissedHeartbeats < 1) {
+            throw new IllegalArgumentException("intervalMillis and maxMissedHeartbeats must be positive");
+        }
+        if (!isTypedFraming()) {
+            throw new IllegalStateException("Heartbeat needs typed framing, enable framing and create a RequestCorrelator first");
+        }
+        mMaxMissedHeartbeats = maxMissedHeartbeats;
+        mHeartbeatIntervalMillis = intervalMillis;
+    }
+
+    public void disableHeartbeat() {
+        mHeartbeatIntervalMillis = 0;
+    }
+
+    //Round trip time smoothed over the heartbeats of the current connection as in RFC 6298, -1 before the first PONG.
+    public long getSmoothedRttMicros() {
+        long smoothedRttNanos = mSmoothedRttNanos;
+        return smoothedRttNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(smoothedRttNanos);
+    }
+
+    //Mean deviation of the round trip time, -1 before the first PONG.
+    public long getRttJitterMicros() {
+        long rttVariationNanos = mRttVariationNanos;
+        return rttVariationNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(rttVariationNanos);
+    }
+
+    //When true, writes still queued when the connection is lost are kept and sent once openSocket connects again,
+    //instead of failing with ClosedChannelException. Writes already being sent at that moment still fail, as the peer
+    //may have received part of them. closeSocket always fails what is kept.
+    public void setRetainUnsentWrites(boolean retainUnsentWrites) {
+        isRetainUnsentWrites = retainUnsentWrites;
+    }
+
+    //Fails the writes kept by setRetainUnsentWrites, for when the connection is not coming back.
+    public void failUnsentWrites() {
+        WriteRequest writeRequest;
+        while (true) {
+            synchronized (mUnsentRequests) {
+                writeRequest = mUnsentRequests.pollFirst();
+            }
+            if (writeRequest == null) {
+                return;
+            }
+            if (writeRequest.fileTransfer != null) {
+                writeRequest.fileTransfer.fail(FileTransferListener.TRANSFER_ERROR.CONNECTION_ERROR);
+            } else {
+                writeRequest.writeFuture.fail(0, new ClosedChannelException());
+                writeRequest.releaseBuffers();
+            }
+        }
+    }
+
+    public boolean isWritable() {
+        WriteData writeData = mWriteData;
+        return writeData == null || writeData.isWritable;
+    }
+
+    public long getQueuedBytes() {
+        WriteData writeData = mWriteData;
+        return writeData == null ? 0 : writeData.mQueuedBytes.get();
+    }
+
+    //Counters kept across reconnects, callers such as a reconnecting service can add their own events.
+    public ConnectionMetrics getMetrics() {
+        return mMetrics;
+    }
 
+    public ConnectionMetrics.Snapshot getMetricsSnapshot() {
+        WriteData writeData = mWriteData;
+        return mMetrics.snapshot(getQueuedBytes(), writeData == null ? 0 : writeData.mOutboundQueue.size());
+    }
+
+    //Pool used for the read buffer, frame headers and encoded strings. Defaults to the shared direct pool.
+    public void setBufferPool(BufferPool bufferPool) {
+        mBufferPool = bufferPool;
+    }
+
+    public BufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    public void registerSocketFrameListener(SocketFrameListener socketFrameListener) {
+        mSocketFrameListener = socketFrameListener;
+    }
+
+    public void unRegisterSocketFrameListener() {
+        mSocketFrameListener = null;
+    }
+
+    //Once framing is enabled received bytes are delivered as whole frames to SocketFrameListener instead of onDataReceived.
+    //Takes effect from the next openSocket call.
+    public void enableFraming(LengthFieldFrameCodec.LengthPrefix lengthPrefix) {
+        enableFraming(lengthPrefix, LengthFieldFrameCodec.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public void enableFraming(LengthFieldFrameCodec.LengthPrefix lengthPrefix, int maxFrameLength) {
+        mRecordDecoder = null;
+        mFrameCodec = new LengthFieldFrameCodec(lengthPrefix, maxFrameLength);
+    }
+
+    public void disableFraming() {
+        mFrameCodec = null;
+    }
+
+    public void registerTextRecordListener(TextRecordListener textRecordListener) {
+        mTextRecordListener = textRecordListener;
+    }
+
+    public void unRegisterTextRecordListener() {
+        mTextRecordListener = null;
+    }
+
+    //Once enabled received bytes are decoded as text, split at delimiter (e.g. "\n" or "\0") and every record is
+    //delivered to TextRecordListener instead of onDataReceived. Replaces framing, takes effect from the next openSocket call.
+    public void enableDelimitedText(String delimiter, Charset charset) {
+        enableDelimitedText(delimiter, charset, StreamingTextDecoder.DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    //A record longer than maxRecordLength characters closes the connection with CONNECTION_ERROR.
+    public void enableDelimitedText(String delimiter, Charset charset, int maxRecordLength) {
+        if (delimiter == null || delimiter.isEmpty()) {
+            throw new IllegalArgumentException("delimiter must not be empty");
+        }
+        mFrameCodec = null;
+        mRecordDecoder = new StreamingTextDecoder(charset, delimiter, maxRecordLength);
+    }
+
+    public void disableDelimitedText() {
+        mRecordDecoder = null;
+    }
+
+    //Compresses the payload of typed frames (RequestCorrelator and its DATA frames) that are at least thresholdBytes
+    //long and sets FrameType.COMPRESSED on them. Frames that would not get smaller are sent as they are. Compressed
+    //frames from the peer are inflated whether or not this is enabled, so both sides can mix plain and compressed frames.
+    public void enableCompression(int thresholdBytes) {
+        enableCompression(thresholdBytes, DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    public void enableCompression(int thresholdBytes, int level) {
+        mFrameCompressor.enable(thresholdBytes, level);
+    }
+
+    public void disableCompression() {
+        mFrameCompressor.disable();
+    }
+
+    public CompressionStats getCompressionStats() {
+        return mFrameCompressor.getStats();
+    }
+
+    //Runs the connection over TLS from the next openSocket call. Keep passing the same sslContext: its client session
+    //cache lets a reconnect to the same host and port resume the session instead of a full handshake. The certificate
+    //is checked against the host passed to openSocket with HttpsURLConnection's default HostnameVerifier.
+    public void enableTls(SSLContext sslContext) {
+        enableTls(sslContext, HttpsURLConnection.getDefaultHostnameVerifier());
+    }
+
+    public void enableTls(SSLContext sslContext, HostnameVerifier hostnameVerifier) {
+        mHostnameVerifier = hostnameVerifier;
+        mSslContext = sslContext;
+    }
+
+    public void disableTls() {
+        mSslContext = null;
+    }
+
+    public boolean isTlsEnabled() {
+        return mSslContext != null;
+    }
+
+    public void openSocket(String serverIp, int port) {
+        openSocket(serverIp, port, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    //Connects without blocking the caller. Every address serverIp resolves to is tried, a new attempt is started every
+    //CONNECTION_ATTEMPT_DELAY_MILLIS while the earlier ones are still pending and the first one to connect wins.
+    //Fails with TIME_OUT once timeoutMillis have passed. Calls made while a connect is running are ignored.
+    public void openSocket(final String serverIp, final int port, long timeoutMillis) {
         if (!isSocketChannelConnected()) {
-            if (!isConnectToSocketRunning) {
-                isConnectToSocketRunning = true;
+            ConnectTask connectTask = new ConnectTask(serverIp, port, timeoutMillis);
+            if (mConnectTask.compareAndSet(null, connectTask)) {
                 if (mSocketConnectionListener != null)
                     mSocketConnectionListener.onClientConnecting(serverIp,port);
-
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mSocketChannel = null;
-                            mSocketChannel = SocketChannel.open(new InetSocketAddress(serverIp, port));
-                            mSocketChannel.configureBlocking(false);
-
-                            if (mSocketChannel != null) {
-                                if (mSocketChannel.isConnected() && mSocketChannel.socket() != null && mSocketChannel.socket().isConnected()) {
-                                    new Thread(new ReadData()).start();
-
-                                    if (mSocketConnectionListener != null) {
-                                        mSocketConnectionListener.onClientConnected(serverIp,port);
-                                    }
-                                } else {
-                                    if (mSocketConnectionListener != null)
-                                        mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
-                                }
-                            }
-                        } catch (ConnectException ex) {
-                            ex.printStackTrace();
-                            if (mSocketConnectionListener != null)
-                                mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            if (mSocketConnectionListener != null)
-                                mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
-                        } finally {
-                            isConnectToSocketRunning = false;
-                        }
-                    }
-                }).start();
+                new Thread(connectTask).start();
             }
         } else {
             String ipAddress;
@@ -91,61 +396,902 @@ public class ClientSocketConnection {
                 if (mSocketConnectionListener != null && ipAddress != null) {
                     mSocketConnectionListener.onClientConnected(ipAddress,port);
                 } else {
-                    if (mSocketConnectionListener != null)
-                        mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
+                    notifySocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
-                if (mSocketConnectionListener != null)
-                    mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
+                notifySocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
             }
         }
     }
 
+    //Aborts a running openSocket, the listener gets onClientSocketClose. Does nothing once the socket is connected.
+    public void cancelConnect() {
+        ConnectTask connectTask = mConnectTask.get();
+        if (connectTask != null) {
+            connectTask.cancel();
+        }
+    }
+
+    public boolean isConnecting() {
+        return mConnectTask.get() != null;
+    }
+
+    private void notifySocketError(SocketConnectionListener.SOCKET_ERROR socket_error) {
+        mMetrics.recordSocketError(socket_error);
+        if (mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientSocketError(socket_error);
+    }
+
     private boolean isSocketChannelConnected() {
         return mSocketChannel != null && mSocketChannel.isConnected();
     }
 
     public int writeData(final ByteBuffer byteBuffer) throws InterruptedException, ExecutionException {
-        final ExecutorService service = Executors.newFixedThreadPool(1);
-        final Future<Integer> writtenValue = service.submit(new WriteDataUsingCallable(byteBuffer));
-        return writtenValue.get();
+        return writeDataAsync(byteBuffer).get();
     }
 
-    private class WriteDataUsingCallable implements Callable<Integer> {
-        private ByteBuffer byteBuffer;
-        private int sentValue;
+    //Queues the buffer on the writer thread and returns at once. The buffer must not be modified until the future is done.
+    public WriteFuture writeDataAsync(final ByteBuffer byteBuffer) {
+        WriteData writeData = getConnectedWriter();
+        if (writeData == null) {
+            return WriteFuture.failed(new NotYetConnectedException());
+        }
+        return writeData.enqueue(null, byteBuffer);
+    }
 
-        private WriteDataUsingCallable(ByteBuffer byteBuffer) {
-            this.byteBuffer = byteBuffer;
-            this.sentValue = 0;
+    //Takes over the lease, the buffer is released back to its pool once it has been written or the write failed.
+    public WriteFuture writeDataAsync(final PooledBuffer pooledBuffer) {
+        WriteData writeData = getConnectedWriter();
+        if (writeData == null) {
+            pooledBuffer.release();
+            return WriteFuture.failed(new NotYetConnectedException());
         }
+        return writeData.enqueue(new PooledBuffer[]{pooledBuffer}, pooledBuffer.buffer());
+    }
 
-        public Integer call() {
+    public int writeData(final CharSequence data, final Charset charset) throws InterruptedException, ExecutionException {
+        return writeDataAsync(data, charset).get();
+    }
+
+    //Encodes straight into a pooled buffer, no intermediate byte[] is created.
+    public WriteFuture writeDataAsync(final CharSequence data, final Charset charset) {
+        PooledBuffer pooledBuffer;
+        try {
+            pooledBuffer = encode(data, charset);
+        } catch (CharacterCodingException e) {
+            e.printStackTrace();
+            return WriteFuture.failed(e);
+        }
+        return writeDataAsync(pooledBuffer);
+    }
+
+    PooledBuffer encode(CharSequence data, Charset charset) throws CharacterCodingException {
+        CharsetEncoder charsetEncoder = sCharsetEncoder.get();
+        if (charsetEncoder == null || !charsetEncoder.charset().equals(charset)) {
+            charsetEncoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            sCharsetEncoder.set(charsetEncoder);
+        }
+        PooledBuffer pooledBuffer = mBufferPool.acquire((int) Math.ceil(data.length() * charsetEncoder.maxBytesPerChar()));
+        ByteBuffer byteBuffer = pooledBuffer.buffer();
+        charsetEncoder.reset();
+        CoderResult coderResult = charsetEncoder.encode(CharBuffer.wrap(data), byteBuffer, true);
+        if (!coderResult.isUnderflow()) {
+            pooledBuffer.release();
+            coderResult.throwException();
+        }
+        charsetEncoder.flush(byteBuffer);
+        byteBuffer.flip();
+        return pooledBuffer;
+    }
+
+    //Frame whose payload starts with a FrameType byte and, for requests and responses, the correlation id.
+    //Length prefix and type header share one pooled buffer and go out with the payload in one gathering write.
+    WriteFuture writeTypedFrameAsync(byte frameType, int correlationId, ByteBuffer payload) {
+        return writeTypedFrameAsync(frameType, correlationId, payload, null);
+    }
+
+    //payloadLease, if not null, holds payload and is released once the frame is written or failed.
+    WriteFuture writeTypedFrameAsync(byte frameType, int correlationId, ByteBuffer payload, PooledBuffer payloadLease) {
+        LengthFieldFrameCodec frameCodec = mFrameCodec;
+        if (frameCodec == null) {
+            if (payloadLease != null) {
+                payloadLease.release();
+            }
+            return WriteFuture.failed(new IllegalStateException("Framing is not enabled"));
+        }
+        WriteData writeData = getConnectedWriter();
+        if (writeData == null) {
+            if (payloadLease != null) {
+                payloadLease.release();
+            }
+            return WriteFuture.failed(new NotYetConnectedException());
+        }
+        PooledBuffer compressed = mFrameCompressor.compress(payload, mBufferPool);
+        if (compressed != null) {
+            if (payloadLease != null) {
+                payloadLease.release();
+            }
+            payloadLease = compressed;
+            payload = compressed.buffer();
+            frameType |= FrameType.COMPRESSED;
+        }
+        PooledBuffer header = mBufferPool.acquire(LengthFieldFrameCodec.MAX_HEADER_LENGTH + FrameType.MAX_HEADER_LENGTH);
+        ByteBuffer headerBuffer = header.buffer();
+        frameCodec.encodeHeader(FrameType.getHeaderLength(frameType) + payload.remaining(), headerBuffer);
+        headerBuffer.put(frameType);
+        if (FrameType.hasCorrelationId(frameType)) {
+            headerBuffer.putInt(correlationId);
+        }
+        headerBuffer.flip();
+        PooledBuffer[] pooledBuffers = payloadLease != null ? new PooledBuffer[]{header, payloadLease} : new PooledBuffer[]{header};
+        return writeData.enqueue(pooledBuffers, headerBuffer, payload);
+    }
+
+    //Inflates the payload of a frame received with FrameType.COMPRESSED. Only valid until the next frame is read.
+    ByteBuffer inflateFrame(ByteBuffer compressed) throws DataFormatException {
+        LengthFieldFrameCodec frameCodec = mFrameCodec;
+        int maxLength = frameCodec != null ? frameCodec.getMaxFrameLength() : LengthFieldFrameCodec.DEFAULT_MAX_FRAME_LENGTH;
+        return mFrameCompressor.inflate(compressed, maxLength);
+    }
+
+    public FileTransfer sendFile(File file, FileTransferListener fileTransferListener) {
+        return sendFile(file, 0, file.length(), fileTransferListener);
+    }
+
+    public FileTransfer sendFile(File file, long offset, long length, FileTransferListener fileTransferListener) {
+        FileChannel fileChannel;
+        try {
+            fileChannel = new FileInputStream(file).getChannel();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return FileTransfer.failed(FileTransferListener.TRANSFER_ERROR.FILE_ERROR, fileTransferListener);
+        }
+        return sendFile(fileChannel, offset, length, true, fileTransferListener);
+    }
+
+    //The caller keeps ownership of fileChannel, it is not closed when the transfer ends.
+    public FileTransfer sendFile(FileChannel fileChannel, long offset, long length, FileTransferListener fileTransferListener) {
+        return sendFile(fileChannel, offset, length, false, fileTransferListener);
+    }
+
+    //Streams the file to the socket in order with the other queued writes. Uses FileChannel.transferTo so the
+    //content never passes through the Java heap, and falls back to chunked copies through a pooled direct buffer.
+    private FileTransfer sendFile(FileChannel fileChannel, long offset, long length, boolean ownedChannel, FileTransferListener fileTransferListener) {
+        long available;
+        try {
+            available = Math.max(0, fileChannel.size() - offset);
+        } catch (IOException e) {
+            e.printStackTrace();
+            available = -1;
+        }
+        FileTransfer fileTransfer = new FileTransfer(fileChannel, offset, Math.min(length, Math.max(available, 0)), ownedChannel, fileTransferListener);
+        if (available < 0 || offset < 0 || length < 0) {
+            fileTransfer.fail(FileTransferListener.TRANSFER_ERROR.FILE_ERROR);
+            return fileTransfer;
+        }
+        WriteData writeData = getConnectedWriter();
+        if (writeData == null) {
+            fileTransfer.fail(FileTransferListener.TRANSFER_ERROR.NOT_CONNECTED);
+            return fileTransfer;
+        }
+        writeData.enqueue(fileTransfer);
+        return fileTransfer;
+    }
+
+    private WriteData getConnectedWriter() {
+        WriteData writeData = mWriteData;
+        if (writeData == null || !isSocketChannelConnected()) {
+            notifySocketError(SocketConnectionListener.SOCKET_ERROR.NOT_CONNECTED);
+            return null;
+        }
+        return writeData;
+    }
+
+    public int writeFrame(final ByteBuffer payload) throws InterruptedException, ExecutionException {
+        return writeFrameAsync(payload).get();
+    }
+
+    //Prefixes the payload with its length using the codec set by enableFraming. Header and payload go out in one gathering write.
+    public WriteFuture writeFrameAsync(final ByteBuffer payload) {
+        LengthFieldFrameCodec frameCodec = mFrameCodec;
+        if (frameCodec == null) {
+            return WriteFuture.failed(new IllegalStateException("Framing is not enabled"));
+        }
+        WriteData writeData = getConnectedWriter();
+        if (writeData == null) {
+            return WriteFuture.failed(new NotYetConnectedException());
+        }
+        PooledBuffer header = mBufferPool.acquire(LengthFieldFrameCodec.MAX_HEADER_LENGTH);
+        frameCodec.encodeHeader(payload.remaining(), header.buffer());
+        header.buffer().flip();
+        return writeData.enqueue(new PooledBuffer[]{header}, header.buffer(), payload);
+    }
+
+    private void startWriter(SocketChannel socketChannel, TlsSession tlsSession) throws IOException {
+        WriteData writeData = new WriteData(socketChannel, tlsSession);
+        mWriteData = writeData;
+        writeData.adoptUnsentRequests();
+        new Thread(writeData).start();
+    }
+
+    //retainUnsent is true when the connection was lost rather than closed, queued writes are then kept if enabled.
+    private void stopWriter(boolean retainUnsent) {
+        WriteData writeData = mWriteData;
+        mWriteData = null;
+        if (writeData != null) {
+            writeData.stop(retainUnsent && isRetainUnsentWrites);
+        }
+    }
+
+    //Called by a stopped writer, passes the request on right away if the next connection is already up.
+    private void retainUnsentRequest(WriteRequest writeRequest) {
+        synchronized (mUnsentRequests) {
+            mUnsentRequests.addLast(writeRequest);
+        }
+        WriteData writeData = mWriteData;
+        if (writeData != null && writeData.isWriteThreadRunning) {
+            writeData.adoptUnsentRequests();
+        }
+    }
+
+    //With raw frames any payload can look like a PING or PONG, only typed frames tell them apart from data.
+    private boolean isTypedFraming() {
+        return mFrameCodec != null && mSocketFrameListener instanceof RequestCorrelator;
+    }
+
+    private Heartbeat createHeartbeat(SocketChannel socketChannel) {
+        mSmoothedRttNanos = -1;
+        mRttVariationNanos = -1;
+        long intervalMillis = mHeartbeatIntervalMillis;
+        Heartbeat heartbeat = null;
+        if (intervalMillis > 0) {
+            if (!isTypedFraming()) {
+                Log.w(TAG, "Heartbeat needs typed framing, it stays off for this connection");
+            } else {
+                heartbeat = new Heartbeat(socketChannel, intervalMillis, mMaxMissedHeartbeats);
+            }
+        }
+        mHeartbeat = heartbeat;
+        return heartbeat;
+    }
+
+    private void stopHeartbeat() {
+        Heartbeat heartbeat = mHeartbeat;
+        mHeartbeat = null;
+        if (heartbeat != null) {
+            heartbeat.stop();
+        }
+    }
+
+    //Control frames carry a single long and need no payload buffer, the whole frame fits in the pooled header.
+    private void writeControlFrame(byte frameType, long value) {
+        LengthFieldFrameCodec frameCodec = mFrameCodec;
+        WriteData writeData = mWriteData;
+        if (frameCodec == null || writeData == null) {
+            return;
+        }
+        PooledBuffer frame = mBufferPool.acquire(LengthFieldFrameCodec.MAX_HEADER_LENGTH + 9);
+        ByteBuffer frameBuffer = frame.buffer();
+        frameCodec.encodeHeader(9, frameBuffer);
+        frameBuffer.put(frameType).putLong(value).flip();
+        writeData.enqueueControl(frame, frameBuffer);
+    }
+
+    //Ticks on the shared TimerWheel. The reader only raises a flag per read, the tick decides whether to ping.
+    private class Heartbeat implements Runnable {
+        private final SocketChannel mChannel;
+        private final long mIntervalMillis;
+        private final int mMaxMissedHeartbeats;
+        private volatile boolean hasReceived;
+        private volatile boolean isRunning = true;
+        private volatile TimerWheel.Timeout mTimeout;
+        //Only touched by the timer thread.
+        private int mMissedHeartbeats;
+
+        private Heartbeat(SocketChannel socketChannel, long intervalMillis, int maxMissedHeartbeats) {
+            mChannel = socketChannel;
+            mIntervalMillis = intervalMillis;
+            mMaxMissedHeartbeats = maxMissedHeartbeats;
+        }
+
+        private void start() {
+            mTimeout = TimerWheel.getDefault().schedule(this, mIntervalMillis);
+        }
+
+        private void stop() {
+            isRunning = false;
+            TimerWheel.Timeout timeout = mTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        private void onReceived() {
+            if (!hasReceived) {
+                hasReceived = true;
+            }
+        }
+
+        //Returns true if frameBuffer was a PING or PONG and has been handled.
+        private boolean onFrameReceived(ByteBuffer frameBuffer) {
+            if (frameBuffer.remaining() != 9) {
+                return false;
+            }
+            int position = frameBuffer.position();
+            byte frameType = frameBuffer.get(position);
+            if (frameType == FrameType.PING) {
+                writeControlFrame(FrameType.PONG, frameBuffer.getLong(position + 1));
+                return true;
+            }
+            if (frameType == FrameType.PONG) {
+                onRttSample(System.nanoTime() - frameBuffer.getLong(position + 1));
+                return true;
+            }
+            return false;
+        }
+
+        private void onRttSample(long rttNanos) {
+            if (rttNanos < 0) {
+                return;
+            }
+            long smoothedRttNanos = mSmoothedRttNanos;
+            if (smoothedRttNanos < 0) {
+                mRttVariationNanos = rttNanos / 2;
+                mSmoothedRttNanos = rttNanos;
+            } else {
+                mRttVariationNanos = (3 * mRttVariationNanos + Math.abs(smoothedRttNanos - rttNanos)) / 4;
+                mSmoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!isRunning || mSocketChannel != mChannel) {
+                return;
+            }
+            if (hasReceived) {
+                hasReceived = false;
+                mMissedHeartbeats = 0;
+            } else if (mMissedHeartbeats >= mMaxMissedHeartbeats) {
+                onPeerLost();
+                return;
+            } else {
+                mMissedHeartbeats++;
+                writeControlFrame(FrameType.PING, System.nanoTime());
+            }
+            mTimeout = TimerWheel.getDefault().schedule(this, mIntervalMillis);
+        }
+
+        private void onPeerLost() {
+            Log.e(TAG, "No data and no PONG for " + mMaxMissedHeartbeats + " heartbeats, closing the connection");
+            isRunning = false;
+            mSocketChannel = null;
+            isReadThreadRunning = false;
+            stopWriter(true);
+            Selector readSelector = mReadSelector;
+            if (readSelector != null) {
+                readSelector.wakeup();
+            }
+            closeQuietly(mChannel);
+            notifySocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+        }
+    }
+
+    private static class WriteRequest {
+        private final ByteBuffer[] byteBuffers;
+        private final PooledBuffer[] pooledBuffers;
+        private final WriteFuture writeFuture;
+        private final FileTransfer fileTransfer;
+        private final long enqueueNanos = System.nanoTime();
+
+        private final int totalBytes;
+        //Control frames bypass flow control, they are never counted in the queued bytes, dropped or retained.
+        private final boolean isControl;
+
+        private WriteRequest(PooledBuffer[] pooledBuffers, ByteBuffer... byteBuffers) {
+            this(false, pooledBuffers, byteBuffers);
+        }
+
+        private WriteRequest(boolean isControl, PooledBuffer[] pooledBuffers, ByteBuffer... byteBuffers) {
+            this.byteBuffers = byteBuffers;
+            this.pooledBuffers = pooledBuffers;
+            this.writeFuture = new WriteFuture();
+            this.fileTransfer = null;
+            this.totalBytes = remainingBytes();
+            this.isControl = isControl;
+        }
+
+        private WriteRequest(FileTransfer fileTransfer) {
+            this.byteBuffers = null;
+            this.pooledBuffers = null;
+            this.writeFuture = null;
+            this.fileTransfer = fileTransfer;
+            this.totalBytes = 0;
+            this.isControl = false;
+        }
+
+        //Bytes this request holds against the queue limit.
+        private int queuedBytes() {
+            return isControl ? 0 : totalBytes;
+        }
+
+        private int remainingBytes() {
+            int remaining = 0;
+            for (ByteBuffer byteBuffer : byteBuffers) {
+                remaining += byteBuffer.remaining();
+            }
+            return remaining;
+        }
+
+        private boolean hasRemaining() {
+            for (int i = byteBuffers.length - 1; i >= 0; i--) {
+                if (byteBuffers[i].hasRemaining()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void releaseBuffers() {
+            if (pooledBuffers != null) {
+                for (PooledBuffer pooledBuffer : pooledBuffers) {
+                    pooledBuffer.release();
+                }
+            }
+        }
+    }
+
+    //Single long-lived writer per connection, it drains the outbound queue in FIFO order.
+    private class WriteData implements Runnable {
+        private final WriteRequest STOP_REQUEST = new WriteRequest((FileTransfer) null);
+        private final BlockingDeque<WriteRequest> mOutboundQueue = new LinkedBlockingDeque<>();
+        private final SocketChannel mChannel;
+        private final TlsSession mTls;
+        private final Selector mWriteSelector;
+        private final List<WriteRequest> mBatch = new ArrayList<>();
+        private ByteBuffer[] mBatchBuffers = new ByteBuffer[MAX_BATCH_BUFFERS];
+        //Bytes of queued and in-flight writes, files are not counted since they are not held in memory.
+        private final AtomicLong mQueuedBytes = new AtomicLong();
+        private final Object mWritabilityLock = new Object();
+        private volatile boolean isWritable = true;
+        private volatile boolean isWriteThreadRunning = true;
+        //Set when the connection was lost and unsent writes should move to the next writer instead of failing.
+        private volatile boolean isRetainingUnsent;
+        private volatile Thread mWriteThread;
+
+        private WriteData(SocketChannel socketChannel, TlsSession tlsSession) throws IOException {
+            mChannel = socketChannel;
+            mTls = tlsSession;
+            mWriteSelector = Selector.open();
+        }
+
+        private WriteFuture enqueue(PooledBuffer[] pooledBuffers, ByteBuffer... byteBuffers) {
+            WriteRequest writeRequest = new WriteRequest(pooledBuffers, byteBuffers);
+            if (!admit(writeRequest)) {
+                return writeRequest.writeFuture;
+            }
+            addQueuedBytes(writeRequest.totalBytes);
+            mOutboundQueue.offer(writeRequest);
+            if (!isWriteThreadRunning) {
+                failPendingRequests();
+            }
+            return writeRequest.writeFuture;
+        }
+
+        //PING, PONG and the TLS key update wakeup go ahead of queued data without the overflow policy, so the timer and
+        //reader threads that send them never block on a full queue and never evict user writes. frame may be null.
+        private void enqueueControl(PooledBuffer frame, ByteBuffer frameBuffer) {
+            WriteRequest writeRequest = new WriteRequest(true, frame == null ? null : new PooledBuffer[]{frame}, frameBuffer);
+            mOutboundQueue.offerFirst(writeRequest);
+            if (!isWriteThreadRunning) {
+                failPendingRequests();
+            }
+        }
+
+        //Applies the overflow policy when the queue is over its limit. Returns false if the request was failed instead.
+        //The limit is soft, producers racing past the check together can overshoot it by one request each.
+        private boolean admit(WriteRequest writeRequest) {
+            long queuedBytes = mQueuedBytes.get();
+            if (queuedBytes == 0 || queuedBytes + writeRequest.totalBytes <= mMaxQueuedBytes) {
+                return true;
+            }
+            switch (mOverflowPolicy) {
+                case BLOCK:
+                    if (Thread.currentThread() != mWriteThread && awaitWritable()) {
+                        return true;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    dropOldest(writeRequest.totalBytes);
+                    return true;
+                case REJECT:
+                    break;
+            }
+            writeRequest.writeFuture.fail(0, isWriteThreadRunning ? new WriteQueueFullException(queuedBytes) : new ClosedChannelException());
+            writeRequest.releaseBuffers();
+            return false;
+        }
+
+        //Waits until the queue has drained to the low water mark. Returns false if the writer stopped meanwhile.
+        private boolean awaitWritable() {
+            synchronized (mWritabilityLock) {
+                try {
+                    while (!isWritable && isWriteThreadRunning) {
+                        mWritabilityLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return isWriteThreadRunning;
+        }
+
+        //Cancels the oldest writes the writer has not started yet until bytes more fit below the limit.
+        private void dropOldest(int bytes) {
+            Iterator<WriteRequest> iterator = mOutboundQueue.iterator();
+            while (mQueuedBytes.get() + bytes > mMaxQueuedBytes && iterator.hasNext()) {
+                WriteRequest writeRequest = iterator.next();
+                if (writeRequest.fileTransfer == null && writeRequest != STOP_REQUEST && !writeRequest.isControl
+                        && mOutboundQueue.removeFirstOccurrence(writeRequest)) {
+                    writeRequest.writeFuture.cancel(false);
+                    release(writeRequest);
+                }
+            }
+        }
+
+        private void release(WriteRequest writeRequest) {
+            writeRequest.releaseBuffers();
+            subtractQueuedBytes(writeRequest.queuedBytes());
+        }
+
+        private void addQueuedBytes(int bytes) {
+            long queuedBytes = mQueuedBytes.addAndGet(bytes);
+            mMetrics.recordQueuedBytes(queuedBytes);
+            if (queuedBytes >= mHighWaterMark && isWritable) {
+                updateWritability();
+            }
+        }
+
+        private void subtractQueuedBytes(int bytes) {
+            if (mQueuedBytes.addAndGet(-bytes) <= mLowWaterMark && !isWritable) {
+                updateWritability();
+            }
+        }
+
+        //Re-reads the counter after every flip, so a producer and the writer crossing the marks at the same time
+        //cannot leave the state stale.
+        private void updateWritability() {
+            synchronized (mWritabilityLock) {
+                while (true) {
+                    long queuedBytes = mQueuedBytes.get();
+                    if (isWritable && queuedBytes >= mHighWaterMark) {
+                        isWritable = false;
+                    } else if (!isWritable && queuedBytes <= mLowWaterMark) {
+                        isWritable = true;
+                        mWritabilityLock.notifyAll();
+                    } else {
+                        return;
+                    }
+                    WritabilityListener writabilityListener = mWritabilityListener;
+                    if (isWriteThreadRunning && writabilityListener != null)
+                        writabilityListener.onWritabilityChanged(isWritable);
+                }
+            }
+        }
+
+        private void enqueue(FileTransfer fileTransfer) {
+            mOutboundQueue.offer(new WriteRequest(fileTransfer));
+            if (!isWriteThreadRunning) {
+                failPendingRequests();
+            }
+        }
+
+        private void adoptUnsentRequests() {
+            WriteRequest writeRequest;
+            while (true) {
+                synchronized (mUnsentRequests) {
+                    writeRequest = mUnsentRequests.pollFirst();
+                }
+                if (writeRequest == null) {
+                    break;
+                }
+                if (writeRequest.fileTransfer == null) {
+                    addQueuedBytes(writeRequest.totalBytes);
+                }
+                mOutboundQueue.offer(writeRequest);
+            }
+            if (!isWriteThreadRunning) {
+                failPendingRequests();
+            }
+        }
+
+        private void stop(boolean retainUnsent) {
+            isRetainingUnsent = retainUnsent;
+            isWriteThreadRunning = false;
+            if (retainUnsent) {
+                //Move what is queued now, so it is ready before the caller reports the lost connection.
+                failPendingRequests();
+            }
+            mOutboundQueue.offer(STOP_REQUEST);
+            mWriteSelector.wakeup();
+            synchronized (mWritabilityLock) {
+                mWritabilityLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            mWriteThread = Thread.currentThread();
             try {
-                if (mSocketChannel != null && mSocketChannel.isConnected()) {
-                    while (byteBuffer.hasRemaining()) {
-                        this.sentValue = this.sentValue + mSocketChannel.write(byteBuffer);
+                SelectionKey selectionKey = mChannel.register(mWriteSelector, 0);
+                WriteRequest writeRequest = null;
+                //Stopping is checked below, so a request handed back by writeBatch is requeued rather than dropped.
+                while (true) {
+                    if (writeRequest == null) {
+                        writeRequest = mOutboundQueue.take();
+                    }
+                    if (writeRequest == STOP_REQUEST || !isWriteThreadRunning) {
+                        if (writeRequest != STOP_REQUEST) {
+                            mOutboundQueue.offerFirst(writeRequest);
+                        }
+                        break;
+                    }
+                    if (writeRequest.fileTransfer != null) {
+                        transferFile(writeRequest.fileTransfer, writeRequest.enqueueNanos, selectionKey);
+                        writeRequest = null;
+                        continue;
+                    }
+                    writeRequest = writeBatch(writeRequest, selectionKey);
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                if (isWriteThreadRunning) {
+                    e.printStackTrace();
+                    isRetainingUnsent = isRetainUnsentWrites;
+                    isWriteThreadRunning = false;
+                    //Hand the unsent writes over before the listener can start a new connection.
+                    failPendingRequests();
+                    mSocketChannel = null;
+                    isReadThreadRunning = false;
+                    Selector readSelector = mReadSelector;
+                    if (readSelector != null) {
+                        readSelector.wakeup();
                     }
+                    closeQuietly(mChannel);
+                    notifySocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+                }
+            } finally {
+                isWriteThreadRunning = false;
+                failPendingRequests();
+                if (mTls != null) {
+                    mTls.releaseOutbound();
+                }
+                try {
+                    mWriteSelector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        //Collects firstRequest and the requests queued behind it, as the flush policy allows, into one gathering write.
+        //Returns the request that ended the batch without joining it (a file, the stop marker or an overflow), or null.
+        private WriteRequest writeBatch(WriteRequest firstRequest, SelectionKey selectionKey) throws IOException, InterruptedException {
+            FlushPolicy flushPolicy = mFlushPolicy;
+            long deadline = System.nanoTime() + flushPolicy.getLingerMicros() * 1000;
+            int batchBytes = 0;
+            int bufferCount = 0;
+            WriteRequest writeRequest = firstRequest;
+            while (writeRequest != STOP_REQUEST && writeRequest.fileTransfer == null) {
+                if (!mBatch.isEmpty() && bufferCount + writeRequest.byteBuffers.length > MAX_BATCH_BUFFERS) {
+                    break;
+                }
+                if (writeRequest.writeFuture.markWriting()) {
+                    mBatch.add(writeRequest);
+                    bufferCount += writeRequest.byteBuffers.length;
+                    batchBytes += writeRequest.totalBytes;
                 } else {
-                    if (mSocketConnectionListener != null)
-                        mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.NOT_CONNECTED);
+                    release(writeRequest);
+                }
+                writeRequest = mOutboundQueue.poll();
+                if (writeRequest == null && batchBytes < flushPolicy.getSizeThreshold()) {
+                    long lingerNanos = deadline - System.nanoTime();
+                    if (lingerNanos > 0) {
+                        writeRequest = mOutboundQueue.poll(lingerNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+                if (writeRequest == null) {
+                    break;
+                }
+            }
+            if (!mBatch.isEmpty()) {
+                try {
+                    writeGathered(bufferCount, selectionKey);
+                } catch (IOException e) {
+                    //Put the request that ended the batch back so failPendingRequests accounts for it.
+                    if (writeRequest != null) {
+                        mOutboundQueue.offerFirst(writeRequest);
+                    }
+                    throw e;
+                }
+            }
+            return writeRequest;
+        }
+
+        private void writeGathered(int bufferCount, SelectionKey selectionKey) throws IOException {
+            if (mBatchBuffers.length < bufferCount) {
+                mBatchBuffers = new ByteBuffer[bufferCount];
+            }
+            ByteBuffer[] batchBuffers = mBatchBuffers;
+            int index = 0;
+            for (WriteRequest writeRequest : mBatch) {
+                System.arraycopy(writeRequest.byteBuffers, 0, batchBuffers, index, writeRequest.byteBuffers.length);
+                index += writeRequest.byteBuffers.length;
+            }
+            int offset = 0;
+            int completed = 0;
+            try {
+                while (true) {
+                    while (offset < bufferCount && !batchBuffers[offset].hasRemaining()) {
+                        offset++;
+                    }
+                    long nowNanos = System.nanoTime();
+                    //Under TLS a request is only done once the record holding its end has left the outbound buffer.
+                    boolean isFlushed = mTls == null || !mTls.hasPendingOutput();
+                    while (isFlushed && completed < mBatch.size() && !mBatch.get(completed).hasRemaining()) {
+                        WriteRequest writeRequest = mBatch.get(completed++);
+                        mMetrics.recordBytesSent(writeRequest.totalBytes);
+                        if (!writeRequest.isControl) {
+                            mMetrics.recordMessageSent(nowNanos - writeRequest.enqueueNanos);
+                        }
+                        writeRequest.writeFuture.complete(writeRequest.totalBytes);
+                        release(writeRequest);
+                    }
+                    if (completed == mBatch.size()) {
+                        return;
+                    }
+                    long written = mTls == null
+                            ? mChannel.write(batchBuffers, offset, bufferCount - offset)
+                            : mTls.write(batchBuffers, offset, bufferCount - offset);
+                    if (written == 0) {
+                        //Socket send buffer is full, wait until the peer has drained some of it.
+                        awaitWritable(selectionKey);
+                    }
                 }
             } catch (IOException e) {
+                for (int i = completed; i < mBatch.size(); i++) {
+                    WriteRequest writeRequest = mBatch.get(i);
+                    writeRequest.writeFuture.fail(writeRequest.totalBytes - writeRequest.remainingBytes(), e);
+                    release(writeRequest);
+                }
+                throw e;
+            } finally {
+                Arrays.fill(batchBuffers, 0, bufferCount, null);
+                mBatch.clear();
+            }
+        }
+
+        private void transferFile(FileTransfer fileTransfer, long enqueueNanos, SelectionKey selectionKey) throws IOException {
+            FileChannel fileChannel = fileTransfer.getFileChannel();
+            long position = fileTransfer.getOffset();
+            long end = position + fileTransfer.getLength();
+            //sendfile would bypass TLS, so encrypted connections always copy.
+            PooledBuffer copyBuffer = mTls == null ? null : mBufferPool.acquire(BufferPool.MAX_POOLED_SIZE);
+            try {
+                while (position < end) {
+                    if (fileTransfer.isCancelled()) {
+                        fileTransfer.cancelled();
+                        return;
+                    }
+                    long chunk = Math.min(end - position, FILE_TRANSFER_CHUNK_SIZE);
+                    long written;
+                    if (copyBuffer == null) {
+                        try {
+                            written = fileChannel.transferTo(position, chunk, mChannel);
+                        } catch (IOException e) {
+                            //Some file systems and kernels refuse sendfile, retry this chunk through the copy path.
+                            Log.w(TAG, "transferTo failed, falling back to buffered copy", e);
+                            copyBuffer = mBufferPool.acquire(BufferPool.MAX_POOLED_SIZE);
+                            continue;
+                        }
+                    } else {
+                        written = copyChunk(fileChannel, position, chunk, copyBuffer.buffer(), selectionKey);
+                    }
+                    if (written == 0) {
+                        if (position >= fileChannel.size()) {
+                            throw new FileTransferException("File was truncated during transfer");
+                        }
+                        awaitWritable(selectionKey);
+                        continue;
+                    }
+                    position += written;
+                    mMetrics.recordBytesSent(written);
+                    fileTransfer.onProgress(position - fileTransfer.getOffset());
+                }
+                fileTransfer.complete();
+                mMetrics.recordMessageSent(System.nanoTime() - enqueueNanos);
+            } catch (FileTransferException e) {
                 e.printStackTrace();
-                mSocketChannel = null;
-                isReadThreadRunning = false;
-                if (mSocketConnectionListener != null)
-                    mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+                fileTransfer.fail(FileTransferListener.TRANSFER_ERROR.FILE_ERROR);
+            } catch (IOException e) {
+                fileTransfer.fail(FileTransferListener.TRANSFER_ERROR.CONNECTION_ERROR);
+                throw e;
+            } finally {
+                if (copyBuffer != null) {
+                    copyBuffer.release();
+                }
+            }
+        }
+
+        //Reads one chunk of the file and writes it out completely, returns the number of bytes sent.
+        private long copyChunk(FileChannel fileChannel, long position, long chunk, ByteBuffer copyBuffer, SelectionKey selectionKey) throws IOException {
+            copyBuffer.clear();
+            if (chunk < copyBuffer.remaining()) {
+                copyBuffer.limit((int) chunk);
+            }
+            int read;
+            try {
+                read = fileChannel.read(copyBuffer, position);
+            } catch (IOException e) {
+                throw new FileTransferException(e.getMessage());
+            }
+            if (read <= 0) {
+                return 0;
+            }
+            copyBuffer.flip();
+            while (copyBuffer.hasRemaining() || (mTls != null && mTls.hasPendingOutput())) {
+                long written = mTls == null ? mChannel.write(copyBuffer) : mTls.write(copyBuffer);
+                if (written == 0) {
+                    awaitWritable(selectionKey);
+                }
+            }
+            return read;
+        }
+
+        private void awaitWritable(SelectionKey selectionKey) throws IOException {
+            selectionKey.interestOps(SelectionKey.OP_WRITE);
+            mWriteSelector.select();
+            mWriteSelector.selectedKeys().clear();
+            selectionKey.interestOps(0);
+            if (!isWriteThreadRunning) {
+                throw new ClosedChannelException();
             }
+        }
 
-            return (this.sentValue);
+        private void failPendingRequests() {
+            WriteRequest writeRequest;
+            while ((writeRequest = mOutboundQueue.poll()) != null) {
+                if (isRetainingUnsent && writeRequest != STOP_REQUEST && !writeRequest.isControl) {
+                    if (writeRequest.fileTransfer == null) {
+                        subtractQueuedBytes(writeRequest.totalBytes);
+                    }
+                    retainUnsentRequest(writeRequest);
+                } else if (writeRequest.fileTransfer != null) {
+                    writeRequest.fileTransfer.fail(FileTransferListener.TRANSFER_ERROR.CONNECTION_ERROR);
+                } else if (writeRequest != STOP_REQUEST) {
+                    writeRequest.writeFuture.fail(0, new ClosedChannelException());
+                    release(writeRequest);
+                }
+            }
         }
     }
 
     public void closeSocket() {
         try {
+            stopHeartbeat();
             isReadThreadRunning = false;
+            stopWriter(false);
+            failUnsentWrites();
+            mFrameCompressor.release();
+            Selector readSelector = mReadSelector;
+            if (readSelector != null) {
+                readSelector.wakeup();
+            }
             if (mSocketChannel != null) {
                 mSocketChannel.close();
                 mSocketChannel = null;
@@ -153,50 +1299,441 @@ public class ClientSocketConnection {
                     mSocketConnectionListener.onClientSocketClose();
                 }
             } else {
-                if (mSocketConnectionListener != null)
-                    mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.NOT_CONNECTED);
+                notifySocketError(SocketConnectionListener.SOCKET_ERROR.NOT_CONNECTED);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private class ReadData implements Runnable {
+    private class ConnectTask implements Runnable {
+        private final String mServerIp;
+        private final int mPort;
+        private final long mTimeoutMillis;
+        private volatile Selector mConnectSelector;
+        private volatile TlsSession mHandshakingSession;
+        private volatile boolean isCancelled;
+
+        private ConnectTask(String serverIp, int port, long timeoutMillis) {
+            mServerIp = serverIp;
+            mPort = port;
+            mTimeoutMillis = timeoutMillis;
+        }
+
+        private void cancel() {
+            isCancelled = true;
+            Selector connectSelector = mConnectSelector;
+            if (connectSelector != null) {
+                connectSelector.wakeup();
+            }
+            TlsSession tlsSession = mHandshakingSession;
+            if (tlsSession != null) {
+                tlsSession.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            SocketChannel socketChannel = null;
+            TlsSession tlsSession = null;
+            //The writer and the reader release their TLS buffer once they have started, until then this task owns them.
+            boolean isWriterStarted = false;
+            boolean isReaderStarted = false;
+            try {
+                try {
+                    socketChannel = connect(startNanos);
+                    if (socketChannel != null && mSslContext != null) {
+                        tlsSession = startTls(socketChannel, startNanos);
+                        if (tlsSession == null) {
+                            closeQuietly(socketChannel);
+                            socketChannel = null;
+                        }
+                    }
+                } catch (SocketTimeoutException e) {
+                    Log.e(TAG, "Connect to " + mServerIp + ":" + mPort + " timed out after " + mTimeoutMillis + " ms");
+                    if (socketChannel != null) {
+                        closeQuietly(socketChannel);
+                    }
+                    notifySocketError(SocketConnectionListener.SOCKET_ERROR.TIME_OUT);
+                    return;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    if (tlsSession != null) {
+                        tlsSession.releaseInbound();
+                        tlsSession.releaseOutbound();
+                    }
+                    if (socketChannel != null) {
+                        closeQuietly(socketChannel);
+                    }
+                    notifySocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+                    return;
+                }
+                if (socketChannel == null) {
+                    if (mSocketConnectionListener != null)
+                        mSocketConnectionListener.onClientSocketClose();
+                    return;
+                }
+                //Small messages are coalesced by the writer itself, Nagle would only add latency on top.
+                socketChannel.socket().setTcpNoDelay(true);
+                mTlsSession = tlsSession;
+                mSocketChannel = socketChannel;
+                startWriter(socketChannel, tlsSession);
+                isWriterStarted = true;
+                Heartbeat heartbeat = createHeartbeat(socketChannel);
+                new Thread(new ReadData()).start();
+                isReaderStarted = true;
+                if (heartbeat != null) {
+                    heartbeat.start();
+                }
+
+                long connectNanos = System.nanoTime() - startNanos;
+                mMetrics.recordConnected(connectNanos);
+                if (mSocketConnectionListener != null) {
+                    mSocketConnectionListener.onClientConnected(mServerIp, mPort);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (socketChannel != null) {
+                    mSocketChannel = null;
+                    closeQuietly(socketChannel);
+                }
+                if (!isReaderStarted) {
+                    stopHeartbeat();
+                    //A running writer releases its buffer once it has stopped.
+                    stopWriter(true);
+                }
+                if (tlsSession != null) {
+                    mTlsSession = null;
+                    if (!isReaderStarted) {
+                        tlsSession.releaseInbound();
+                    }
+                    if (!isWriterStarted) {
+                        tlsSession.releaseOutbound();
+                    }
+                }
+                notifySocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
+            } finally {
+                mConnectTask.compareAndSet(this, null);
+            }
+        }
+
+        //Handshakes within what is left of the connect timeout. Returns null when cancelled, the pooled buffers of
+        //the session are released unless it is returned.
+        private TlsSession startTls(SocketChannel socketChannel, long startNanos) throws IOException {
+            SSLEngine sslEngine = mSslContext.createSSLEngine(mServerIp, mPort);
+            sslEngine.setUseClientMode(true);
+            TlsSession tlsSession = new TlsSession(sslEngine, socketChannel, mBufferPool);
+            mHandshakingSession = tlsSession;
+            boolean isEstablished = false;
+            try {
+                if (isCancelled || !tlsSession.handshake(mBufferPool, startNanos + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis))) {
+                    return null;
+                }
+                HostnameVerifier hostnameVerifier = mHostnameVerifier;
+                if (hostnameVerifier != null && !hostnameVerifier.verify(mServerIp, tlsSession.getSession())) {
+                    throw new SSLPeerUnverifiedException("Certificate does not match " + mServerIp);
+                }
+                isEstablished = true;
+                return tlsSession;
+            } finally {
+                mHandshakingSession = null;
+                if (!isEstablished) {
+                    tlsSession.releaseInbound();
+                    tlsSession.releaseOutbound();
+                }
+            }
+        }
+
+        //Returns the first channel that connected, or null when cancelled. All other attempts are closed.
+        private SocketChannel connect(long startNanos) throws IOException {
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis);
+            long attemptDelayNanos = TimeUnit.MILLISECONDS.toNanos(CONNECTION_ATTEMPT_DELAY_MILLIS);
+            InetAddress[] addresses = interleaveAddressFamilies(InetAddress.getAllByName(mServerIp));
+            List<SocketChannel> attempts = new ArrayList<>();
+            SocketChannel connected = null;
+            IOException lastError = null;
+            mConnectSelector = Selector.open();
+            try {
+                int nextAddress = 0;
+                int pendingAttempts = 0;
+                long nextAttemptNanos = startNanos;
+                while (connected == null && !isCancelled) {
+                    long now = System.nanoTime();
+                    if (now - deadlineNanos >= 0) {
+                        throw new SocketTimeoutException("connect timed out");
+                    }
+                    //Start the next address when its turn has come, or right away when every earlier attempt failed.
+                    if (nextAddress < addresses.length && (now - nextAttemptNanos >= 0 || pendingAttempts == 0)) {
+                        SocketChannel socketChannel = SocketChannel.open();
+                        attempts.add(socketChannel);
+                        nextAttemptNanos = now + attemptDelayNanos;
+                        try {
+                            socketChannel.configureBlocking(false);
+                            if (socketChannel.connect(new InetSocketAddress(addresses[nextAddress++], mPort))) {
+                                connected = socketChannel;
+                            } else {
+                                socketChannel.register(mConnectSelector, SelectionKey.OP_CONNECT);
+                                pendingAttempts++;
+                            }
+                        } catch (IOException e) {
+                            lastError = e;
+                            closeQuietly(socketChannel);
+                        }
+                        continue;
+                    }
+                    if (pendingAttempts == 0) {
+                        throw lastError != null ? lastError : new ConnectException("No address to connect to");
+                    }
+                    long waitNanos = deadlineNanos - now;
+                    if (nextAddress < addresses.length) {
+                        waitNanos = Math.min(waitNanos, nextAttemptNanos - now);
+                    }
+                    //select(0) would wait forever, so never pass less than a millisecond.
+                    mConnectSelector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                    for (SelectionKey selectionKey : mConnectSelector.selectedKeys()) {
+                        SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
+                        try {
+                            if (socketChannel.finishConnect()) {
+                                connected = socketChannel;
+                                break;
+                            }
+                        } catch (IOException e) {
+                            lastError = e;
+                            pendingAttempts--;
+                            closeQuietly(socketChannel);
+                        }
+                    }
+                    mConnectSelector.selectedKeys().clear();
+                }
+            } finally {
+                for (SocketChannel socketChannel : attempts) {
+                    if (socketChannel != connected) {
+                        closeQuietly(socketChannel);
+                    }
+                }
+                //Closing the selector deregisters the winner so the reader can register it with its own.
+                mConnectSelector.close();
+            }
+            return connected;
+        }
+    }
+
+    //Alternates address families, starting with the one the resolver preferred, so one broken family costs
+    //at most one attempt delay.
+    private static InetAddress[] interleaveAddressFamilies(InetAddress[] addresses) {
+        if (addresses.length < 2) {
+            return addresses;
+        }
+        List<InetAddress> preferred = new ArrayList<>();
+        List<InetAddress> other = new ArrayList<>();
+        boolean preferIpv6 = addresses[0] instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == preferIpv6) {
+                preferred.add(address);
+            } else {
+                other.add(address);
+            }
+        }
+        InetAddress[] interleaved = new InetAddress[addresses.length];
+        int index = 0;
+        for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+            if (i < preferred.size()) {
+                interleaved[index++] = preferred.get(i);
+            }
+            if (i < other.size()) {
+                interleaved[index++] = other.get(i);
+            }
+        }
+        return interleaved;
+    }
+
+    private static void closeQuietly(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    private static class FileTransferException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private FileTransferException(String message) {
+            super(message);
+        }
+    }
+
+    private class ReadData implements Runnable {
+        private final LengthFieldFrameCodec mReadFrameCodec;
+        private final Heartbeat mReadHeartbeat;
+        private final ReceiveMode mReadMode;
+        private final StreamingTextDecoder mReadRecordDecoder;
+        private final StreamingTextDecoder mTextDecoder;
+        private final TlsSession mReadTls;
+        private final SocketChannel mReadChannel;
+        private String mDecodedText;
+        private ByteBuffer mReadOnlyView;
 
         private ReadData() {
             isReadThreadRunning = true;
+            mReadMode = mReceiveMode;
+            mTextDecoder = mReadMode == ReceiveMode.TEXT ? new StreamingTextDecoder(mReceiveCharset) : null;
+            mReadFrameCodec = mFrameCodec;
+            mReadRecordDecoder = mRecordDecoder;
+            mReadHeartbeat = mHeartbeat;
+            mReadTls = mTlsSession;
+            mReadChannel = mSocketChannel;
+            if (mReadFrameCodec != null) {
+                mReadFrameCodec.reset();
+            }
+            if (mReadRecordDecoder != null) {
+                mReadRecordDecoder.reset();
+            }
         }
 
 
         @Override
         public void run() {
-            ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            //A TLS record is always unwrapped whole, so the buffer has to hold the largest one.
+            PooledBuffer readLease = mBufferPool.acquire(mReadTls == null
+                    ? READ_BUFFER_SIZE : Math.max(READ_BUFFER_SIZE, mReadTls.getApplicationBufferSize()));
+            ByteBuffer readBuffer = readLease.buffer();
+            mReadOnlyView = readBuffer.asReadOnlyBuffer();
+            SocketChannel socketChannel = mReadChannel;
+            Selector selector = null;
             try {
-                while (isReadThreadRunning) {
-                    readBuffer.clear();
-                    if (mSocketChannel.read(readBuffer) >= 0) {
-                        readBuffer.flip();
-                        if (mSocketConnectionListener != null && readBuffer.hasRemaining()) {
-                            byte[] bytes = new byte[readBuffer.remaining()];
-                            readBuffer.get(bytes);
-                            String stringData = new String(bytes);
+                selector = Selector.open();
+                mReadSelector = selector;
+                socketChannel.register(selector, SelectionKey.OP_READ);
+                while (isCurrent()) {
+                    //Blocks until the channel is readable or closeSocket() wakes the selector up.
+                    if (selector.select() == 0) {
+                        continue;
+                    }
+                    selector.selectedKeys().clear();
+                    drainChannel(socketChannel, readBuffer);
+                }
+            } catch (Exception e) {
+                if (isCurrent()) {
+                    e.printStackTrace();
+                    isReadThreadRunning = false;
+                    stopWriter(true);
+                    mSocketChannel = null;
+                    closeQuietly(socketChannel);
+                    //A reset by the peer is a lost connection like an end of stream, so it can be reconnected.
+                    notifySocketError(e instanceof IOException
+                            ? SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR
+                            : SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
+                }
+            } finally {
+                if (mReadSelector == selector) {
+                    mReadSelector = null;
+                }
+                mReadOnlyView = null;
+                readLease.release();
+                if (mReadTls != null) {
+                    mReadTls.releaseInbound();
+                }
+                if (selector != null) {
+                    try {
+                        selector.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        private final SocketFrameListener mFrameDispatcher = new SocketFrameListener() {
+            @Override
+            public void onFrameReceived(ByteBuffer frameBuffer) {
+                mMetrics.recordMessageReceived();
+                SocketFrameListener socketFrameListener = mSocketFrameListener;
+                if (mReadHeartbeat != null && socketFrameListener instanceof RequestCorrelator
+                        && mReadHeartbeat.onFrameReceived(frameBuffer)) {
+                    return;
+                }
+                if (socketFrameListener != null) {
+                    socketFrameListener.onFrameReceived(frameBuffer);
+                }
+            }
+        };
+
+        private final TextRecordListener mRecordDispatcher = new TextRecordListener() {
+            @Override
+            public void onRecordReceived(CharSequence record) {
+                mMetrics.recordMessageReceived();
+                TextRecordListener textRecordListener = mTextRecordListener;
+                if (textRecordListener != null) {
+                    textRecordListener.onRecordReceived(record);
+                }
+            }
+        };
+
+        private final TextRecordListener mTextCollector = new TextRecordListener() {
+            @Override
+            public void onRecordReceived(CharSequence record) {
+                mDecodedText = record.toString();
+            }
+        };
+
+        //isReadThreadRunning is shared with the reader of the next connection, which sets it again. A reader whose
+        //channel was replaced must stop without touching the new connection.
+        private boolean isCurrent() {
+            return isReadThreadRunning && mSocketChannel == mReadChannel;
+        }
+
+        //Reads until the socket has nothing more buffered, so a single wakeup delivers everything available.
+        private void drainChannel(SocketChannel socketChannel, ByteBuffer readBuffer) throws IOException {
+            while (isCurrent()) {
+                readBuffer.clear();
+                int read = mReadTls == null ? socketChannel.read(readBuffer) : mReadTls.read(readBuffer);
+                if (mReadTls != null && mReadTls.isWrapNeeded()) {
+                    //The reply to a key update is sent by the writer, an empty control write wakes it up without
+                    //ever waiting on a full queue.
+                    WriteData writeData = mWriteData;
+                    if (writeData != null) {
+                        writeData.enqueueControl(null, EMPTY_BUFFER);
+                    }
+                }
+                if (read > 0) {
+                    mMetrics.recordBytesReceived(read);
+                    if (mReadHeartbeat != null) {
+                        mReadHeartbeat.onReceived();
+                    }
+                    readBuffer.flip();
+                    if (mReadFrameCodec != null) {
+                        mReadFrameCodec.decode(readBuffer, mFrameDispatcher);
+                    } else if (mReadRecordDecoder != null) {
+                        mReadRecordDecoder.decode(readBuffer, mRecordDispatcher);
+                    } else if (mSocketConnectionListener != null && readBuffer.hasRemaining()) {
+                        mMetrics.recordMessageReceived();
+                        if (mReadMode == ReceiveMode.BINARY) {
+                            mReadOnlyView.limit(readBuffer.limit());
+                            mReadOnlyView.position(readBuffer.position());
+                            mSocketConnectionListener.onDataReceived(mReadOnlyView, null);
+                        } else {
+                            //The decoder keeps the bytes of a character cut off at the end of this read for the next one.
+                            int start = readBuffer.position();
+                            mDecodedText = "";
+                            mTextDecoder.decode(readBuffer, mTextCollector);
+                            readBuffer.position(start);
+                            String stringData = mDecodedText;
+                            mDecodedText = null;
                             mSocketConnectionListener.onDataReceived(readBuffer, stringData);
-                            Log.i(TAG, "on Data received :" + stringData);
                         }
-                    } else {
-                        isReadThreadRunning = false;
-                        mSocketChannel = null;
-                        if (mSocketConnectionListener != null)
-                            mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
                     }
-                    Thread.sleep(READ_TIMEOUT);
+                } else if (read == 0) {
+                    return;
+                } else {
+                    isReadThreadRunning = false;
+                    stopWriter(true);
+                    mSocketChannel = null;
+                    closeQuietly(socketChannel);
+                    notifySocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+                    return;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                mSocketChannel = null;
-                if (mSocketConnectionListener != null)
-                    mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
             }
         }
     }
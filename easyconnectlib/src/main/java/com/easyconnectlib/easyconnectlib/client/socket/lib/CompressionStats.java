@@ -0,0 +1,80 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.util.concurrent.TimeUnit;
+
+//Snapshot of the frame compression counters of a connection since it was created.
+public final class CompressionStats {
+
+    private final long mCompressedFrames;
+    private final long mIncompressibleFrames;
+    private final long mBytesBeforeCompression;
+    private final long mBytesAfterCompression;
+    private final long mCompressNanos;
+    private final long mInflatedFrames;
+    private final long mBytesBeforeInflate;
+    private final long mBytesAfterInflate;
+    private final long mInflateNanos;
+
+    CompressionStats(long compressedFrames, long incompressibleFrames, long bytesBeforeCompression, long bytesAfterCompression,
+                     long compressNanos, long inflatedFrames, long bytesBeforeInflate, long bytesAfterInflate, long inflateNanos) {
+        mCompressedFrames = compressedFrames;
+        mIncompressibleFrames = incompressibleFrames;
+        mBytesBeforeCompression = bytesBeforeCompression;
+        mBytesAfterCompression = bytesAfterCompression;
+        mCompressNanos = compressNanos;
+        mInflatedFrames = inflatedFrames;
+        mBytesBeforeInflate = bytesBeforeInflate;
+        mBytesAfterInflate = bytesAfterInflate;
+        mInflateNanos = inflateNanos;
+    }
+
+    public long getCompressedFrames() {
+        return mCompressedFrames;
+    }
+
+    //Frames above the threshold that did not get smaller and were sent uncompressed.
+    public long getIncompressibleFrames() {
+        return mIncompressibleFrames;
+    }
+
+    public long getBytesBeforeCompression() {
+        return mBytesBeforeCompression;
+    }
+
+    public long getBytesAfterCompression() {
+        return mBytesAfterCompression;
+    }
+
+    //Compressed size divided by original size of the frames sent compressed, 1 before the first one.
+    public double getCompressionRatio() {
+        return mBytesBeforeCompression == 0 ? 1 : (double) mBytesAfterCompression / mBytesBeforeCompression;
+    }
+
+    //Time spent in the Deflater, including frames that turned out incompressible.
+    public long getCompressTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(mCompressNanos);
+    }
+
+    public long getInflatedFrames() {
+        return mInflatedFrames;
+    }
+
+    public long getBytesBeforeInflate() {
+        return mBytesBeforeInflate;
+    }
+
+    public long getBytesAfterInflate() {
+        return mBytesAfterInflate;
+    }
+
+    public long getInflateTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(mInflateNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressed=" + mCompressedFrames + ", incompressible=" + mIncompressibleFrames
+                + ", ratio=" + getCompressionRatio() + ", compressMicros=" + getCompressTimeMicros()
+                + ", inflated=" + mInflatedFrames + ", inflateMicros=" + getInflateTimeMicros() + "}";
+    }
+}
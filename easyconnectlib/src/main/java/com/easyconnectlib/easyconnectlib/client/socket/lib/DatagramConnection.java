@@ -0,0 +1,509 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import android.util.Log;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.metrics.ConnectionMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//UDP transport for loss tolerant, latency critical data such as telemetry. There is no handshake, retransmission or
+//ordering, so a lost datagram never holds up the ones behind it. Every send is one datagram, written on the calling
+//thread, and every datagram received is one onDataReceived call. The reader drains all datagrams queued on a wakeup
+//through a single pooled direct buffer.
+//With sequence numbers every datagram starts with a one byte stream id and a four byte sequence number counted per
+//stream, and the receiving side keeps loss, reordering and duplicate counts per stream. The peer has to use the same
+//header in both directions.
+public class DatagramConnection {
+
+    private final String TAG = DatagramConnection.class.getSimpleName();
+    //Largest UDP payload over IPv4.
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+    public static final int SEQUENCE_HEADER_LENGTH = 5;
+    public static final int MAX_STREAMS = 256;
+    //Late datagrams further back than this are counted as late, unless RESTART_RUN_LENGTH of them in a row continue
+    //each other, which is taken as the peer having restarted its sequence.
+    static final int MAX_REORDER_DISTANCE = 1024;
+    static final int RESTART_RUN_LENGTH = 3;
+    private volatile DatagramChannel mDatagramChannel;
+    private volatile Selector mReadSelector;
+    private SocketConnectionListener mSocketConnectionListener;
+    private final ConnectionMetrics mMetrics = new ConnectionMetrics();
+    private volatile BufferPool mBufferPool = BufferPool.getDirectPool();
+    private volatile ClientSocketConnection.ReceiveMode mReceiveMode = ClientSocketConnection.ReceiveMode.TEXT;
+    private volatile Charset mReceiveCharset = Charset.defaultCharset();
+    private volatile boolean isSequenceNumbersEnabled;
+    private volatile boolean isReadThreadRunning;
+    private final AtomicIntegerArray mSendSequences = new AtomicIntegerArray(MAX_STREAMS);
+    private final AtomicReferenceArray<SequenceTracker> mSequenceTrackers = new AtomicReferenceArray<>(MAX_STREAMS);
+    private final AtomicLong mMalformedDatagrams = new AtomicLong();
+    private static final ThreadLocal<ByteBuffer[]> sSendBuffers = new ThreadLocal<>();
+
+    public DatagramConnection() {
+        mSocketConnectionListener = null;
+    }
+
+    public DatagramConnection(SocketConnectionListener socketConnectionListener) {
+        mSocketConnectionListener = socketConnectionListener;
+    }
+
+    public void registerSocketConnectionListener(SocketConnectionListener socketConnectionListener) {
+        mSocketConnectionListener = socketConnectionListener;
+    }
+
+    public void unRegisterSocketConnectionListener() {
+        mSocketConnectionListener = null;
+    }
+
+    //Takes effect from the next open call. Each datagram is decoded on its own, text never spans two datagrams.
+    public void setReceiveMode(ClientSocketConnection.ReceiveMode receiveMode) {
+        mReceiveMode = receiveMode;
+    }
+
+    public void setReceiveMode(ClientSocketConnection.ReceiveMode receiveMode, Charset charset) {
+        mReceiveCharset = charset;
+        mReceiveMode = receiveMode;
+    }
+
+    public ClientSocketConnection.ReceiveMode getReceiveMode() {
+        return mReceiveMode;
+    }
+
+    //Takes effect from the next open call.
+    public void enableSequenceNumbers() {
+        isSequenceNumbersEnabled = true;
+    }
+
+    public void disableSequenceNumbers() {
+        isSequenceNumbersEnabled = false;
+    }
+
+    public boolean isSequenceNumbersEnabled() {
+        return isSequenceNumbersEnabled;
+    }
+
+    public void setBufferPool(BufferPool bufferPool) {
+        mBufferPool = bufferPool;
+    }
+
+    public BufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    public ConnectionMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    //Nothing is ever queued, so the queue fields of the snapshot stay 0.
+    public ConnectionMetrics.Snapshot getMetricsSnapshot() {
+        return mMetrics.snapshot(0, 0);
+    }
+
+    //Counters of one stream since it was first received, all 0 if nothing arrived on it yet.
+    public DatagramStreamStats getStreamStats(int streamId) {
+        checkStreamId(streamId);
+        SequenceTracker sequenceTracker = mSequenceTrackers.get(streamId);
+        return sequenceTracker == null ? new DatagramStreamStats(streamId, 0, 0, 0, 0, 0) : sequenceTracker.snapshot();
+    }
+
+    //Every stream something was received on.
+    public List<DatagramStreamStats> getStreamStats() {
+        List<DatagramStreamStats> streamStats = new ArrayList<>();
+        for (int i = 0; i < MAX_STREAMS; i++) {
+            SequenceTracker sequenceTracker = mSequenceTrackers.get(i);
+            if (sequenceTracker != null) {
+                streamStats.add(sequenceTracker.snapshot());
+            }
+        }
+        return streamStats;
+    }
+
+    //Datagrams dropped because they were too short for the sequence header.
+    public long getMalformedDatagrams() {
+        return mMalformedDatagrams.get();
+    }
+
+    public boolean isOpen() {
+        return mDatagramChannel != null;
+    }
+
+    //Resolves the address and binds a local port on a new thread, then calls onClientConnected. No packet is exchanged,
+    //so this succeeds whether or not the server is up. An open channel is replaced.
+    public void open(final String serverIp, final int port) {
+        if (mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientConnecting(serverIp, port);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                DatagramChannel datagramChannel = null;
+                try {
+                    InetSocketAddress address = new InetSocketAddress(serverIp, port);
+                    if (address.isUnresolved()) {
+                        throw new UnknownHostException(serverIp);
+                    }
+                    datagramChannel = DatagramChannel.open();
+                    datagramChannel.configureBlocking(false);
+                    datagramChannel.connect(address);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    if (datagramChannel != null) {
+                        closeQuietly(datagramChannel);
+                    }
+                    notifySocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+                    return;
+                }
+                DatagramChannel previousChannel = mDatagramChannel;
+                Selector previousSelector = mReadSelector;
+                mDatagramChannel = datagramChannel;
+                if (previousChannel != null) {
+                    //The old reader sees its channel replaced once woken up.
+                    if (previousSelector != null) {
+                        previousSelector.wakeup();
+                    }
+                    closeQuietly(previousChannel);
+                }
+                ReadData readData = new ReadData(datagramChannel);
+                long connectNanos = System.nanoTime() - startNanos;
+                mMetrics.recordConnected(connectNanos);
+                if (mSocketConnectionListener != null) {
+                    mSocketConnectionListener.onClientConnected(serverIp, port);
+                }
+                readData.run();
+            }
+        }).start();
+    }
+
+    public void close() {
+        try {
+            isReadThreadRunning = false;
+            Selector readSelector = mReadSelector;
+            if (readSelector != null) {
+                readSelector.wakeup();
+            }
+            DatagramChannel datagramChannel = mDatagramChannel;
+            if (datagramChannel != null) {
+                mDatagramChannel = null;
+                datagramChannel.close();
+                if (mSocketConnectionListener != null) {
+                    mSocketConnectionListener.onClientSocketClose();
+                }
+            } else {
+                notifySocketError(SocketConnectionListener.SOCKET_ERROR.NOT_CONNECTED);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public WriteFuture send(ByteBuffer payload) {
+        return send(0, payload);
+    }
+
+    //Sends the remaining bytes of payload as one datagram before returning, the buffer can be reused right away.
+    //streamId only matters with sequence numbers. The future fails when the socket buffer is full instead of waiting,
+    //a datagram that cannot go out now is usually stale by the time it could.
+    public WriteFuture send(int streamId, ByteBuffer payload) {
+        checkStreamId(streamId);
+        DatagramChannel datagramChannel = mDatagramChannel;
+        if (datagramChannel == null) {
+            return WriteFuture.failed(new NotYetConnectedException());
+        }
+        boolean isSequenced = isSequenceNumbersEnabled;
+        int length = payload.remaining();
+        if (length > MAX_DATAGRAM_SIZE - (isSequenced ? SEQUENCE_HEADER_LENGTH : 0)) {
+            return WriteFuture.failed(new IOException("Datagram payload of " + length + " bytes is too large"));
+        }
+        long startNanos = System.nanoTime();
+        try {
+            int written;
+            if (isSequenced) {
+                ByteBuffer[] sendBuffers = getSendBuffers();
+                ByteBuffer header = sendBuffers[0];
+                header.clear();
+                header.put((byte) streamId).putInt(mSendSequences.getAndIncrement(streamId)).flip();
+                sendBuffers[1] = payload;
+                try {
+                    //A gathering write on a datagram channel sends all buffers as a single datagram.
+                    written = (int) datagramChannel.write(sendBuffers);
+                } finally {
+                    sendBuffers[1] = null;
+                }
+            } else {
+                written = datagramChannel.write(payload);
+            }
+            if (written == 0) {
+                return WriteFuture.failed(new IOException("Socket send buffer is full, datagram dropped"));
+            }
+            mMetrics.recordBytesSent(written);
+            mMetrics.recordMessageSent(System.nanoTime() - startNanos);
+            return WriteFuture.completed(length);
+        } catch (PortUnreachableException e) {
+            //An ICMP error for an earlier datagram, nobody listens on the server port right now.
+            return WriteFuture.failed(e);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return WriteFuture.failed(e);
+        }
+    }
+
+    private static ByteBuffer[] getSendBuffers() {
+        ByteBuffer[] sendBuffers = sSendBuffers.get();
+        if (sendBuffers == null) {
+            sendBuffers = new ByteBuffer[]{ByteBuffer.allocate(SEQUENCE_HEADER_LENGTH), null};
+            sSendBuffers.set(sendBuffers);
+        }
+        return sendBuffers;
+    }
+
+    private static void checkStreamId(int streamId) {
+        if (streamId < 0 || streamId >= MAX_STREAMS) {
+            throw new IllegalArgumentException("streamId must be between 0 and " + (MAX_STREAMS - 1));
+        }
+    }
+
+    private void notifySocketError(SocketConnectionListener.SOCKET_ERROR socket_error) {
+        if (mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientSocketError(socket_error);
+    }
+
+    private static void closeQuietly(DatagramChannel datagramChannel) {
+        try {
+            datagramChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private SequenceTracker getSequenceTracker(int streamId) {
+        SequenceTracker sequenceTracker = mSequenceTrackers.get(streamId);
+        if (sequenceTracker == null) {
+            sequenceTracker = new SequenceTracker(streamId);
+            mSequenceTrackers.set(streamId, sequenceTracker);
+        }
+        return sequenceTracker;
+    }
+
+    private class ReadData implements Runnable {
+        private final DatagramChannel mReadChannel;
+        private final ClientSocketConnection.ReceiveMode mReadMode;
+        private final Charset mReadCharset;
+        private final boolean isReadSequenced;
+
+        private ReadData(DatagramChannel datagramChannel) {
+            isReadThreadRunning = true;
+            mReadChannel = datagramChannel;
+            mReadMode = mReceiveMode;
+            mReadCharset = mReceiveCharset;
+            isReadSequenced = isSequenceNumbersEnabled;
+            //A new channel means a new peer session, counting starts over but the totals are kept.
+            for (int i = 0; i < MAX_STREAMS; i++) {
+                SequenceTracker sequenceTracker = mSequenceTrackers.get(i);
+                if (sequenceTracker != null) {
+                    sequenceTracker.restart();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            //Large enough for any datagram, a smaller one would silently truncate.
+            PooledBuffer readLease = mBufferPool.acquire(BufferPool.MAX_POOLED_SIZE);
+            ByteBuffer readBuffer = readLease.buffer();
+            ByteBuffer readOnlyView = readBuffer.asReadOnlyBuffer();
+            Selector selector = null;
+            try {
+                selector = Selector.open();
+                mReadSelector = selector;
+                mReadChannel.register(selector, SelectionKey.OP_READ);
+                while (isCurrent()) {
+                    //Blocks until a datagram arrived or close() wakes the selector up.
+                    if (selector.select() == 0) {
+                        continue;
+                    }
+                    selector.selectedKeys().clear();
+                    drainChannel(readBuffer, readOnlyView);
+                }
+            } catch (Exception e) {
+                if (isCurrent()) {
+                    e.printStackTrace();
+                    isReadThreadRunning = false;
+                    mDatagramChannel = null;
+                    closeQuietly(mReadChannel);
+                    notifySocketError(e instanceof IOException
+                            ? SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR
+                            : SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
+                }
+            } finally {
+                if (mReadSelector == selector) {
+                    mReadSelector = null;
+                }
+                readLease.release();
+                if (selector != null) {
+                    try {
+                        selector.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        //Like ClientSocketConnection, a reader whose channel was replaced by a new open must stop on its own.
+        private boolean isCurrent() {
+            return isReadThreadRunning && mDatagramChannel == mReadChannel;
+        }
+
+        //Receives every datagram already queued on the socket, one after the other through the same buffer.
+        private void drainChannel(ByteBuffer readBuffer, ByteBuffer readOnlyView) throws IOException {
+            while (isCurrent()) {
+                readBuffer.clear();
+                int read;
+                try {
+                    read = mReadChannel.read(readBuffer);
+                } catch (PortUnreachableException e) {
+                    //The server is not listening yet, the channel stays usable.
+                    Log.w(TAG, "Port unreachable: " + e.getMessage());
+                    return;
+                }
+                if (read <= 0) {
+                    return;
+                }
+                mMetrics.recordBytesReceived(read);
+                readOnlyView.limit(read);
+                readOnlyView.position(0);
+                if (isReadSequenced && !acceptSequenced(readOnlyView)) {
+                    continue;
+                }
+                mMetrics.recordMessageReceived();
+                SocketConnectionListener socketConnectionListener = mSocketConnectionListener;
+                if (socketConnectionListener != null) {
+                    String data = mReadMode == ClientSocketConnection.ReceiveMode.TEXT
+                            ? ClientSocketConnection.decodeText(readOnlyView, mReadCharset) : null;
+                    socketConnectionListener.onDataReceived(readOnlyView, data);
+                }
+            }
+        }
+
+        //Consumes the header and returns whether the payload should be delivered.
+        private boolean acceptSequenced(ByteBuffer datagram) {
+            if (datagram.remaining() < SEQUENCE_HEADER_LENGTH) {
+                mMalformedDatagrams.incrementAndGet();
+                return false;
+            }
+            int streamId = datagram.get() & 0xFF;
+            int sequence = datagram.getInt();
+            return getSequenceTracker(streamId).onReceived(sequence);
+        }
+    }
+
+    //Updated by the reader, read by getStreamStats from any thread.
+    static final class SequenceTracker {
+        private final int mStreamId;
+        private boolean isStarted;
+        private int mFirstSequence;
+        private int mHighestSequence;
+        //Far behind datagrams received in a row, each after the previous one, and the last of them.
+        private int mRestartRun;
+        private int mRestartSequence;
+        //Bit i is set once mHighestSequence - i was received.
+        private long mWindow;
+        private long mReceived;
+        private long mLost;
+        private long mReordered;
+        private long mDuplicates;
+
+        SequenceTracker(int streamId) {
+            mStreamId = streamId;
+        }
+
+        //Returns false for a duplicate. Sequence numbers are compared by their int difference, so they may wrap.
+        synchronized boolean onReceived(int sequence) {
+            if (!isStarted) {
+                start(sequence);
+                return true;
+            }
+            int distance = sequence - mHighestSequence;
+            if (distance <= -MAX_REORDER_DISTANCE) {
+                return onFarBehind(sequence);
+            }
+            mRestartRun = 0;
+            if (distance > 0) {
+                mLost += distance - 1;
+                mWindow = distance >= Long.SIZE ? 1 : mWindow << distance | 1;
+                mHighestSequence = sequence;
+                mReceived++;
+                return true;
+            }
+            if (distance > -Long.SIZE) {
+                long bit = 1L << -distance;
+                if ((mWindow & bit) != 0) {
+                    mDuplicates++;
+                    return false;
+                }
+                mWindow |= bit;
+            }
+            //Older than the window it cannot be told apart from a duplicate, it is counted as late.
+            mReceived++;
+            mReordered++;
+            //Only sequence numbers after the first one were counted as lost.
+            if (sequence - mFirstSequence > 0 && mLost > 0) {
+                mLost--;
+            }
+            return true;
+        }
+
+        synchronized void restart() {
+            isStarted = false;
+        }
+
+        //A single stray datagram from far back must not move the stream back, or every datagram since would be
+        //counted as lost. Only a run of them restarts the stream at the new range.
+        private boolean onFarBehind(int sequence) {
+            int runDistance = sequence - mRestartSequence;
+            if (mRestartRun > 0 && runDistance > 0 && runDistance < MAX_REORDER_DISTANCE) {
+                mRestartRun++;
+            } else {
+                mRestartRun = 1;
+            }
+            mRestartSequence = sequence;
+            if (mRestartRun < RESTART_RUN_LENGTH) {
+                //Older than the window, it cannot be told apart from a duplicate and is counted as late.
+                mReceived++;
+                mReordered++;
+                return true;
+            }
+            //The earlier datagrams of the run were counted as late, they belong to the new range.
+            mReordered -= RESTART_RUN_LENGTH - 1;
+            start(sequence);
+            return true;
+        }
+
+        synchronized DatagramStreamStats snapshot() {
+            return new DatagramStreamStats(mStreamId, mReceived, mLost, mReordered, mDuplicates, mHighestSequence);
+        }
+
+        private void start(int sequence) {
+            isStarted = true;
+            mRestartRun = 0;
+            mFirstSequence = sequence;
+            mHighestSequence = sequence;
+            mWindow = 1;
+            mReceived++;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+//Snapshot of the sequence numbers received on one datagram stream, see DatagramConnection.enableSequenceNumbers.
+//A gap in the sequence is counted as lost until the missing datagram turns up late, it then moves to reordered.
+public final class DatagramStreamStats {
+
+    private final int mStreamId;
+    private final long mReceived;
+    private final long mLost;
+    private final long mReordered;
+    private final long mDuplicates;
+    private final int mHighestSequence;
+
+    DatagramStreamStats(int streamId, long received, long lost, long reordered, long duplicates, int highestSequence) {
+        mStreamId = streamId;
+        mReceived = received;
+        mLost = lost;
+        mReordered = reordered;
+        mDuplicates = duplicates;
+        mHighestSequence = highestSequence;
+    }
+
+    public int getStreamId() {
+        return mStreamId;
+    }
+
+    //Distinct datagrams delivered, duplicates are not counted.
+    public long getReceived() {
+        return mReceived;
+    }
+
+    public long getLost() {
+        return mLost;
+    }
+
+    //Datagrams that arrived after one with a higher sequence number.
+    public long getReordered() {
+        return mReordered;
+    }
+
+    //Dropped without being delivered.
+    public long getDuplicates() {
+        return mDuplicates;
+    }
+
+    public int getHighestSequence() {
+        return mHighestSequence;
+    }
+
+    //Lost datagrams out of all that were sent up to the highest sequence number, 0 before anything arrived.
+    public double getLossRate() {
+        long expected = mReceived + mLost;
+        return expected == 0 ? 0 : mLost / (double) expected;
+    }
+
+    @Override
+    public String toString() {
+        return "stream " + mStreamId + ": " + mReceived + " received, " + mLost + " lost, " + mReordered + " reordered, "
+                + mDuplicates + " duplicates";
+    }
+}
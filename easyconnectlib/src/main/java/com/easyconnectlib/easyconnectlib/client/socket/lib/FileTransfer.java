@@ -0,0 +1,118 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.FileTransferListener;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+//Handle for a file queued with ClientSocketConnection.sendFile.
+public class FileTransfer {
+
+    private final FileChannel mFileChannel;
+    private final long mOffset;
+    private final long mLength;
+    private final boolean isOwnedChannel;
+    private final FileTransferListener mFileTransferListener;
+    private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+    private volatile long mTransferredBytes;
+    private volatile boolean isCancelled;
+    private volatile boolean isSuccess;
+
+    FileTransfer(FileChannel fileChannel, long offset, long length, boolean ownedChannel, FileTransferListener fileTransferListener) {
+        mFileChannel = fileChannel;
+        mOffset = offset;
+        mLength = length;
+        isOwnedChannel = ownedChannel;
+        mFileTransferListener = fileTransferListener;
+    }
+
+    static FileTransfer failed(FileTransferListener.TRANSFER_ERROR transfer_error, FileTransferListener fileTransferListener) {
+        FileTransfer fileTransfer = new FileTransfer(null, 0, 0, false, fileTransferListener);
+        fileTransfer.fail(transfer_error);
+        return fileTransfer;
+    }
+
+    FileChannel getFileChannel() {
+        return mFileChannel;
+    }
+
+    long getOffset() {
+        return mOffset;
+    }
+
+    //Stops the transfer before its next chunk. Bytes already sent are not recalled, the peer sees a truncated payload.
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    public boolean isDone() {
+        return mDoneLatch.getCount() == 0;
+    }
+
+    public boolean isSuccess() {
+        return isSuccess;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    public long getTransferredBytes() {
+        return mTransferredBytes;
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mDoneLatch.await(timeout, unit);
+    }
+
+    void onProgress(long transferredBytes) {
+        mTransferredBytes = transferredBytes;
+        if (mFileTransferListener != null)
+            mFileTransferListener.onTransferProgress(transferredBytes, mLength);
+    }
+
+    void complete() {
+        if (finish(true)) {
+            if (mFileTransferListener != null)
+                mFileTransferListener.onTransferComplete(mTransferredBytes);
+        }
+    }
+
+    void cancelled() {
+        if (finish(false)) {
+            if (mFileTransferListener != null)
+                mFileTransferListener.onTransferCancelled(mTransferredBytes);
+        }
+    }
+
+    void fail(FileTransferListener.TRANSFER_ERROR transfer_error) {
+        if (finish(false)) {
+            if (mFileTransferListener != null)
+                mFileTransferListener.onTransferError(transfer_error, mTransferredBytes);
+        }
+    }
+
+    private boolean finish(boolean success) {
+        synchronized (mDoneLatch) {
+            if (mDoneLatch.getCount() == 0) {
+                return false;
+            }
+            isSuccess = success;
+            mDoneLatch.countDown();
+        }
+        if (isOwnedChannel && mFileChannel != null) {
+            try {
+                mFileChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+//Decides how long the writer may hold queued messages back to send them in one gathering write.
+//Whatever is already queued is always written together, the policy only controls waiting for more.
+public final class FlushPolicy {
+
+    public static final long DEFAULT_MAX_LINGER_MICROS = 1000;
+    private static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 0);
+
+    private final int mSizeThreshold;
+    private final long mLingerMicros;
+
+    private FlushPolicy(int sizeThreshold, long lingerMicros) {
+        if (sizeThreshold < 0 || lingerMicros < 0) {
+            throw new IllegalArgumentException("sizeThreshold and lingerMicros must not be negative");
+        }
+        mSizeThreshold = sizeThreshold;
+        mLingerMicros = lingerMicros;
+    }
+
+    //Writes as soon as something is queued. Default, lowest latency for single messages.
+    public static FlushPolicy immediate() {
+        return IMMEDIATE;
+    }
+
+    //Waits until at least sizeThreshold bytes are queued, but never longer than DEFAULT_MAX_LINGER_MICROS.
+    public static FlushPolicy sizeThreshold(int sizeThreshold) {
+        return new FlushPolicy(sizeThreshold, DEFAULT_MAX_LINGER_MICROS);
+    }
+
+    public static FlushPolicy sizeThreshold(int sizeThreshold, long maxLingerMicros) {
+        return new FlushPolicy(sizeThreshold, maxLingerMicros);
+    }
+
+    //Holds the first queued message for up to lingerMicros to collect the ones queued right after it.
+    public static FlushPolicy linger(long lingerMicros) {
+        return new FlushPolicy(Integer.MAX_VALUE, lingerMicros);
+    }
+
+    public int getSizeThreshold() {
+        return mSizeThreshold;
+    }
+
+    public long getLingerMicros() {
+        return mLingerMicros;
+    }
+}
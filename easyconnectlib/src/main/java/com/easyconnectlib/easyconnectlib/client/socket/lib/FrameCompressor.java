@@ -0,0 +1,211 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//One Deflater and one Inflater per connection, reused for every frame instead of allocating zlib state per message.
+//Senders share the Deflater under a lock, the Inflater is only used by the reader. Both are dropped by release()
+//and created again on first use.
+final class FrameCompressor {
+
+    //Scratch arrays up to this size are kept between frames, larger ones are left to the garbage collector.
+    private static final int MAX_RETAINED_ARRAY_SIZE = BufferPool.MAX_POOLED_SIZE;
+    private static final int MIN_INFLATE_ARRAY_SIZE = 1024;
+
+    private final Object mDeflateLock = new Object();
+    private final Object mInflateLock = new Object();
+    //Payloads below the threshold are sent as they are, -1 while compression is off.
+    private volatile int mThreshold = -1;
+    private int mLevel = Deflater.BEST_SPEED;
+
+    private Deflater mDeflater;
+    private byte[] mDeflateInput;
+    private byte[] mDeflateOutput;
+    private long mCompressedFrames;
+    private long mIncompressibleFrames;
+    private long mBytesBeforeCompression;
+    private long mBytesAfterCompression;
+    private long mCompressNanos;
+
+    private Inflater mInflater;
+    private byte[] mInflateInput;
+    private byte[] mInflateOutput;
+    private long mInflatedFrames;
+    private long mBytesBeforeInflate;
+    private long mBytesAfterInflate;
+    private long mInflateNanos;
+
+    void enable(int threshold, int level) {
+        if (threshold < 0 || level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("threshold must not be negative and level must be between 1 and 9");
+        }
+        synchronized (mDeflateLock) {
+            if (mDeflater != null && mLevel != level) {
+                mDeflater.end();
+                mDeflater = null;
+            }
+            mLevel = level;
+            mThreshold = threshold;
+        }
+    }
+
+    void disable() {
+        mThreshold = -1;
+    }
+
+    boolean isEnabled() {
+        return mThreshold >= 0;
+    }
+
+    //Returns the compressed payload in a pooled buffer and consumes payload, or null when compression is off, the
+    //payload is below the threshold or it would not get smaller.
+    PooledBuffer compress(ByteBuffer payload, BufferPool bufferPool) {
+        int threshold = mThreshold;
+        int length = payload.remaining();
+        if (threshold < 0 || length < threshold || length == 0) {
+            return null;
+        }
+        synchronized (mDeflateLock) {
+            long startNanos = System.nanoTime();
+            if (mDeflater == null) {
+                mDeflater = new Deflater(mLevel);
+            }
+            byte[] input;
+            int offset;
+            if (payload.hasArray()) {
+                input = payload.array();
+                offset = payload.arrayOffset() + payload.position();
+            } else {
+                input = mDeflateInput = scratchArray(mDeflateInput, length);
+                payload.duplicate().get(input, 0, length);
+                offset = 0;
+            }
+            byte[] output = mDeflateOutput = scratchArray(mDeflateOutput, length);
+            mDeflater.setInput(input, offset, length);
+            mDeflater.finish();
+            //Output that reaches the input size is useless, stop there instead of sizing for the worst case.
+            int compressedLength = 0;
+            while (!mDeflater.finished() && compressedLength < length) {
+                compressedLength += mDeflater.deflate(output, compressedLength, length - compressedLength);
+            }
+            boolean isSmaller = mDeflater.finished() && compressedLength < length;
+            mDeflater.reset();
+            PooledBuffer compressed = null;
+            if (isSmaller) {
+                compressed = bufferPool.acquire(compressedLength);
+                compressed.buffer().put(output, 0, compressedLength).flip();
+                payload.position(payload.limit());
+                mCompressedFrames++;
+                mBytesBeforeCompression += length;
+                mBytesAfterCompression += compressedLength;
+            } else {
+                mIncompressibleFrames++;
+            }
+            releaseScratch(input == mDeflateInput, output);
+            mCompressNanos += System.nanoTime() - startNanos;
+            return compressed;
+        }
+    }
+
+    //Inflates the rest of compressed. The result wraps a scratch array and is only valid until the next call.
+    ByteBuffer inflate(ByteBuffer compressed, int maxLength) throws DataFormatException {
+        synchronized (mInflateLock) {
+            long startNanos = System.nanoTime();
+            if (mInflater == null) {
+                mInflater = new Inflater();
+            }
+            int length = compressed.remaining();
+            byte[] input;
+            int offset;
+            if (compressed.hasArray()) {
+                input = compressed.array();
+                offset = compressed.arrayOffset() + compressed.position();
+            } else {
+                input = mInflateInput = scratchArray(mInflateInput, length);
+                compressed.duplicate().get(input, 0, length);
+                offset = 0;
+            }
+            byte[] output = mInflateOutput;
+            if (output == null) {
+                output = new byte[Math.min(maxLength, Math.max(MIN_INFLATE_ARRAY_SIZE, length * 4))];
+            }
+            int inflated = 0;
+            try {
+                mInflater.setInput(input, offset, length);
+                while (!mInflater.finished()) {
+                    if (inflated == output.length) {
+                        if (output.length >= maxLength) {
+                            throw new DataFormatException("Inflated frame exceeds " + maxLength + " bytes");
+                        }
+                        byte[] grown = new byte[(int) Math.min(output.length * 2L, maxLength)];
+                        System.arraycopy(output, 0, grown, 0, inflated);
+                        output = grown;
+                    }
+                    int read = mInflater.inflate(output, inflated, output.length - inflated);
+                    if (read == 0 && (mInflater.needsInput() || mInflater.needsDictionary())) {
+                        throw new DataFormatException("Compressed frame is truncated");
+                    }
+                    inflated += read;
+                }
+            } finally {
+                mInflater.reset();
+                if (input == mInflateInput && input.length > MAX_RETAINED_ARRAY_SIZE) {
+                    mInflateInput = null;
+                }
+            }
+            compressed.position(compressed.limit());
+            //A large array stays reachable through the result only, so it is collected once the frame is handled.
+            mInflateOutput = output.length > MAX_RETAINED_ARRAY_SIZE ? null : output;
+            mInflatedFrames++;
+            mBytesBeforeInflate += length;
+            mBytesAfterInflate += inflated;
+            mInflateNanos += System.nanoTime() - startNanos;
+            return ByteBuffer.wrap(output, 0, inflated);
+        }
+    }
+
+    CompressionStats getStats() {
+        synchronized (mDeflateLock) {
+            synchronized (mInflateLock) {
+                return new CompressionStats(mCompressedFrames, mIncompressibleFrames, mBytesBeforeCompression,
+                        mBytesAfterCompression, mCompressNanos, mInflatedFrames, mBytesBeforeInflate, mBytesAfterInflate,
+                        mInflateNanos);
+            }
+        }
+    }
+
+    //Frees the native zlib memory, called when the connection is closed.
+    void release() {
+        synchronized (mDeflateLock) {
+            if (mDeflater != null) {
+                mDeflater.end();
+                mDeflater = null;
+            }
+            mDeflateInput = null;
+            mDeflateOutput = null;
+        }
+        synchronized (mInflateLock) {
+            if (mInflater != null) {
+                mInflater.end();
+                mInflater = null;
+            }
+            mInflateInput = null;
+            mInflateOutput = null;
+        }
+    }
+
+    private void releaseScratch(boolean usedInput, byte[] output) {
+        if (usedInput && mDeflateInput.length > MAX_RETAINED_ARRAY_SIZE) {
+            mDeflateInput = null;
+        }
+        if (output.length > MAX_RETAINED_ARRAY_SIZE) {
+            mDeflateOutput = null;
+        }
+    }
+
+    private static byte[] scratchArray(byte[] array, int length) {
+        return array != null && array.length >= length ? array : new byte[length];
+    }
+}
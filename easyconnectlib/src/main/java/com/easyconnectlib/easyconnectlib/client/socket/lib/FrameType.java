@@ -0,0 +1,37 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+//First byte of every frame sent through RequestCorrelator or the connection heartbeat. REQUEST and RESPONSE frames follow it with a
+//big endian int correlation id, the rest of the frame is the payload.
+public final class FrameType {
+
+    public static final byte DATA = 0;
+    public static final byte REQUEST = 1;
+    public static final byte RESPONSE = 2;
+    //Heartbeat frames, followed by the sender's 8 byte timestamp. A PING is answered with a PONG echoing it.
+    public static final byte PING = 3;
+    public static final byte PONG = 4;
+    //Flag set on the type byte when the payload after the header is zlib compressed. The correlation id is never compressed.
+    public static final byte COMPRESSED = (byte) 0x80;
+
+    static final int MAX_HEADER_LENGTH = 5;
+
+    private FrameType() {
+    }
+
+    static boolean hasCorrelationId(byte frameType) {
+        byte baseType = baseType(frameType);
+        return baseType == REQUEST || baseType == RESPONSE;
+    }
+
+    static boolean isCompressed(byte frameType) {
+        return (frameType & COMPRESSED) != 0;
+    }
+
+    static byte baseType(byte frameType) {
+        return (byte) (frameType & ~COMPRESSED);
+    }
+
+    static int getHeaderLength(byte frameType) {
+        return hasCorrelationId(frameType) ? 5 : 1;
+    }
+}
@@ -0,0 +1,136 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Open addressing map from int to non-null values. Keys are not boxed and there is no entry object per mapping,
+//removal shifts the following entries back so lookups never need tombstones. Not thread safe.
+class IntObjectHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+    private int mMask;
+
+    IntObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    IntObjectHashMap(int expectedSize) {
+        //Kept at most half full so probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * 2 - 1, DEFAULT_CAPACITY - 1)) << 1;
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        mMask = capacity - 1;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) mValues[index];
+    }
+
+    //Returns the previous value of key, or null.
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int index = hash(key) & mMask;
+        while (mValues[index] != null) {
+            if (mKeys[index] == key) {
+                V previous = (V) mValues[index];
+                mValues[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mMask;
+        }
+        mKeys[index] = key;
+        mValues[index] = value;
+        if (++mSize > mKeys.length >> 1) {
+            resize(mKeys.length << 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V removed = (V) mValues[index];
+        mValues[index] = null;
+        mSize--;
+        //Move back every following entry of the run that would no longer be reachable through the freed slot.
+        int free = index;
+        int next = (index + 1) & mMask;
+        while (mValues[next] != null) {
+            int home = hash(mKeys[next]) & mMask;
+            if (((next - home) & mMask) >= ((next - free) & mMask)) {
+                mKeys[free] = mKeys[next];
+                mValues[free] = mValues[next];
+                mValues[next] = null;
+                free = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        return removed;
+    }
+
+    //Empties the map and returns what it held.
+    @SuppressWarnings("unchecked")
+    List<V> removeAll() {
+        List<V> values = new ArrayList<>(mSize);
+        for (Object value : mValues) {
+            if (value != null) {
+                values.add((V) value);
+            }
+        }
+        Arrays.fill(mValues, null);
+        mSize = 0;
+        return values;
+    }
+
+    private int indexOf(int key) {
+        int index = hash(key) & mMask;
+        while (mValues[index] != null) {
+            if (mKeys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] keys = mKeys;
+        Object[] values = mValues;
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        mMask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                int index = hash(keys[i]) & mMask;
+                while (mValues[index] != null) {
+                    index = (index + 1) & mMask;
+                }
+                mKeys[index] = keys[i];
+                mValues[index] = values[i];
+            }
+        }
+    }
+
+    //Correlation ids are sequential, spread them so neighbouring keys do not form one long probe run.
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
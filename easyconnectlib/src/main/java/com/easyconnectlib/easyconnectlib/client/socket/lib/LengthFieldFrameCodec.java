@@ -0,0 +1,205 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Splits the byte stream into frames of the form [length prefix][payload] and builds the prefix for outgoing frames.
+//Encoding is stateless, decoding keeps the partial frame of the previous read and must stay on the reader thread.
+public class LengthFieldFrameCodec {
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    public static final int MAX_HEADER_LENGTH = 5;
+    private static final int INITIAL_CUMULATION_SIZE = 1024;
+
+    public enum LengthPrefix {
+        VARINT,
+        FIXED_16,
+        FIXED_32
+    }
+
+    private final LengthPrefix mLengthPrefix;
+    private final int mMaxFrameLength;
+    private ByteBuffer mCumulation;
+    private int mHeaderLength;
+
+    public LengthFieldFrameCodec(LengthPrefix lengthPrefix) {
+        this(lengthPrefix, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public LengthFieldFrameCodec(LengthPrefix lengthPrefix, int maxFrameLength) {
+        mLengthPrefix = lengthPrefix;
+        mMaxFrameLength = lengthPrefix == LengthPrefix.FIXED_16 ? Math.min(maxFrameLength, 0xFFFF) : maxFrameLength;
+    }
+
+    public LengthPrefix getLengthPrefix() {
+        return mLengthPrefix;
+    }
+
+    public int getMaxFrameLength() {
+        return mMaxFrameLength;
+    }
+
+    public int getHeaderLength(int frameLength) {
+        switch (mLengthPrefix) {
+            case FIXED_16:
+                return 2;
+            case FIXED_32:
+                return 4;
+            default:
+                int headerLength = 1;
+                while ((frameLength & ~0x7F) != 0) {
+                    frameLength >>>= 7;
+                    headerLength++;
+                }
+                return headerLength;
+        }
+    }
+
+    //Writes the length prefix for a payload of frameLength bytes at the position of header.
+    public void encodeHeader(int frameLength, ByteBuffer header) {
+        if (frameLength < 0 || frameLength > mMaxFrameLength) {
+            throw new IllegalArgumentException("Frame length " + frameLength + " exceeds " + mMaxFrameLength);
+        }
+        switch (mLengthPrefix) {
+            case FIXED_16:
+                header.putShort((short) frameLength);
+                break;
+            case FIXED_32:
+                header.putInt(frameLength);
+                break;
+            default:
+                while ((frameLength & ~0x7F) != 0) {
+                    header.put((byte) ((frameLength & 0x7F) | 0x80));
+                    frameLength >>>= 7;
+                }
+                header.put((byte) frameLength);
+                break;
+        }
+    }
+
+    //Consumes all of in and hands every complete frame to frameListener.
+    //Frames that lie entirely inside in are passed as a view of in, only a frame split across reads is copied.
+    public void decode(ByteBuffer in, SocketFrameListener frameListener) throws IOException {
+        if (mCumulation != null && mCumulation.position() > 0 && !decodeCumulation(in, frameListener)) {
+            return;
+        }
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int frameLength = peekLength(in, start, in.remaining());
+            if (frameLength < 0 || in.remaining() < mHeaderLength + frameLength) {
+                cumulate(in, frameLength);
+                return;
+            }
+            int frameStart = start + mHeaderLength;
+            int frameEnd = frameStart + frameLength;
+            int limit = in.limit();
+            in.limit(frameEnd).position(frameStart);
+            try {
+                frameListener.onFrameReceived(in);
+            } finally {
+                in.limit(limit).position(frameEnd);
+            }
+        }
+    }
+
+    //Drops any partial frame, used when the underlying connection is re-established.
+    public void reset() {
+        if (mCumulation != null) {
+            mCumulation.clear();
+        }
+    }
+
+    //Completes the frame held in the cumulation buffer. Returns false if in was used up before that.
+    private boolean decodeCumulation(ByteBuffer in, SocketFrameListener frameListener) throws IOException {
+        int frameLength = peekLength(mCumulation, 0, mCumulation.position());
+        while (frameLength < 0) {
+            if (!in.hasRemaining()) {
+                return false;
+            }
+            mCumulation.put(in.get());
+            frameLength = peekLength(mCumulation, 0, mCumulation.position());
+        }
+        int totalLength = mHeaderLength + frameLength;
+        ensureCumulationCapacity(totalLength);
+        int toCopy = Math.min(totalLength - mCumulation.position(), in.remaining());
+        int limit = in.limit();
+        in.limit(in.position() + toCopy);
+        mCumulation.put(in);
+        in.limit(limit);
+        if (mCumulation.position() < totalLength) {
+            return false;
+        }
+        mCumulation.flip();
+        mCumulation.position(mHeaderLength);
+        try {
+            frameListener.onFrameReceived(mCumulation);
+        } finally {
+            mCumulation.clear();
+        }
+        return true;
+    }
+
+    private void cumulate(ByteBuffer in, int frameLength) {
+        int required = frameLength < 0 ? in.remaining() : mHeaderLength + frameLength;
+        ensureCumulationCapacity(Math.max(required, INITIAL_CUMULATION_SIZE));
+        mCumulation.put(in);
+    }
+
+    private void ensureCumulationCapacity(int capacity) {
+        if (mCumulation == null) {
+            mCumulation = ByteBuffer.allocateDirect(capacity);
+        } else if (mCumulation.capacity() < capacity) {
+            ByteBuffer cumulation = ByteBuffer.allocateDirect(Integer.highestOneBit(capacity - 1) << 1);
+            mCumulation.flip();
+            cumulation.put(mCumulation);
+            mCumulation = cumulation;
+        }
+    }
+
+    //Reads the length prefix at offset without moving the position. Returns -1 while the prefix is incomplete.
+    private int peekLength(ByteBuffer buffer, int offset, int available) throws IOException {
+        int frameLength;
+        switch (mLengthPrefix) {
+            case FIXED_16:
+                if (available < 2) {
+                    return -1;
+                }
+                mHeaderLength = 2;
+                frameLength = buffer.getShort(offset) & 0xFFFF;
+                break;
+            case FIXED_32:
+                if (available < 4) {
+                    return -1;
+                }
+                mHeaderLength = 4;
+                frameLength = buffer.getInt(offset);
+                break;
+            default:
+                frameLength = 0;
+                int shift = 0;
+                int index = 0;
+                while (true) {
+                    if (index >= available) {
+                        return -1;
+                    }
+                    if (index >= MAX_HEADER_LENGTH) {
+                        throw new IOException("Malformed varint length prefix");
+                    }
+                    byte b = buffer.get(offset + index++);
+                    frameLength |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) {
+                        break;
+                    }
+                    shift += 7;
+                }
+                mHeaderLength = index;
+                break;
+        }
+        if (frameLength < 0 || frameLength > mMaxFrameLength) {
+            throw new IOException("Frame length " + (frameLength & 0xFFFFFFFFL) + " exceeds " + mMaxFrameLength);
+        }
+        return frameLength;
+    }
+}
@@ -0,0 +1,406 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.TextRecordListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//A socket owned by SocketConnectionManager. Reads, writes and callbacks all run on the event loop thread it belongs to.
+public class ManagedConnection {
+
+    //Upper bounds for one selector wakeup so a single busy device cannot starve the others on the same loop.
+    static final int MAX_READS_PER_WAKEUP = 16;
+    static final int MAX_WRITE_BYTES_PER_WAKEUP = 256 * 1024;
+
+    private final String mId;
+    private final String mHost;
+    //Unresolved until register has looked the host up.
+    private volatile InetSocketAddress mRemoteAddress;
+    private final SocketEventLoop mEventLoop;
+    private final SocketConnectionManager mSocketConnectionManager;
+    private final SocketConnectionListener mSocketConnectionListener;
+    private volatile SocketFrameListener mSocketFrameListener;
+    private volatile LengthFieldFrameCodec mFrameCodec;
+    private volatile ClientSocketConnection.ReceiveMode mReceiveMode = ClientSocketConnection.ReceiveMode.BINARY;
+    private volatile StreamingTextDecoder mTextDecoder = new StreamingTextDecoder(Charset.defaultCharset());
+    private volatile StreamingTextDecoder mRecordDecoder;
+    private volatile TextRecordListener mTextRecordListener;
+    private String mDecodedText;
+    private final Queue<PendingWrite> mOutboundQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isFlushScheduled = new AtomicBoolean();
+    private volatile boolean isConnected;
+    private volatile boolean isClosed;
+    private SocketChannel mSocketChannel;
+    private SelectionKey mSelectionKey;
+    private PendingWrite mCurrentWrite;
+    private long mConnectStartNanos;
+    private volatile long mConnectTimeMillis = -1;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            isFlushScheduled.set(false);
+            if (isConnected && (mSelectionKey.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    onFailure(e);
+                }
+            }
+        }
+    };
+
+    private final SocketFrameListener mFrameDispatcher = new SocketFrameListener() {
+        @Override
+        public void onFrameReceived(ByteBuffer frameBuffer) {
+            SocketFrameListener socketFrameListener = mSocketFrameListener;
+            if (socketFrameListener != null) {
+                socketFrameListener.onFrameReceived(frameBuffer);
+            }
+        }
+    };
+
+    private final TextRecordListener mTextCollector = new TextRecordListener() {
+        @Override
+        public void onRecordReceived(CharSequence record) {
+            mDecodedText = record.toString();
+        }
+    };
+
+    private final TextRecordListener mRecordDispatcher = new TextRecordListener() {
+        @Override
+        public void onRecordReceived(CharSequence record) {
+            TextRecordListener textRecordListener = mTextRecordListener;
+            if (textRecordListener != null) {
+                textRecordListener.onRecordReceived(record);
+            }
+        }
+    };
+
+    ManagedConnection(String id, String host, InetSocketAddress remoteAddress, SocketEventLoop eventLoop,
+                      SocketConnectionManager socketConnectionManager, SocketConnectionListener socketConnectionListener) {
+        mId = id;
+        mHost = host;
+        mRemoteAddress = remoteAddress;
+        mEventLoop = eventLoop;
+        mSocketConnectionManager = socketConnectionManager;
+        mSocketConnectionListener = socketConnectionListener;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return mRemoteAddress;
+    }
+
+    //Time from starting the connect to the established connection, -1 until connected.
+    public long getConnectTimeMillis() {
+        return mConnectTimeMillis;
+    }
+
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    //Frame options should be set before the peer starts sending, normally right after SocketConnectionManager.connect.
+    public void enableFraming(LengthFieldFrameCodec.LengthPrefix lengthPrefix) {
+        mRecordDecoder = null;
+        mFrameCodec = new LengthFieldFrameCodec(lengthPrefix);
+    }
+
+    //Splits the received text at delimiter and delivers each record to TextRecordListener, replaces framing.
+    public void enableDelimitedText(String delimiter, Charset charset) {
+        if (delimiter == null || delimiter.isEmpty()) {
+            throw new IllegalArgumentException("delimiter must not be empty");
+        }
+        mFrameCodec = null;
+        mRecordDecoder = new StreamingTextDecoder(charset, delimiter);
+    }
+
+    public void registerTextRecordListener(TextRecordListener textRecordListener) {
+        mTextRecordListener = textRecordListener;
+    }
+
+    public void unRegisterTextRecordListener() {
+        mTextRecordListener = null;
+    }
+
+    public void registerSocketFrameListener(SocketFrameListener socketFrameListener) {
+        mSocketFrameListener = socketFrameListener;
+    }
+
+    public void unRegisterSocketFrameListener() {
+        mSocketFrameListener = null;
+    }
+
+    //Managed connections default to BINARY since gateways usually speak binary protocols.
+    public void setReceiveMode(ClientSocketConnection.ReceiveMode receiveMode, Charset charset) {
+        mTextDecoder = new StreamingTextDecoder(charset);
+        mReceiveMode = receiveMode;
+    }
+
+    //Never blocks. The buffer must not be modified until the future is done.
+    public WriteFuture write(ByteBuffer byteBuffer) {
+        return enqueue(new PendingWrite(null, byteBuffer));
+    }
+
+    public WriteFuture writeFrame(ByteBuffer payload) {
+        LengthFieldFrameCodec frameCodec = mFrameCodec;
+        if (frameCodec == null) {
+            return WriteFuture.failed(new IllegalStateException("Framing is not enabled"));
+        }
+        PooledBuffer header = mSocketConnectionManager.getBufferPool().acquire(LengthFieldFrameCodec.MAX_HEADER_LENGTH);
+        frameCodec.encodeHeader(payload.remaining(), header.buffer());
+        header.buffer().flip();
+        return enqueue(new PendingWrite(header, header.buffer(), payload));
+    }
+
+    public void close() {
+        mEventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeNow(true);
+            }
+        });
+    }
+
+    private WriteFuture enqueue(PendingWrite pendingWrite) {
+        if (isClosed) {
+            pendingWrite.fail(new ClosedChannelException());
+            return pendingWrite.writeFuture;
+        }
+        mOutboundQueue.offer(pendingWrite);
+        if (isClosed) {
+            //closeNow may have drained the queue between the check above and the offer.
+            failQueuedWrites();
+            return pendingWrite.writeFuture;
+        }
+        if (isFlushScheduled.compareAndSet(false, true)) {
+            mEventLoop.execute(mFlushTask);
+        }
+        return pendingWrite.writeFuture;
+    }
+
+    void register() throws IOException {
+        mConnectStartNanos = System.nanoTime();
+        if (mRemoteAddress.isUnresolved()) {
+            mRemoteAddress = new InetSocketAddress(mHost, mRemoteAddress.getPort());
+            mSocketConnectionManager.onAddressResolved(this);
+        }
+        mSocketChannel = SocketChannel.open();
+        mSocketChannel.configureBlocking(false);
+        mSocketChannel.socket().setTcpNoDelay(true);
+        if (mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientConnecting(mHost, mRemoteAddress.getPort());
+        if (mSocketChannel.connect(mRemoteAddress)) {
+            mSelectionKey = mSocketChannel.register(mEventLoop.getSelector(), SelectionKey.OP_READ, this);
+            onConnected();
+        } else {
+            mSelectionKey = mSocketChannel.register(mEventLoop.getSelector(), SelectionKey.OP_CONNECT, this);
+        }
+    }
+
+    void onConnectable() throws IOException {
+        if (mSocketChannel.finishConnect()) {
+            mSelectionKey.interestOps(SelectionKey.OP_READ);
+            onConnected();
+        }
+    }
+
+    private void onConnected() throws IOException {
+        mConnectTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mConnectStartNanos);
+        isConnected = true;
+        if (mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientConnected(mHost, mRemoteAddress.getPort());
+        flush();
+    }
+
+    void onReadable() throws IOException {
+        ByteBuffer readBuffer = mEventLoop.getReadBuffer();
+        for (int i = 0; i < MAX_READS_PER_WAKEUP && !isClosed; i++) {
+            readBuffer.clear();
+            int read = mSocketChannel.read(readBuffer);
+            if (read == 0) {
+                return;
+            }
+            if (read < 0) {
+                closeNow(false);
+                if (mSocketConnectionListener != null)
+                    mSocketConnectionListener.onClientSocketError(SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR);
+                return;
+            }
+            readBuffer.flip();
+            deliver(readBuffer);
+        }
+    }
+
+    private void deliver(ByteBuffer readBuffer) throws IOException {
+        LengthFieldFrameCodec frameCodec = mFrameCodec;
+        StreamingTextDecoder recordDecoder = mRecordDecoder;
+        if (frameCodec != null) {
+            frameCodec.decode(readBuffer, mFrameDispatcher);
+        } else if (recordDecoder != null) {
+            recordDecoder.decode(readBuffer, mRecordDispatcher);
+        } else if (mSocketConnectionListener != null) {
+            if (mReceiveMode == ClientSocketConnection.ReceiveMode.BINARY) {
+                ByteBuffer readOnlyView = mEventLoop.getReadOnlyView();
+                readOnlyView.limit(readBuffer.limit());
+                readOnlyView.position(readBuffer.position());
+                mSocketConnectionListener.onDataReceived(readOnlyView, null);
+            } else {
+                int start = readBuffer.position();
+                mDecodedText = "";
+                mTextDecoder.decode(readBuffer, mTextCollector);
+                readBuffer.position(start);
+                String stringData = mDecodedText;
+                mDecodedText = null;
+                mSocketConnectionListener.onDataReceived(readBuffer, stringData);
+            }
+        }
+    }
+
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    //Writes queued buffers until the socket is full, the queue is empty or this wakeup's byte budget is spent.
+    private void flush() throws IOException {
+        if (!isConnected) {
+            return;
+        }
+        int budget = MAX_WRITE_BYTES_PER_WAKEUP;
+        while (budget > 0) {
+            if (mCurrentWrite == null) {
+                mCurrentWrite = mOutboundQueue.poll();
+                if (mCurrentWrite == null) {
+                    setWriteInterest(false);
+                    return;
+                }
+                if (!mCurrentWrite.writeFuture.markWriting()) {
+                    mCurrentWrite.release();
+                    mCurrentWrite = null;
+                    continue;
+                }
+            }
+            long written;
+            try {
+                written = mSocketChannel.write(mCurrentWrite.byteBuffers);
+            } catch (IOException e) {
+                mCurrentWrite.fail(e);
+                mCurrentWrite = null;
+                throw e;
+            }
+            mCurrentWrite.writtenBytes += written;
+            budget -= written;
+            if (mCurrentWrite.hasRemaining()) {
+                if (written == 0) {
+                    setWriteInterest(true);
+                    return;
+                }
+                continue;
+            }
+            mCurrentWrite.complete();
+            mCurrentWrite = null;
+        }
+        //Budget used up with data left, come back on the next wakeup after the other connections had their turn.
+        setWriteInterest(true);
+    }
+
+    private void setWriteInterest(boolean enabled) {
+        int interestOps = mSelectionKey.interestOps();
+        int newInterestOps = enabled ? interestOps | SelectionKey.OP_WRITE : interestOps & ~SelectionKey.OP_WRITE;
+        if (newInterestOps != interestOps) {
+            mSelectionKey.interestOps(newInterestOps);
+        }
+    }
+
+    void onFailure(Exception e) {
+        boolean wasClosed = isClosed;
+        closeNow(false);
+        if (!wasClosed && mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientSocketError(e instanceof IOException || e instanceof UnresolvedAddressException
+                    ? SocketConnectionListener.SOCKET_ERROR.CONNECTION_ERROR
+                    : SocketConnectionListener.SOCKET_ERROR.INTERNAL_ERROR);
+    }
+
+    void closeNow(boolean notifyClose) {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        isConnected = false;
+        if (mSelectionKey != null) {
+            mSelectionKey.cancel();
+        }
+        try {
+            if (mSocketChannel != null) {
+                mSocketChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (mCurrentWrite != null) {
+            mCurrentWrite.fail(new ClosedChannelException());
+            mCurrentWrite = null;
+        }
+        failQueuedWrites();
+        mEventLoop.onConnectionRemoved();
+        mSocketConnectionManager.onConnectionClosed(this);
+        if (notifyClose && mSocketConnectionListener != null)
+            mSocketConnectionListener.onClientSocketClose();
+    }
+
+    //Safe from any thread, every write is polled and failed exactly once.
+    private void failQueuedWrites() {
+        PendingWrite pendingWrite;
+        while ((pendingWrite = mOutboundQueue.poll()) != null) {
+            pendingWrite.fail(new ClosedChannelException());
+        }
+    }
+
+    private static class PendingWrite {
+        private final ByteBuffer[] byteBuffers;
+        private final PooledBuffer pooledBuffer;
+        private final WriteFuture writeFuture = new WriteFuture();
+        private long writtenBytes;
+
+        private PendingWrite(PooledBuffer pooledBuffer, ByteBuffer... byteBuffers) {
+            this.byteBuffers = byteBuffers;
+            this.pooledBuffer = pooledBuffer;
+        }
+
+        private boolean hasRemaining() {
+            return byteBuffers[byteBuffers.length - 1].hasRemaining();
+        }
+
+        private void complete() {
+            writeFuture.complete((int) writtenBytes);
+            release();
+        }
+
+        private void fail(Throwable cause) {
+            writeFuture.fail((int) writtenBytes, cause);
+            release();
+        }
+
+        private void release() {
+            if (pooledBuffer != null) {
+                pooledBuffer.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Reference counted lease on a buffer owned by a BufferPool. The buffer goes back to the pool when the count drops to zero.
+public final class PooledBuffer {
+
+    private final BufferPool mBufferPool;
+    private final ByteBuffer mByteBuffer;
+    private final int mSizeClass;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+    private ByteBuffer mReadOnlyView;
+    BufferPool.LeakRecord mLeakRecord;
+
+    PooledBuffer(BufferPool bufferPool, ByteBuffer byteBuffer, int sizeClass) {
+        mBufferPool = bufferPool;
+        mByteBuffer = byteBuffer;
+        mSizeClass = sizeClass;
+    }
+
+    void init(int capacity) {
+        mByteBuffer.clear();
+        mByteBuffer.limit(capacity);
+        mRefCount.set(1);
+    }
+
+    int getSizeClass() {
+        return mSizeClass;
+    }
+
+    public ByteBuffer buffer() {
+        return mByteBuffer;
+    }
+
+    //Read-only view of buffer() at its current position and limit. Created on first use and kept with the pooled
+    //buffer, so it is only valid until release() and is shared by every holder of the lease.
+    public ByteBuffer readOnlyBuffer() {
+        ByteBuffer readOnlyView = mReadOnlyView;
+        if (readOnlyView == null) {
+            readOnlyView = mByteBuffer.asReadOnlyBuffer();
+            mReadOnlyView = readOnlyView;
+        }
+        readOnlyView.clear();
+        readOnlyView.limit(mByteBuffer.limit());
+        readOnlyView.position(mByteBuffer.position());
+        return readOnlyView;
+    }
+
+    public int refCount() {
+        return mRefCount.get();
+    }
+
+    public PooledBuffer retain() {
+        while (true) {
+            int refCount = mRefCount.get();
+            if (refCount <= 0) {
+                throw new IllegalStateException("Buffer already released");
+            }
+            if (mRefCount.compareAndSet(refCount, refCount + 1)) {
+                return this;
+            }
+        }
+    }
+
+    //Returns true if this call handed the buffer back to the pool.
+    public boolean release() {
+        while (true) {
+            int refCount = mRefCount.get();
+            if (refCount <= 0) {
+                throw new IllegalStateException("Buffer already released");
+            }
+            if (mRefCount.compareAndSet(refCount, refCount - 1)) {
+                if (refCount == 1) {
+                    mBufferPool.recycle(this);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+}
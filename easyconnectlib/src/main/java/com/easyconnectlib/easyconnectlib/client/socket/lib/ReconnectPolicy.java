@@ -0,0 +1,59 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.util.Random;
+
+//Delays between reconnect attempts: capped exponential backoff with equal jitter. Each delay is at least half of
+//min(maxDelayMillis, initialDelayMillis * 2^attempt) and at most all of it, so clients that lost the same server
+//at the same moment do not come back in lockstep.
+public final class ReconnectPolicy {
+
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30 * 1000;
+    //maxAttempts value for retrying until the connection is closed by the app.
+    public static final int UNLIMITED_ATTEMPTS = 0;
+
+    private final long mInitialDelayMillis;
+    private final long mMaxDelayMillis;
+    private final int mMaxAttempts;
+    private final Random mRandom = new Random();
+
+    public ReconnectPolicy() {
+        this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, UNLIMITED_ATTEMPTS);
+    }
+
+    public ReconnectPolicy(long initialDelayMillis, long maxDelayMillis, int maxAttempts) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis || maxAttempts < 0) {
+            throw new IllegalArgumentException("initialDelayMillis must be positive and not above maxDelayMillis, maxAttempts must not be negative");
+        }
+        mInitialDelayMillis = initialDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mMaxAttempts = maxAttempts;
+    }
+
+    //attempt counts from 0 for the first reconnect after the connection was lost.
+    public boolean shouldRetry(int attempt) {
+        return mMaxAttempts == UNLIMITED_ATTEMPTS || attempt < mMaxAttempts;
+    }
+
+    public long getDelayMillis(int attempt) {
+        long cap = mMaxDelayMillis;
+        //Past 62 doublings the shift overflows, and the cap has long been reached anyway.
+        if (attempt < 62 && mInitialDelayMillis <= mMaxDelayMillis >> attempt) {
+            cap = mInitialDelayMillis << attempt;
+        }
+        long half = cap / 2;
+        return cap - half + (long) (mRandom.nextDouble() * (half + 1));
+    }
+
+    public long getInitialDelayMillis() {
+        return mInitialDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return mMaxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+}
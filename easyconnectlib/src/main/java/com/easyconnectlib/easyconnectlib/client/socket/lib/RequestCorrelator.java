@@ -0,0 +1,224 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import android.util.Log;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.RequestListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.ResponseListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.WriteListener;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Request/response on top of a framed ClientSocketConnection. Every frame starts with a FrameType byte, requests and
+//responses carry a correlation id that pairs them up. In-flight requests are kept in an int keyed map and expire on
+//the shared TimerWheel, so thousands of them cost one map slot and one timeout each.
+public class RequestCorrelator implements SocketFrameListener {
+
+    private final String TAG = RequestCorrelator.class.getSimpleName();
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10 * 1000;
+
+    private final ClientSocketConnection mClientSocketConnection;
+    private final IntObjectHashMap<ResponseFuture> mInFlightRequests = new IntObjectHashMap<>();
+    private final AtomicInteger mNextCorrelationId = new AtomicInteger();
+    private final TimerWheel mTimerWheel = TimerWheel.getDefault();
+    private volatile SocketFrameListener mSocketFrameListener;
+    private volatile RequestListener mRequestListener;
+
+    //Registers itself as the connection's frame listener, framing has to be enabled on the connection.
+    public RequestCorrelator(ClientSocketConnection clientSocketConnection) {
+        mClientSocketConnection = clientSocketConnection;
+        clientSocketConnection.registerSocketFrameListener(this);
+    }
+
+    //Receives the payload of DATA frames, the FrameType byte already skipped.
+    public void registerSocketFrameListener(SocketFrameListener socketFrameListener) {
+        mSocketFrameListener = socketFrameListener;
+    }
+
+    public void unRegisterSocketFrameListener() {
+        mSocketFrameListener = null;
+    }
+
+    public void registerRequestListener(RequestListener requestListener) {
+        mRequestListener = requestListener;
+    }
+
+    public void unRegisterRequestListener() {
+        mRequestListener = null;
+    }
+
+    public ResponseFuture request(ByteBuffer payload) {
+        return request(payload, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    //Sends payload as a REQUEST frame. The future completes with the matching RESPONSE payload, or fails with
+    //TIME_OUT when none arrived within timeoutMillis. payload must not be modified until the request is done.
+    public ResponseFuture request(ByteBuffer payload, long timeoutMillis) {
+        final ResponseFuture responseFuture;
+        synchronized (mInFlightRequests) {
+            int correlationId = mNextCorrelationId.incrementAndGet();
+            //Only after a wrap-around can an id still be in flight.
+            while (mInFlightRequests.get(correlationId) != null) {
+                correlationId = mNextCorrelationId.incrementAndGet();
+            }
+            responseFuture = new ResponseFuture(this, correlationId);
+            mInFlightRequests.put(correlationId, responseFuture);
+        }
+        responseFuture.setTimeout(mTimerWheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                failRequest(responseFuture, ResponseListener.REQUEST_ERROR.TIME_OUT);
+            }
+        }, timeoutMillis));
+        mClientSocketConnection.writeTypedFrameAsync(FrameType.REQUEST, responseFuture.getCorrelationId(), payload)
+                .addListener(new WriteListener() {
+                    @Override
+                    public void onWriteComplete(int writtenBytes) {
+                    }
+
+                    @Override
+                    public void onWriteCancelled() {
+                        failRequest(responseFuture, ResponseListener.REQUEST_ERROR.CANCELLED);
+                    }
+
+                    @Override
+                    public void onWriteError(WRITE_ERROR write_error, int writtenBytes) {
+                        switch (write_error) {
+                            case NOT_CONNECTED:
+                                failRequest(responseFuture, ResponseListener.REQUEST_ERROR.NOT_CONNECTED);
+                                break;
+                            case CONNECTION_ERROR:
+                            case QUEUE_FULL:
+                                failRequest(responseFuture, ResponseListener.REQUEST_ERROR.CONNECTION_ERROR);
+                                break;
+                            default:
+                                failRequest(responseFuture, ResponseListener.REQUEST_ERROR.INTERNAL_ERROR);
+                                break;
+                        }
+                    }
+                });
+        return responseFuture;
+    }
+
+    //Answers a request received through RequestListener.
+    public WriteFuture respond(int correlationId, ByteBuffer payload) {
+        return mClientSocketConnection.writeTypedFrameAsync(FrameType.RESPONSE, correlationId, payload);
+    }
+
+    //Sends payload as a DATA frame, delivered to the peer's frame listener.
+    public WriteFuture send(ByteBuffer payload) {
+        return mClientSocketConnection.writeTypedFrameAsync(FrameType.DATA, 0, payload);
+    }
+
+    //Takes over the lease, the buffer is released once the frame has been written or the write failed.
+    public WriteFuture send(PooledBuffer payload) {
+        return mClientSocketConnection.writeTypedFrameAsync(FrameType.DATA, 0, payload.buffer(), payload);
+    }
+
+    //Encodes straight into a pooled buffer and sends it as a DATA frame.
+    public WriteFuture send(CharSequence data, Charset charset) {
+        PooledBuffer payload;
+        try {
+            payload = mClientSocketConnection.encode(data, charset);
+        } catch (CharacterCodingException e) {
+            e.printStackTrace();
+            return WriteFuture.failed(e);
+        }
+        return send(payload);
+    }
+
+    public int getInFlightCount() {
+        synchronized (mInFlightRequests) {
+            return mInFlightRequests.size();
+        }
+    }
+
+    //Fails every request still waiting for a response, for example once the connection was lost.
+    public void failPendingRequests(ResponseListener.REQUEST_ERROR request_error) {
+        List<ResponseFuture> pendingRequests;
+        synchronized (mInFlightRequests) {
+            pendingRequests = mInFlightRequests.removeAll();
+        }
+        for (ResponseFuture responseFuture : pendingRequests) {
+            responseFuture.fail(request_error);
+        }
+    }
+
+    @Override
+    public void onFrameReceived(ByteBuffer frameBuffer) {
+        if (!frameBuffer.hasRemaining()) {
+            Log.w(TAG, "Dropping empty frame");
+            return;
+        }
+        byte frameType = frameBuffer.get();
+        if (FrameType.hasCorrelationId(frameType) && frameBuffer.remaining() < 4) {
+            Log.w(TAG, "Dropping frame of type " + frameType + " without correlation id");
+            return;
+        }
+        int correlationId = FrameType.hasCorrelationId(frameType) ? frameBuffer.getInt() : 0;
+        ByteBuffer payload = frameBuffer;
+        if (FrameType.isCompressed(frameType)) {
+            try {
+                payload = mClientSocketConnection.inflateFrame(frameBuffer);
+            } catch (DataFormatException e) {
+                Log.w(TAG, "Dropping frame that could not be inflated", e);
+                return;
+            }
+            frameType = FrameType.baseType(frameType);
+        }
+        switch (frameType) {
+            case FrameType.RESPONSE:
+                onResponse(correlationId, payload);
+                break;
+            case FrameType.REQUEST:
+                RequestListener requestListener = mRequestListener;
+                if (requestListener != null) {
+                    requestListener.onRequestReceived(correlationId, payload);
+                }
+                break;
+            case FrameType.DATA:
+                SocketFrameListener socketFrameListener = mSocketFrameListener;
+                if (socketFrameListener != null) {
+                    socketFrameListener.onFrameReceived(payload);
+                }
+                break;
+            default:
+                Log.w(TAG, "Dropping frame of unknown type " + frameType);
+                break;
+        }
+    }
+
+    private void onResponse(int correlationId, ByteBuffer payload) {
+        ResponseFuture responseFuture;
+        synchronized (mInFlightRequests) {
+            responseFuture = mInFlightRequests.remove(correlationId);
+        }
+        if (responseFuture == null) {
+            //Timed out or cancelled before the response came in.
+            return;
+        }
+        //The frame buffer is reused by the reader, the caller gets its own copy.
+        ByteBuffer response = ByteBuffer.allocate(payload.remaining());
+        response.put(payload).flip();
+        responseFuture.complete(response);
+    }
+
+    //Removed first so listeners called by fail already see the request gone.
+    private void failRequest(ResponseFuture responseFuture, ResponseListener.REQUEST_ERROR request_error) {
+        remove(responseFuture.getCorrelationId(), responseFuture);
+        responseFuture.fail(request_error);
+    }
+
+    void remove(int correlationId, ResponseFuture responseFuture) {
+        synchronized (mInFlightRequests) {
+            if (mInFlightRequests.get(correlationId) == responseFuture) {
+                mInFlightRequests.remove(correlationId);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.ResponseListener;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Result of RequestCorrelator.request. get() returns the response payload, a buffer owned by the caller.
+public class ResponseFuture implements Future<ByteBuffer> {
+
+    private static final Executor CALLING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final RequestCorrelator mRequestCorrelator;
+    private final int mCorrelationId;
+    private final AtomicBoolean isDone = new AtomicBoolean();
+    private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+    private volatile ByteBuffer mResponse;
+    private volatile ResponseListener.REQUEST_ERROR mRequestError;
+    private volatile TimerWheel.Timeout mTimeout;
+    private List<Runnable> mListeners;
+
+    ResponseFuture(RequestCorrelator requestCorrelator, int correlationId) {
+        mRequestCorrelator = requestCorrelator;
+        mCorrelationId = correlationId;
+    }
+
+    public int getCorrelationId() {
+        return mCorrelationId;
+    }
+
+    //Set right after the request is registered, a response may already have arrived by then.
+    void setTimeout(TimerWheel.Timeout timeout) {
+        mTimeout = timeout;
+        if (isDone()) {
+            timeout.cancel();
+        }
+    }
+
+    boolean complete(ByteBuffer response) {
+        if (!isDone.compareAndSet(false, true)) {
+            return false;
+        }
+        mResponse = response;
+        finish();
+        return true;
+    }
+
+    boolean fail(ResponseListener.REQUEST_ERROR request_error) {
+        if (!isDone.compareAndSet(false, true)) {
+            return false;
+        }
+        mRequestError = request_error;
+        finish();
+        return true;
+    }
+
+    private void finish() {
+        TimerWheel.Timeout timeout = mTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        mDoneLatch.countDown();
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = mListeners;
+            mListeners = null;
+        }
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public ResponseListener.REQUEST_ERROR getRequestError() {
+        return mRequestError;
+    }
+
+    public boolean isSuccess() {
+        return isDone() && mRequestError == null;
+    }
+
+    //responseListener is called once on the thread that finished the request, right away if it is already done.
+    public void addListener(ResponseListener responseListener) {
+        addListener(responseListener, CALLING_THREAD);
+    }
+
+    public void addListener(final ResponseListener responseListener, final Executor executor) {
+        final Runnable notification = new Runnable() {
+            @Override
+            public void run() {
+                if (mRequestError == null) {
+                    responseListener.onResponse(mResponse);
+                } else {
+                    responseListener.onRequestError(mRequestError);
+                }
+            }
+        };
+        synchronized (this) {
+            if (!isDone()) {
+                if (mListeners == null) {
+                    mListeners = new ArrayList<>(2);
+                }
+                mListeners.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(notification);
+                    }
+                });
+                return;
+            }
+        }
+        executor.execute(notification);
+    }
+
+    //The request frame may already be on its way, a response arriving afterwards is dropped.
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        mRequestCorrelator.remove(mCorrelationId, this);
+        return fail(ResponseListener.REQUEST_ERROR.CANCELLED);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mRequestError == ResponseListener.REQUEST_ERROR.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mDoneLatch.getCount() == 0;
+    }
+
+    @Override
+    public ByteBuffer get() throws InterruptedException, ExecutionException {
+        mDoneLatch.await();
+        return getResult();
+    }
+
+    @Override
+    public ByteBuffer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDoneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private ByteBuffer getResult() throws ExecutionException {
+        ResponseListener.REQUEST_ERROR request_error = mRequestError;
+        if (request_error == ResponseListener.REQUEST_ERROR.CANCELLED) {
+            throw new CancellationException();
+        }
+        if (request_error != null) {
+            throw new ExecutionException(new RequestFailedException(request_error));
+        }
+        return mResponse;
+    }
+
+    public static class RequestFailedException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final ResponseListener.REQUEST_ERROR mRequestError;
+
+        private RequestFailedException(ResponseListener.REQUEST_ERROR request_error) {
+            super("Request failed: " + request_error);
+            mRequestError = request_error;
+        }
+
+        public ResponseListener.REQUEST_ERROR getRequestError() {
+            return mRequestError;
+        }
+    }
+}
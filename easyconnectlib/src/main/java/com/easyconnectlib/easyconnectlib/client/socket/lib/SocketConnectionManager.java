@@ -0,0 +1,130 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Keeps many client sockets on a small, fixed group of selector threads instead of two threads per connection.
+//Each connection is addressed by a caller chosen id or by its remote endpoint and has its own listener.
+public class SocketConnectionManager {
+
+    private final SocketEventLoop[] mEventLoops;
+    private final BufferPool mBufferPool;
+    private final ConcurrentHashMap<String, ManagedConnection> mConnectionsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<InetSocketAddress, ManagedConnection> mConnectionsByAddress = new ConcurrentHashMap<>();
+    private volatile boolean isShutdown;
+
+    public SocketConnectionManager() throws IOException {
+        this(1);
+    }
+
+    public SocketConnectionManager(int eventLoopCount) throws IOException {
+        this(eventLoopCount, BufferPool.getDirectPool());
+    }
+
+    public SocketConnectionManager(int eventLoopCount, BufferPool bufferPool) throws IOException {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("eventLoopCount must be at least 1");
+        }
+        mBufferPool = bufferPool;
+        mEventLoops = new SocketEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            mEventLoops[i] = new SocketEventLoop(bufferPool);
+            mEventLoops[i].start("SocketEventLoop-" + i);
+        }
+    }
+
+    BufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    //Starts a non-blocking connect and returns at once, the listener is told when the socket is up.
+    //An existing connection with the same id is returned unchanged. A host name is looked up on the event loop thread,
+    //which holds up the other connections of that loop meanwhile, so pass an IP address where possible.
+    public ManagedConnection connect(String id, String serverIp, int port, SocketConnectionListener socketConnectionListener) {
+        if (isShutdown) {
+            throw new IllegalStateException("SocketConnectionManager is shut down");
+        }
+        ManagedConnection existing = mConnectionsById.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        //Resolved by register on the event loop, the caller may be the main thread.
+        InetSocketAddress remoteAddress = InetSocketAddress.createUnresolved(serverIp, port);
+        final SocketEventLoop eventLoop = leastLoadedEventLoop();
+        final ManagedConnection managedConnection = new ManagedConnection(id, serverIp, remoteAddress, eventLoop, this, socketConnectionListener);
+        existing = mConnectionsById.putIfAbsent(id, managedConnection);
+        if (existing != null) {
+            return existing;
+        }
+        eventLoop.onConnectionAdded();
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    managedConnection.register();
+                } catch (IOException | RuntimeException e) {
+                    //An unknown host ends up here as UnresolvedAddressException.
+                    managedConnection.onFailure(e);
+                }
+            }
+        });
+        return managedConnection;
+    }
+
+    public ManagedConnection getConnection(String id) {
+        return mConnectionsById.get(id);
+    }
+
+    //Finds connections by their resolved address, a connection is only listed once its connect has started.
+    public ManagedConnection getConnection(InetSocketAddress remoteAddress) {
+        return mConnectionsByAddress.get(remoteAddress);
+    }
+
+    public List<ManagedConnection> getConnections() {
+        return new ArrayList<>(mConnectionsById.values());
+    }
+
+    public int getConnectionCount() {
+        return mConnectionsById.size();
+    }
+
+    public void disconnect(String id) {
+        ManagedConnection managedConnection = mConnectionsById.get(id);
+        if (managedConnection != null) {
+            managedConnection.close();
+        }
+    }
+
+    //Closes every connection and stops the selector threads.
+    public void shutdown() {
+        isShutdown = true;
+        for (SocketEventLoop eventLoop : mEventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+
+    void onAddressResolved(ManagedConnection managedConnection) {
+        mConnectionsByAddress.put(managedConnection.getRemoteAddress(), managedConnection);
+    }
+
+    void onConnectionClosed(ManagedConnection managedConnection) {
+        if (mConnectionsById.remove(managedConnection.getId(), managedConnection)) {
+            mConnectionsByAddress.remove(managedConnection.getRemoteAddress(), managedConnection);
+        }
+    }
+
+    private SocketEventLoop leastLoadedEventLoop() {
+        SocketEventLoop leastLoaded = mEventLoops[0];
+        for (int i = 1; i < mEventLoops.length; i++) {
+            if (mEventLoops[i].getConnectionCount() < leastLoaded.getConnectionCount()) {
+                leastLoaded = mEventLoops[i];
+            }
+        }
+        return leastLoaded;
+    }
+}
@@ -0,0 +1,154 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//One selector thread serving any number of ManagedConnections. All channel operations happen on this thread,
+//other threads hand work over through execute().
+class SocketEventLoop implements Runnable {
+
+    private final String TAG = SocketEventLoop.class.getSimpleName();
+    private final Selector mSelector;
+    private final Queue<Runnable> mTaskQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isWakeupPending = new AtomicBoolean();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final PooledBuffer mReadLease;
+    private final ByteBuffer mReadOnlyView;
+    private volatile boolean isRunning = true;
+    private Thread mThread;
+
+    SocketEventLoop(BufferPool bufferPool) throws IOException {
+        mSelector = Selector.open();
+        mReadLease = bufferPool.acquire(ClientSocketConnection.READ_BUFFER_SIZE);
+        mReadOnlyView = mReadLease.buffer().asReadOnlyBuffer();
+    }
+
+    void start(String name) {
+        mThread = new Thread(this, name);
+        mThread.start();
+    }
+
+    void shutdown() {
+        isRunning = false;
+        mSelector.wakeup();
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == mThread;
+    }
+
+    Selector getSelector() {
+        return mSelector;
+    }
+
+    //Shared by every connection of this loop, only valid during a read callback.
+    ByteBuffer getReadBuffer() {
+        return mReadLease.buffer();
+    }
+
+    ByteBuffer getReadOnlyView() {
+        return mReadOnlyView;
+    }
+
+    int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    void onConnectionAdded() {
+        mConnectionCount.incrementAndGet();
+    }
+
+    void onConnectionRemoved() {
+        mConnectionCount.decrementAndGet();
+    }
+
+    void execute(Runnable task) {
+        mTaskQueue.offer(task);
+        if (!inEventLoop() && isWakeupPending.compareAndSet(false, true)) {
+            mSelector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                if (mTaskQueue.isEmpty()) {
+                    mSelector.select();
+                } else {
+                    mSelector.selectNow();
+                }
+                isWakeupPending.set(false);
+                runTasks();
+                processSelectedKeys();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void runTasks() {
+        //Only run what was queued before this pass so a connection that keeps queueing work cannot starve the selector.
+        int pending = mTaskQueue.size();
+        Runnable task;
+        while (pending-- > 0 && (task = mTaskQueue.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+            ManagedConnection managedConnection = (ManagedConnection) selectionKey.attachment();
+            if (!selectionKey.isValid()) {
+                continue;
+            }
+            try {
+                int readyOps = selectionKey.readyOps();
+                if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
+                    managedConnection.onConnectable();
+                    continue;
+                }
+                if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                    managedConnection.onWritable();
+                }
+                if ((readyOps & SelectionKey.OP_READ) != 0 && selectionKey.isValid()) {
+                    managedConnection.onReadable();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Connection " + managedConnection.getId() + " failed", e);
+                managedConnection.onFailure(e);
+            }
+        }
+    }
+
+    private void closeAll() {
+        runTasks();
+        for (SelectionKey selectionKey : mSelector.keys()) {
+            ((ManagedConnection) selectionKey.attachment()).closeNow(false);
+        }
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mReadLease.release();
+    }
+}
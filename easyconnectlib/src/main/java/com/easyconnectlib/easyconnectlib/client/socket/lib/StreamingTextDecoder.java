@@ -0,0 +1,191 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.TextRecordListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+//Decodes text from a byte stream that arrives in arbitrary chunks. One CharsetDecoder is reused for the whole stream,
+//the bytes of a character split across two reads are kept until the rest arrives, so a read boundary never corrupts
+//text. With a delimiter the characters are split into records, each delivered once it is complete and without its
+//delimiter. Characters are only scanned once, a record that spans reads is not searched again from its start.
+//Without a delimiter every decode call delivers the characters that are complete so far.
+//Keeps state between calls and must stay on the reader thread.
+public class StreamingTextDecoder {
+
+    public static final int DEFAULT_MAX_RECORD_LENGTH = 1024 * 1024;
+    private static final int INITIAL_CHAR_BUFFER_SIZE = 1024;
+    //Longer than any character in the charsets Android ships.
+    private static final int MAX_PARTIAL_CHARACTER_BYTES = 16;
+
+    private final Charset mCharset;
+    private final CharsetDecoder mDecoder;
+    private final char[] mDelimiter;
+    private final int mMaxRecordLength;
+    private final ByteBuffer mPartialCharacter = ByteBuffer.allocate(MAX_PARTIAL_CHARACTER_BYTES);
+    private CharBuffer mChars = CharBuffer.allocate(INITIAL_CHAR_BUFFER_SIZE);
+    //Handed to the listener, moved over mChars instead of wrapping every record.
+    private CharBuffer mRecordView = mChars.duplicate();
+    private int mRecordStart;
+    private int mScanPosition;
+
+    public StreamingTextDecoder(Charset charset) {
+        this(charset, null, DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    public StreamingTextDecoder(Charset charset, String delimiter) {
+        this(charset, delimiter, DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    //delimiter null or empty delivers everything that is decoded instead of splitting it.
+    public StreamingTextDecoder(Charset charset, String delimiter, int maxRecordLength) {
+        if (maxRecordLength <= 0) {
+            throw new IllegalArgumentException("maxRecordLength must be positive");
+        }
+        mCharset = charset;
+        mDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        mDelimiter = delimiter == null || delimiter.isEmpty() ? null : delimiter.toCharArray();
+        mMaxRecordLength = maxRecordLength;
+    }
+
+    public Charset getCharset() {
+        return mCharset;
+    }
+
+    public String getDelimiter() {
+        return mDelimiter == null ? null : new String(mDelimiter);
+    }
+
+    //Consumes all of in and hands every complete record to textRecordListener. Fails once a record grows past
+    //maxRecordLength characters without a delimiter.
+    public void decode(ByteBuffer in, TextRecordListener textRecordListener) throws IOException {
+        if (mDelimiter == null) {
+            //Room for the whole read, so it is normally delivered in one piece.
+            ensureCharCapacity((int) Math.min(mMaxRecordLength,
+                    (long) Math.ceil((in.remaining() + MAX_PARTIAL_CHARACTER_BYTES) * (double) mDecoder.maxCharsPerByte())));
+        }
+        //Finish the character left over from the last read one byte at a time, it is only a few bytes long.
+        while (mPartialCharacter.position() > 0 && in.hasRemaining()) {
+            mPartialCharacter.put(in.get());
+            mPartialCharacter.flip();
+            decodeAll(mPartialCharacter, textRecordListener);
+            mPartialCharacter.compact();
+        }
+        decodeAll(in, textRecordListener);
+        if (in.hasRemaining()) {
+            if (in.remaining() > mPartialCharacter.remaining()) {
+                throw new IOException("Undecodable tail of " + in.remaining() + " bytes");
+            }
+            mPartialCharacter.put(in);
+        }
+        if (mDelimiter == null) {
+            deliverDecoded(textRecordListener);
+        }
+    }
+
+    //Drops partial characters and records, used when the underlying connection is re-established.
+    public void reset() {
+        mDecoder.reset();
+        mPartialCharacter.clear();
+        mChars.clear();
+        mRecordStart = 0;
+        mScanPosition = 0;
+    }
+
+    //Decodes until in holds at most an incomplete character.
+    private void decodeAll(ByteBuffer in, TextRecordListener textRecordListener) throws IOException {
+        while (true) {
+            CoderResult coderResult = mDecoder.decode(in, mChars, false);
+            int freeChars = mChars.remaining();
+            if (mDelimiter != null) {
+                deliverRecords(textRecordListener);
+            }
+            if (coderResult.isUnderflow()) {
+                return;
+            }
+            if (coderResult.isOverflow()) {
+                if (mDelimiter == null) {
+                    deliverDecoded(textRecordListener);
+                } else if (mChars.remaining() <= freeChars) {
+                    //No record was completed to make room, the buffer may still have a char free that a surrogate
+                    //pair does not fit in.
+                    growChars();
+                }
+            } else {
+                coderResult.throwException();
+            }
+        }
+    }
+
+    private void deliverDecoded(TextRecordListener textRecordListener) {
+        int end = mChars.position();
+        if (end > 0) {
+            mRecordView.limit(end).position(0);
+            mChars.clear();
+            textRecordListener.onRecordReceived(mRecordView);
+        }
+    }
+
+    private void deliverRecords(TextRecordListener textRecordListener) throws IOException {
+        char[] chars = mChars.array();
+        char[] delimiter = mDelimiter;
+        char lastDelimiterChar = delimiter[delimiter.length - 1];
+        int end = mChars.position();
+        for (int i = mScanPosition; i < end; i++) {
+            int recordEnd = i + 1 - delimiter.length;
+            if (chars[i] == lastDelimiterChar && recordEnd >= mRecordStart && endsWithDelimiter(chars, recordEnd)) {
+                int recordStart = mRecordStart;
+                mRecordStart = i + 1;
+                mRecordView.limit(recordEnd).position(recordStart);
+                textRecordListener.onRecordReceived(mRecordView);
+            }
+        }
+        mScanPosition = end;
+        if (end - mRecordStart > mMaxRecordLength + delimiter.length) {
+            throw new IOException("Record exceeds " + mMaxRecordLength + " characters without a delimiter");
+        }
+        //Move the incomplete record to the front, only its characters are copied.
+        if (mRecordStart > 0) {
+            int length = end - mRecordStart;
+            System.arraycopy(chars, mRecordStart, chars, 0, length);
+            mChars.position(length);
+            mScanPosition = length;
+            mRecordStart = 0;
+        }
+    }
+
+    private boolean endsWithDelimiter(char[] chars, int offset) {
+        for (int i = 0; i < mDelimiter.length - 1; i++) {
+            if (chars[offset + i] != mDelimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growChars() throws IOException {
+        int limit = mMaxRecordLength + mDelimiter.length;
+        if (mChars.capacity() >= limit) {
+            throw new IOException("Record exceeds " + mMaxRecordLength + " characters without a delimiter");
+        }
+        ensureCharCapacity((int) Math.min(mChars.capacity() * 2L, limit));
+    }
+
+    private void ensureCharCapacity(int capacity) {
+        if (mChars.capacity() >= capacity) {
+            return;
+        }
+        CharBuffer chars = CharBuffer.allocate(capacity);
+        mChars.flip();
+        chars.put(mChars);
+        mChars = chars;
+        mRecordView = chars.duplicate();
+    }
+}
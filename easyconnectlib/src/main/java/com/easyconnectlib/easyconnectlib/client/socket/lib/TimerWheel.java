@@ -0,0 +1,205 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+//Hashed timing wheel. One thread holds any number of timeouts in TICKS_PER_WHEEL buckets of TICK_MILLIS each,
+//scheduling and cancelling are O(1) and a tick only walks the bucket it lands on. Timeouts fire up to one tick late.
+class TimerWheel implements Runnable {
+
+    static final long TICK_MILLIS = 10;
+    static final int TICKS_PER_WHEEL = 512;
+    //Bounds the work of one tick when a burst of timeouts was scheduled.
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static TimerWheel sDefault;
+
+    private final Bucket[] mWheel = new Bucket[TICKS_PER_WHEEL];
+    private final Queue<Timeout> mNewTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> mCancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final long mTickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private final long mStartNanos;
+    private long mTick;
+
+    private TimerWheel() {
+        for (int i = 0; i < mWheel.length; i++) {
+            mWheel[i] = new Bucket();
+        }
+        mStartNanos = System.nanoTime();
+    }
+
+    //Shared by every connection in the process, the thread is started on first use.
+    static synchronized TimerWheel getDefault() {
+        if (sDefault == null) {
+            sDefault = new TimerWheel();
+            Thread thread = new Thread(sDefault, "TimerWheel");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return sDefault;
+    }
+
+    Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        mNewTimeouts.offer(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long deadline = waitForNextTick();
+            processCancelledTimeouts();
+            transferNewTimeouts();
+            mWheel[(int) (mTick & (TICKS_PER_WHEEL - 1))].expireTimeouts(deadline);
+            mTick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = mStartNanos + (mTick + 1) * mTickNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - now + 999999);
+            if (sleepMillis <= 0) {
+                return now;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = mNewTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.mState != Timeout.STATE_PENDING) {
+                continue;
+            }
+            long expiryTick = (timeout.mDeadlineNanos - mStartNanos) / mTickNanos;
+            timeout.mRemainingRounds = (expiryTick - mTick) / TICKS_PER_WHEEL;
+            //Already overdue timeouts go into the current bucket and fire on this tick.
+            long tick = Math.max(expiryTick, mTick);
+            mWheel[(int) (tick & (TICKS_PER_WHEEL - 1))].add(timeout);
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = mCancelledTimeouts.poll()) != null) {
+            if (timeout.mBucket != null) {
+                timeout.mBucket.remove(timeout);
+            }
+        }
+    }
+
+    static class Timeout {
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "mState");
+
+        private final TimerWheel mTimerWheel;
+        private final Runnable mTask;
+        private final long mDeadlineNanos;
+        private volatile int mState = STATE_PENDING;
+        //Only touched by the wheel thread.
+        private long mRemainingRounds;
+        private Bucket mBucket;
+        private Timeout mPrevious;
+        private Timeout mNext;
+
+        private Timeout(TimerWheel timerWheel, Runnable task, long deadlineNanos) {
+            mTimerWheel = timerWheel;
+            mTask = task;
+            mDeadlineNanos = deadlineNanos;
+        }
+
+        //Returns false if the timeout already fired or was cancelled.
+        boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+            mTimerWheel.mCancelledTimeouts.offer(this);
+            return true;
+        }
+
+        private void expire() {
+            if (STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_EXPIRED)) {
+                try {
+                    mTask.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    //Doubly linked so cancelled timeouts can be unlinked without a search.
+    private static class Bucket {
+        private Timeout mHead;
+        private Timeout mTail;
+
+        private void add(Timeout timeout) {
+            timeout.mBucket = this;
+            if (mHead == null) {
+                mHead = mTail = timeout;
+            } else {
+                mTail.mNext = timeout;
+                timeout.mPrevious = mTail;
+                mTail = timeout;
+            }
+        }
+
+        private void expireTimeouts(long now) {
+            Timeout timeout = mHead;
+            while (timeout != null) {
+                Timeout next = timeout.mNext;
+                if (timeout.mRemainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.mDeadlineNanos - now <= 0) {
+                        timeout.expire();
+                    } else {
+                        //Placed in the wrong round, can only happen if the wheel thread fell far behind.
+                        timeout.mTimerWheel.mNewTimeouts.offer(timeout);
+                    }
+                } else if (timeout.mState == Timeout.STATE_CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.mRemainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.mBucket != this) {
+                return;
+            }
+            Timeout next = timeout.mNext;
+            if (timeout.mPrevious != null) {
+                timeout.mPrevious.mNext = next;
+            }
+            if (next != null) {
+                next.mPrevious = timeout.mPrevious;
+            }
+            if (timeout == mHead) {
+                mHead = next;
+            }
+            if (timeout == mTail) {
+                mTail = timeout.mPrevious;
+            }
+            timeout.mPrevious = null;
+            timeout.mNext = null;
+            timeout.mBucket = null;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+//TLS over a non-blocking SocketChannel with an SSLEngine, so the reader and writer keep their selectors. The handshake
+//runs on the connecting thread, then the reader unwraps and the writer wraps, which SSLEngine allows concurrently.
+//Ciphertext goes through two pooled buffers: the inbound one belongs to the reader, the outbound one to the writer,
+//and each releases its own. Engines created from the same SSLContext with the same host and port share its client
+//session cache, so a reconnect resumes the session with an abbreviated handshake.
+final class TlsSession {
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private final SSLEngine mEngine;
+    private final SocketChannel mChannel;
+    private final PooledBuffer mInboundLease;
+    private final PooledBuffer mOutboundLease;
+    //Received ciphertext not unwrapped yet, kept ready for writing into.
+    private final ByteBuffer mNetIn;
+    //Wrapped ciphertext not written yet, kept ready for writing into.
+    private final ByteBuffer mNetOut;
+    private final int mApplicationBufferSize;
+    private volatile Selector mHandshakeSelector;
+    private volatile boolean isCancelled;
+
+    TlsSession(SSLEngine sslEngine, SocketChannel socketChannel, BufferPool bufferPool) {
+        mEngine = sslEngine;
+        mChannel = socketChannel;
+        SSLSession sslSession = sslEngine.getSession();
+        mInboundLease = bufferPool.acquire(sslSession.getPacketBufferSize());
+        mOutboundLease = bufferPool.acquire(sslSession.getPacketBufferSize());
+        mNetIn = mInboundLease.buffer();
+        mNetOut = mOutboundLease.buffer();
+        mApplicationBufferSize = sslSession.getApplicationBufferSize();
+    }
+
+    SSLSession getSession() {
+        return mEngine.getSession();
+    }
+
+    //Read buffers passed to read() must have at least this much room, a whole record is unwrapped in one go.
+    int getApplicationBufferSize() {
+        return mApplicationBufferSize;
+    }
+
+    //Runs the handshake on the calling thread. Returns false if cancel() was called before it finished.
+    boolean handshake(BufferPool bufferPool, long deadlineNanos) throws IOException {
+        Selector selector = Selector.open();
+        mHandshakeSelector = selector;
+        PooledBuffer applicationLease = bufferPool.acquire(mApplicationBufferSize);
+        try {
+            SelectionKey selectionKey = mChannel.register(selector, 0);
+            ByteBuffer applicationBuffer = applicationLease.buffer();
+            mEngine.beginHandshake();
+            SSLEngineResult.HandshakeStatus status = mEngine.getHandshakeStatus();
+            while (status != SSLEngineResult.HandshakeStatus.FINISHED
+                    && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                if (isCancelled) {
+                    return false;
+                }
+                if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    status = mEngine.getHandshakeStatus();
+                } else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    SSLEngineResult result = mEngine.wrap(EMPTY_BUFFER, mNetOut);
+                    checkResult(result);
+                    status = result.getHandshakeStatus();
+                    while (mNetOut.position() > 0) {
+                        if (flushNetOut() == 0) {
+                            await(selector, selectionKey, SelectionKey.OP_WRITE, deadlineNanos);
+                        }
+                    }
+                } else {
+                    mNetIn.flip();
+                    SSLEngineResult result;
+                    try {
+                        result = mEngine.unwrap(mNetIn, applicationBuffer);
+                    } finally {
+                        mNetIn.compact();
+                    }
+                    if (applicationBuffer.position() > 0) {
+                        throw new SSLException("Application data during the handshake");
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        int read = readNetIn();
+                        if (read < 0) {
+                            throw new EOFException("Connection closed during the TLS handshake");
+                        }
+                        if (read == 0) {
+                            await(selector, selectionKey, SelectionKey.OP_READ, deadlineNanos);
+                        }
+                    } else {
+                        checkResult(result);
+                    }
+                    status = result.getHandshakeStatus();
+                }
+            }
+            return true;
+        } finally {
+            mHandshakeSelector = null;
+            applicationLease.release();
+            selector.close();
+        }
+    }
+
+    void cancel() {
+        isCancelled = true;
+        Selector selector = mHandshakeSelector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    //Reader side. Unwraps the next record into dst, reading from the channel only when no whole record is buffered.
+    //Returns the bytes added to dst, 0 once the channel has nothing more and -1 at the end of the stream.
+    int read(ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        while (true) {
+            mNetIn.flip();
+            SSLEngineResult result;
+            try {
+                result = mEngine.unwrap(mNetIn, dst);
+            } finally {
+                mNetIn.compact();
+            }
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            }
+            int produced = dst.position() - start;
+            if (produced > 0) {
+                return produced;
+            }
+            switch (result.getStatus()) {
+                case CLOSED:
+                    return -1;
+                case BUFFER_OVERFLOW:
+                    throw new SSLException("Read buffer is smaller than a TLS record");
+                case OK:
+                    //A record without application data, such as a session ticket.
+                    if (result.bytesConsumed() > 0) {
+                        continue;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            int read = readNetIn();
+            if (read <= 0) {
+                return read;
+            }
+        }
+    }
+
+    //Set after read() when the peer started a key update or renegotiation that has to be answered, the writer then
+    //needs a wakeup to send the reply.
+    boolean isWrapNeeded() {
+        return mEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP;
+    }
+
+    boolean hasPendingOutput() {
+        return mNetOut.position() > 0 || isWrapNeeded();
+    }
+
+    //Writer side, behaves like a gathering channel write. Sends what is left of the last record first and only wraps
+    //new data once it is out, so at most one record is buffered. Returns the bytes that reached the socket, 0 when
+    //its send buffer is full. hasPendingOutput() tells whether the consumed data still has to be flushed.
+    long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long written = flushNetOut();
+        if (mNetOut.position() > 0) {
+            return written;
+        }
+        SSLEngineResult result = mEngine.wrap(srcs, offset, length, mNetOut);
+        checkResult(result);
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+        }
+        return written + flushNetOut();
+    }
+
+    long write(ByteBuffer src) throws IOException {
+        long written = flushNetOut();
+        if (mNetOut.position() > 0) {
+            return written;
+        }
+        SSLEngineResult result = mEngine.wrap(src, mNetOut);
+        checkResult(result);
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+        }
+        return written + flushNetOut();
+    }
+
+    void releaseInbound() {
+        mInboundLease.release();
+    }
+
+    void releaseOutbound() {
+        mOutboundLease.release();
+    }
+
+    private int readNetIn() throws IOException {
+        if (!mNetIn.hasRemaining()) {
+            throw new SSLException("TLS record is larger than the packet buffer");
+        }
+        return mChannel.read(mNetIn);
+    }
+
+    private int flushNetOut() throws IOException {
+        if (mNetOut.position() == 0) {
+            return 0;
+        }
+        mNetOut.flip();
+        try {
+            return mChannel.write(mNetOut);
+        } finally {
+            mNetOut.compact();
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = mEngine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private void checkResult(SSLEngineResult result) throws IOException {
+        switch (result.getStatus()) {
+            case CLOSED:
+                throw new ClosedChannelException();
+            case BUFFER_OVERFLOW:
+                throw new SSLException("TLS record is larger than the packet buffer");
+            default:
+                break;
+        }
+    }
+
+    private void await(Selector selector, SelectionKey selectionKey, int interestOps, long deadlineNanos) throws IOException {
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        if (waitMillis <= 0) {
+            throw new SocketTimeoutException("TLS handshake timed out");
+        }
+        selectionKey.interestOps(interestOps);
+        selector.select(waitMillis);
+        selector.selectedKeys().clear();
+        selectionKey.interestOps(0);
+    }
+}
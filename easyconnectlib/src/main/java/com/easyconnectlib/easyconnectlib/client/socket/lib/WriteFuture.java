@@ -0,0 +1,218 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.WriteListener;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Result of a write queued on ClientSocketConnection. get() returns the number of bytes written.
+public class WriteFuture implements Future<Integer> {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_WRITING = 1;
+    private static final int STATE_DONE = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private static final Executor CALLING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+    private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+    private volatile int mWrittenBytes;
+    private volatile Throwable mCause;
+    private List<Runnable> mListeners;
+
+    WriteFuture() {
+    }
+
+    static WriteFuture completed(int writtenBytes) {
+        WriteFuture writeFuture = new WriteFuture();
+        writeFuture.complete(writtenBytes);
+        return writeFuture;
+    }
+
+    static WriteFuture failed(Throwable cause) {
+        WriteFuture writeFuture = new WriteFuture();
+        writeFuture.fail(0, cause);
+        return writeFuture;
+    }
+
+    //Called by the writer before it touches the socket, returns false if the write was cancelled meanwhile.
+    boolean markWriting() {
+        return mState.compareAndSet(STATE_PENDING, STATE_WRITING);
+    }
+
+    boolean complete(int writtenBytes) {
+        return finish(writtenBytes, null);
+    }
+
+    boolean fail(int writtenBytes, Throwable cause) {
+        return finish(writtenBytes, cause);
+    }
+
+    private boolean finish(int writtenBytes, Throwable cause) {
+        int state = mState.get();
+        while (state == STATE_PENDING || state == STATE_WRITING) {
+            if (mState.compareAndSet(state, STATE_DONE)) {
+                mWrittenBytes = writtenBytes;
+                mCause = cause;
+                mDoneLatch.countDown();
+                notifyListeners();
+                return true;
+            }
+            state = mState.get();
+        }
+        return false;
+    }
+
+    //Number of bytes handed to the socket so far. After a failure this is the size of the partial write.
+    public int getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    //The state turns DONE before the result is set, only the latch says the result is there.
+    public boolean isSuccess() {
+        return isDone() && mState.get() == STATE_DONE && mCause == null;
+    }
+
+    public Throwable getCause() {
+        return mCause;
+    }
+
+    //writeListener is called once on the thread that finished the write, right away if it is already done.
+    public void addListener(WriteListener writeListener) {
+        addListener(writeListener, CALLING_THREAD);
+    }
+
+    //writeListener is called once through executor when the write completes, fails or is cancelled.
+    public void addListener(final WriteListener writeListener, Executor executor) {
+        Runnable notification = new Runnable() {
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    writeListener.onWriteCancelled();
+                } else if (mCause == null) {
+                    writeListener.onWriteComplete(mWrittenBytes);
+                } else {
+                    writeListener.onWriteError(toWriteError(mCause), mWrittenBytes);
+                }
+            }
+        };
+        synchronized (this) {
+            if (!isDone()) {
+                if (mListeners == null) {
+                    mListeners = new ArrayList<>(2);
+                }
+                mListeners.add(new ListenerNotification(notification, executor));
+                return;
+            }
+        }
+        executor.execute(notification);
+    }
+
+    private void notifyListeners() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = mListeners;
+            mListeners = null;
+        }
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static WriteListener.WRITE_ERROR toWriteError(Throwable cause) {
+        if (cause instanceof WriteQueueFullException) {
+            return WriteListener.WRITE_ERROR.QUEUE_FULL;
+        }
+        if (cause instanceof NotYetConnectedException || cause instanceof ClosedChannelException) {
+            return WriteListener.WRITE_ERROR.NOT_CONNECTED;
+        }
+        if (cause instanceof IOException && !(cause instanceof CharacterCodingException)) {
+            return WriteListener.WRITE_ERROR.CONNECTION_ERROR;
+        }
+        return WriteListener.WRITE_ERROR.INTERNAL_ERROR;
+    }
+
+    //Only writes that the writer has not started yet can be cancelled.
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (mState.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+            mDoneLatch.countDown();
+            notifyListeners();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mState.get() == STATE_CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mDoneLatch.getCount() == 0;
+    }
+
+    @Override
+    public Integer get() throws InterruptedException, ExecutionException {
+        mDoneLatch.await();
+        return getResult();
+    }
+
+    @Override
+    public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDoneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private Integer getResult() throws ExecutionException {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        if (mCause != null) {
+            throw new ExecutionException(mCause);
+        }
+        return mWrittenBytes;
+    }
+
+    private static class ListenerNotification implements Runnable {
+        private final Runnable notification;
+        private final Executor executor;
+
+        private ListenerNotification(Runnable notification, Executor executor) {
+            this.notification = notification;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            executor.execute(notification);
+        }
+    }
+}
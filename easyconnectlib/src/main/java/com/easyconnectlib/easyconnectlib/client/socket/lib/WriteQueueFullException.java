@@ -0,0 +1,19 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.io.IOException;
+
+//Cause of a write rejected because the outbound queue was over its limit, see ClientSocketConnection.OverflowPolicy.
+public class WriteQueueFullException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    private final long mQueuedBytes;
+
+    WriteQueueFullException(long queuedBytes) {
+        super("Outbound queue is full, " + queuedBytes + " bytes queued");
+        mQueuedBytes = queuedBytes;
+    }
+
+    public long getQueuedBytes() {
+        return mQueuedBytes;
+    }
+}
@@ -0,0 +1,157 @@
+package com.easyconnectlib.easyconnectlib.metrics;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Counters of one ClientSocketConnection since it was created, kept across reconnects. Updated by the connection's
+//threads without locks, read through snapshot().
+public final class ConnectionMetrics {
+
+    private final StripedCounter mBytesSent = new StripedCounter();
+    private final StripedCounter mBytesReceived = new StripedCounter();
+    private final StripedCounter mMessagesSent = new StripedCounter();
+    private final StripedCounter mMessagesReceived = new StripedCounter();
+    private final LatencyHistogram mWriteLatency = new LatencyHistogram();
+    private final LatencyHistogram mConnectTime = new LatencyHistogram();
+    private final AtomicLong mConnects = new AtomicLong();
+    private final AtomicLong mReconnectAttempts = new AtomicLong();
+    private final AtomicLong mPeakQueuedBytes = new AtomicLong();
+    private final EnumCounter<SocketConnectionListener.SOCKET_ERROR> mSocketErrors = new EnumCounter<>(SocketConnectionListener.SOCKET_ERROR.class);
+
+    public void recordBytesSent(long bytes) {
+        mBytesSent.add(bytes);
+    }
+
+    //A write or frame that went out completely, latencyNanos from the call that queued it.
+    public void recordMessageSent(long latencyNanos) {
+        mMessagesSent.increment();
+        mWriteLatency.recordNanos(latencyNanos);
+    }
+
+    public void recordBytesReceived(long bytes) {
+        mBytesReceived.add(bytes);
+    }
+
+    //A frame, or a chunk of a connection without framing, handed to the listener.
+    public void recordMessageReceived() {
+        mMessagesReceived.increment();
+    }
+
+    public void recordConnected(long connectNanos) {
+        mConnects.incrementAndGet();
+        mConnectTime.recordNanos(connectNanos);
+    }
+
+    public void recordReconnectAttempt() {
+        mReconnectAttempts.incrementAndGet();
+    }
+
+    public void recordSocketError(SocketConnectionListener.SOCKET_ERROR socket_error) {
+        mSocketErrors.increment(socket_error);
+    }
+
+    //Called with the new queue depth whenever it grows, only a new peak costs a compare-and-set.
+    public void recordQueuedBytes(long queuedBytes) {
+        long peakQueuedBytes;
+        while (queuedBytes > (peakQueuedBytes = mPeakQueuedBytes.get())) {
+            if (mPeakQueuedBytes.compareAndSet(peakQueuedBytes, queuedBytes)) {
+                break;
+            }
+        }
+    }
+
+    //queuedBytes and queuedWrites are the current depth of the outbound queue, supplied by the connection.
+    public Snapshot snapshot(long queuedBytes, int queuedWrites) {
+        return new Snapshot(this, queuedBytes, queuedWrites);
+    }
+
+    public static final class Snapshot {
+        private final long mBytesSent;
+        private final long mBytesReceived;
+        private final long mMessagesSent;
+        private final long mMessagesReceived;
+        private final LatencyHistogram.Snapshot mWriteLatency;
+        private final LatencyHistogram.Snapshot mConnectTime;
+        private final long mConnects;
+        private final long mReconnectAttempts;
+        private final long mQueuedBytes;
+        private final int mQueuedWrites;
+        private final long mPeakQueuedBytes;
+        private final Map<SocketConnectionListener.SOCKET_ERROR, Long> mSocketErrors;
+
+        private Snapshot(ConnectionMetrics metrics, long queuedBytes, int queuedWrites) {
+            mBytesSent = metrics.mBytesSent.sum();
+            mBytesReceived = metrics.mBytesReceived.sum();
+            mMessagesSent = metrics.mMessagesSent.sum();
+            mMessagesReceived = metrics.mMessagesReceived.sum();
+            mWriteLatency = metrics.mWriteLatency.snapshot();
+            mConnectTime = metrics.mConnectTime.snapshot();
+            mConnects = metrics.mConnects.get();
+            mReconnectAttempts = metrics.mReconnectAttempts.get();
+            mQueuedBytes = queuedBytes;
+            mQueuedWrites = queuedWrites;
+            mPeakQueuedBytes = metrics.mPeakQueuedBytes.get();
+            mSocketErrors = metrics.mSocketErrors.snapshot();
+        }
+
+        public long getBytesSent() {
+            return mBytesSent;
+        }
+
+        public long getBytesReceived() {
+            return mBytesReceived;
+        }
+
+        public long getMessagesSent() {
+            return mMessagesSent;
+        }
+
+        public long getMessagesReceived() {
+            return mMessagesReceived;
+        }
+
+        //From queueing a write to the socket taking its last byte.
+        public LatencyHistogram.Snapshot getWriteLatency() {
+            return mWriteLatency;
+        }
+
+        public LatencyHistogram.Snapshot getConnectTime() {
+            return mConnectTime;
+        }
+
+        public long getConnects() {
+            return mConnects;
+        }
+
+        public long getReconnectAttempts() {
+            return mReconnectAttempts;
+        }
+
+        public long getQueuedBytes() {
+            return mQueuedBytes;
+        }
+
+        public int getQueuedWrites() {
+            return mQueuedWrites;
+        }
+
+        public long getPeakQueuedBytes() {
+            return mPeakQueuedBytes;
+        }
+
+        public Map<SocketConnectionListener.SOCKET_ERROR, Long> getSocketErrors() {
+            return mSocketErrors;
+        }
+
+        @Override
+        public String toString() {
+            return "ConnectionMetrics{sent=" + mBytesSent + "B/" + mMessagesSent + ", received=" + mBytesReceived + "B/"
+                    + mMessagesReceived + ", writeLatency=" + mWriteLatency + ", connectTime=" + mConnectTime
+                    + ", connects=" + mConnects + ", reconnectAttempts=" + mReconnectAttempts + ", queued="
+                    + mQueuedBytes + "B/" + mQueuedWrites + ", peakQueued=" + mPeakQueuedBytes + "B, errors="
+                    + mSocketErrors + "}";
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.easyconnectlib.easyconnectlib.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//One counter per constant of an error enum, indexed by ordinal.
+public final class EnumCounter<E extends Enum<E>> {
+
+    private final Class<E> mEnumClass;
+    private final AtomicLongArray mCounts;
+
+    public EnumCounter(Class<E> enumClass) {
+        mEnumClass = enumClass;
+        mCounts = new AtomicLongArray(enumClass.getEnumConstants().length);
+    }
+
+    public void increment(E value) {
+        mCounts.getAndIncrement(value.ordinal());
+    }
+
+    public long get(E value) {
+        return mCounts.get(value.ordinal());
+    }
+
+    //Constants that were never counted are left out.
+    public Map<E, Long> snapshot() {
+        Map<E, Long> counts = new EnumMap<>(mEnumClass);
+        for (E value : mEnumClass.getEnumConstants()) {
+            long count = mCounts.get(value.ordinal());
+            if (count > 0) {
+                counts.put(value, count);
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,100 @@
+package com.easyconnectlib.easyconnectlib.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Durations in power of two microsecond buckets, bucket i counts values below 2^i us. Recording is a couple of atomic
+//adds and never allocates, percentiles are accurate to the bucket, that is within a factor of two.
+public final class LatencyHistogram {
+
+    //The last bucket also takes everything from 2^30 us (about 18 minutes) up.
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mSumMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            return;
+        }
+        mBuckets.getAndIncrement(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1));
+        mSumMicros.getAndAdd(micros);
+        long maxMicros;
+        while (micros > (maxMicros = mMaxMicros.get())) {
+            if (mMaxMicros.compareAndSet(maxMicros, micros)) {
+                break;
+            }
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mSumMicros.get(), mMaxMicros.get());
+    }
+
+    public static final class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSumMicros;
+        private final long mMaxMicros;
+
+        private Snapshot(long[] buckets, long sumMicros, long maxMicros) {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            mBuckets = buckets;
+            mCount = count;
+            mSumMicros = sumMicros;
+            mMaxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanMicros() {
+            return mCount == 0 ? 0 : mSumMicros / mCount;
+        }
+
+        public long getMaxMicros() {
+            return mMaxMicros;
+        }
+
+        //Upper bound of the bucket holding the given percentile (0 to 100), never above the largest value recorded.
+        public long getPercentileMicros(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * mCount);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min((1L << i) - 1, mMaxMicros);
+                }
+            }
+            return mMaxMicros;
+        }
+
+        //Count of values below 2^i us, for exporting the whole distribution.
+        public long getBucketCount(int i) {
+            return mBuckets[i];
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + mCount + ", mean=" + getMeanMicros() + "us, p50=" + getPercentileMicros(50)
+                    + "us, p99=" + getPercentileMicros(99) + "us, max=" + mMaxMicros + "us}";
+        }
+    }
+}
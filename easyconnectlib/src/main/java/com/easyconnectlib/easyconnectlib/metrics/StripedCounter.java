@@ -0,0 +1,47 @@
+package com.easyconnectlib.easyconnectlib.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Counter for hot paths written by several threads. Each thread adds to one of a few cells picked by its id, the cells
+//are a cache line apart, so the reader, writer and caller threads do not fight over one atomic. sum() adds the cells up.
+public final class StripedCounter {
+
+    private static final int STRIPES = stripeCount();
+    //Longs per cell, 64 bytes.
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        mCells.getAndIncrement(cellIndex());
+    }
+
+    public void add(long delta) {
+        mCells.getAndAdd(cellIndex(), delta);
+    }
+
+    //Not an atomic snapshot, additions made while summing may or may not be included.
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private static int cellIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & (STRIPES - 1)) * PADDING;
+    }
+
+    //Power of two at or above the core count, at most 16.
+    private static int stripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
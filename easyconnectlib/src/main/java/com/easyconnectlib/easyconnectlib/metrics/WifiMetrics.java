@@ -0,0 +1,111 @@
+package com.easyconnectlib.easyconnectlib.metrics;
+
+import com.easyconnectlib.easyconnectlib.wifi.callbacks.WifiConnectionListener;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Counters of WifiConnection: how often and how fast it associates and scans, and which errors it reported.
+public final class WifiMetrics {
+
+    private final LatencyHistogram mAssociationTime = new LatencyHistogram();
+    private final LatencyHistogram mScanTime = new LatencyHistogram();
+    private final AtomicLong mAssociationAttempts = new AtomicLong();
+    private final AtomicLong mDisconnects = new AtomicLong();
+    private final AtomicLong mScanCacheHits = new AtomicLong();
+    private final AtomicLong mScanCacheMisses = new AtomicLong();
+    private final EnumCounter<WifiConnectionListener.WIFI_ERROR> mWifiErrors = new EnumCounter<>(WifiConnectionListener.WIFI_ERROR.class);
+
+    public void recordAssociationAttempt() {
+        mAssociationAttempts.incrementAndGet();
+    }
+
+    //From connectToWifi asking the system to join the network until it reported the network connected.
+    public void recordAssociated(long associationNanos) {
+        mAssociationTime.recordNanos(associationNanos);
+    }
+
+    public void recordDisconnected() {
+        mDisconnects.incrementAndGet();
+    }
+
+    public void recordScan(long scanNanos) {
+        mScanTime.recordNanos(scanNanos);
+    }
+
+    //A connect that found its network in the scan cache and did not have to scan.
+    public void recordScanCacheHit() {
+        mScanCacheHits.incrementAndGet();
+    }
+
+    public void recordScanCacheMiss() {
+        mScanCacheMisses.incrementAndGet();
+    }
+
+    public void recordWifiError(WifiConnectionListener.WIFI_ERROR wifi_error) {
+        mWifiErrors.increment(wifi_error);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot mAssociationTime;
+        private final LatencyHistogram.Snapshot mScanTime;
+        private final long mAssociationAttempts;
+        private final long mDisconnects;
+        private final long mScanCacheHits;
+        private final long mScanCacheMisses;
+        private final Map<WifiConnectionListener.WIFI_ERROR, Long> mWifiErrors;
+
+        private Snapshot(WifiMetrics metrics) {
+            mAssociationTime = metrics.mAssociationTime.snapshot();
+            mScanTime = metrics.mScanTime.snapshot();
+            mAssociationAttempts = metrics.mAssociationAttempts.get();
+            mDisconnects = metrics.mDisconnects.get();
+            mScanCacheHits = metrics.mScanCacheHits.get();
+            mScanCacheMisses = metrics.mScanCacheMisses.get();
+            mWifiErrors = metrics.mWifiErrors.snapshot();
+        }
+
+        public LatencyHistogram.Snapshot getAssociationTime() {
+            return mAssociationTime;
+        }
+
+        public LatencyHistogram.Snapshot getScanTime() {
+            return mScanTime;
+        }
+
+        public long getAssociationAttempts() {
+            return mAssociationAttempts;
+        }
+
+        public long getAssociations() {
+            return mAssociationTime.getCount();
+        }
+
+        public long getDisconnects() {
+            return mDisconnects;
+        }
+
+        public long getScanCacheHits() {
+            return mScanCacheHits;
+        }
+
+        public long getScanCacheMisses() {
+            return mScanCacheMisses;
+        }
+
+        public Map<WifiConnectionListener.WIFI_ERROR, Long> getWifiErrors() {
+            return mWifiErrors;
+        }
+
+        @Override
+        public String toString() {
+            return "WifiMetrics{associationAttempts=" + mAssociationAttempts + ", associationTime=" + mAssociationTime
+                    + ", scanTime=" + mScanTime + ", scanCacheHits=" + mScanCacheHits + ", scanCacheMisses=" + mScanCacheMisses
+                    + ", disconnects=" + mDisconnects + ", errors=" + mWifiErrors + "}";
+        }
+    }
+}
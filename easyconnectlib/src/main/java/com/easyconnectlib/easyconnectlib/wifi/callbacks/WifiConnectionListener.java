@@ -21,6 +21,8 @@ public interface WifiConnectionListener {
         WIFI_NOT_CONNECTED,
         AUTHENTICATING_ERROR,
         AP_MODE_ON,
-        MINIMUM_PASSWORD_LENGTH_EIGHT
+        MINIMUM_PASSWORD_LENGTH_EIGHT,
+        //A step of connectToWifi did not finish within its timeout, see WifiConnection.setConnectTimeouts.
+        TIME_OUT
     }
 }
\ No newline at end of file
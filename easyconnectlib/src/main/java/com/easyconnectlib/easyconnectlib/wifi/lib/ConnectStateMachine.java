@@ -0,0 +1,100 @@
+package com.easyconnectlib.easyconnectlib.wifi.lib;
+
+import android.net.wifi.SupplicantState;
+import android.util.Log;
+
+//State of a connectToWifi run. The connect thread moves to the steps it starts itself and then waits for the
+//broadcast that ends the step, each wait bounded by the step's own timeout. Broadcasts only act on the step they
+//belong to, so a late one from an earlier step or attempt changes nothing.
+final class ConnectStateMachine {
+
+    private final String TAG = ConnectStateMachine.class.getSimpleName();
+    private WifiConnection.ConnectState mState = WifiConnection.ConnectState.IDLE;
+    private String mSsid;
+    private boolean isActive;
+    private long mStateStartNanos;
+
+    //Returns false while another run is active, from start until finish.
+    synchronized boolean start(String ssid) {
+        if (isActive) {
+            return false;
+        }
+        isActive = true;
+        mSsid = ssid;
+        moveTo(WifiConnection.ConnectState.ENABLING);
+        return true;
+    }
+
+    synchronized void finish(WifiConnection.ConnectState state) {
+        moveTo(state);
+        isActive = false;
+    }
+
+    synchronized WifiConnection.ConnectState getState() {
+        return mState;
+    }
+
+    synchronized void moveTo(WifiConnection.ConnectState state) {
+        if (state == mState) {
+            return;
+        }
+        long nowNanos = System.nanoTime();
+        if (isActive && mState != WifiConnection.ConnectState.IDLE) {
+            Log.i(TAG, mState + " took " + (nowNanos - mStateStartNanos) / 1000000 + " ms, now " + state);
+        }
+        mState = state;
+        mStateStartNanos = nowNanos;
+        notifyAll();
+    }
+
+    //Waits while step is the current state. Returns the state it moved on to, or step itself after timeoutMillis.
+    synchronized WifiConnection.ConnectState awaitStepEnd(WifiConnection.ConnectState step, long timeoutMillis)
+            throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + timeoutMillis * 1000000;
+        while (mState == step) {
+            long waitMillis = (deadlineNanos - System.nanoTime()) / 1000000;
+            if (waitMillis <= 0) {
+                break;
+            }
+            wait(waitMillis);
+        }
+        return mState;
+    }
+
+    synchronized void onWifiEnabled() {
+        if (mState == WifiConnection.ConnectState.ENABLING) {
+            moveTo(WifiConnection.ConnectState.SCANNING);
+        }
+    }
+
+    //The access point accepted the association, what follows is the key handshake.
+    synchronized void onSupplicantStateChanged(SupplicantState supplicantState) {
+        if (mState != WifiConnection.ConnectState.ASSOCIATING) {
+            return;
+        }
+        switch (supplicantState) {
+            case ASSOCIATED:
+            case FOUR_WAY_HANDSHAKE:
+            case GROUP_HANDSHAKE:
+            case COMPLETED:
+                moveTo(WifiConnection.ConnectState.AUTHENTICATING);
+                break;
+            default:
+                break;
+        }
+    }
+
+    //ssid has an IP address and is the active network.
+    synchronized void onNetworkConnected(String ssid) {
+        if ((mState == WifiConnection.ConnectState.ASSOCIATING || mState == WifiConnection.ConnectState.AUTHENTICATING)
+                && mSsid.equals(ssid)) {
+            moveTo(WifiConnection.ConnectState.CONNECTED);
+        }
+    }
+
+    synchronized void onAuthenticationFailed() {
+        if (mState == WifiConnection.ConnectState.ASSOCIATING || mState == WifiConnection.ConnectState.AUTHENTICATING) {
+            moveTo(WifiConnection.ConnectState.FAILED);
+        }
+    }
+}
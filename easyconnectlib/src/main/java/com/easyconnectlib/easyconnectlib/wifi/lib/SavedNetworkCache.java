@@ -0,0 +1,59 @@
+package com.easyconnectlib.easyconnectlib.wifi.lib;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//networkIds of the configurations connectToWifi saved, keyed by SSID, with a digest of the security mode and password
+//they were saved with. The system never hands a saved password back, so this is what tells a repeat connect with the
+//same credentials, which can reuse the configuration as it is, from one that has to update it. Kept in memory only,
+//the first connect after a restart updates the configuration once.
+final class SavedNetworkCache {
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    //The saved networkId for ssid if it was saved with the same mode and password, -1 otherwise.
+    synchronized int getNetworkId(String ssid, String mode, String password) {
+        Entry entry = mEntries.get(ssid);
+        if (entry == null || !Arrays.equals(entry.mCredentials, digest(mode, password))) {
+            return -1;
+        }
+        return entry.mNetworkId;
+    }
+
+    synchronized void put(String ssid, int networkId, String mode, String password) {
+        mEntries.put(ssid, new Entry(networkId, digest(mode, password)));
+    }
+
+    synchronized void remove(String ssid) {
+        mEntries.remove(ssid);
+    }
+
+    private static byte[] digest(String mode, String password) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(mode.getBytes("UTF-8"));
+            if (password != null) {
+                messageDigest.update((byte) 0);
+                messageDigest.update(password.getBytes("UTF-8"));
+            }
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            //Both are required on every platform.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final int mNetworkId;
+        private final byte[] mCredentials;
+
+        private Entry(int networkId, byte[] credentials) {
+            mNetworkId = networkId;
+            mCredentials = credentials;
+        }
+    }
+}
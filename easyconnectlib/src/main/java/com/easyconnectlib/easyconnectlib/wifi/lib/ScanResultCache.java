@@ -0,0 +1,113 @@
+package com.easyconnectlib.easyconnectlib.wifi.lib;
+
+import android.net.wifi.ScanResult;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//Latest scan results indexed by SSID and BSSID, so a connect can look its network up instead of scanning. Filled from
+//the SCAN_RESULTS_AVAILABLE broadcast, which also covers scans started by the system or other apps. An SSID served by
+//several access points maps to the strongest one. Thread safe, the broadcast fills it on the main thread while
+//connectToWifi reads and waits on its own thread.
+final class ScanResultCache {
+
+    private final Map<String, ScanResult> mBySsid = new HashMap<>();
+    private final Map<String, ScanResult> mByBssid = new HashMap<>();
+    private List<ScanResult> mScanResults = Collections.emptyList();
+    private long mTtlMillis;
+    //elapsedRealtime of the last scan that really produced new results, -1 before the first one.
+    private long mUpdatedMillis = -1;
+    //Counts every finished scan, also failed ones, so a waiter can tell that the scan it started is over.
+    private long mScanCount;
+
+    ScanResultCache(long ttlMillis) {
+        mTtlMillis = ttlMillis;
+    }
+
+    synchronized void setTtlMillis(long ttlMillis) {
+        mTtlMillis = ttlMillis;
+    }
+
+    //isUpdated false means the scan failed or was throttled and scanResults are the old ones, they are indexed but
+    //do not count as fresh.
+    synchronized void onScanFinished(List<ScanResult> scanResults, boolean isUpdated) {
+        mScanCount++;
+        if (scanResults != null) {
+            index(scanResults);
+            if (isUpdated) {
+                mUpdatedMillis = SystemClock.elapsedRealtime();
+            }
+        }
+        notifyAll();
+    }
+
+    synchronized long getScanCount() {
+        return mScanCount;
+    }
+
+    //Waits until a scan finished after getScanCount returned scanCount, returns false on timeout.
+    synchronized boolean awaitScan(long scanCount, long timeoutMillis) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+        while (mScanCount == scanCount) {
+            long waitMillis = deadline - SystemClock.elapsedRealtime();
+            if (waitMillis <= 0) {
+                return false;
+            }
+            wait(waitMillis);
+        }
+        return true;
+    }
+
+    synchronized boolean isFresh() {
+        return mUpdatedMillis >= 0 && SystemClock.elapsedRealtime() - mUpdatedMillis <= mTtlMillis;
+    }
+
+    //The entry for ssid if the cache is fresh, null otherwise or if the last scan did not see it.
+    synchronized ScanResult getFreshBySsid(String ssid) {
+        return isFresh() ? mBySsid.get(ssid) : null;
+    }
+
+    synchronized ScanResult getFreshByBssid(String bssid) {
+        return isFresh() && bssid != null ? mByBssid.get(bssid.toLowerCase(Locale.US)) : null;
+    }
+
+    //Ignores the TTL, for a lookup right after a scan.
+    synchronized ScanResult getBySsid(String ssid) {
+        return mBySsid.get(ssid);
+    }
+
+    synchronized List<ScanResult> getScanResults() {
+        return mScanResults;
+    }
+
+    synchronized void clear() {
+        mBySsid.clear();
+        mByBssid.clear();
+        mScanResults = Collections.emptyList();
+        mUpdatedMillis = -1;
+    }
+
+    private void index(List<ScanResult> scanResults) {
+        mBySsid.clear();
+        mByBssid.clear();
+        for (ScanResult scanResult : scanResults) {
+            if (scanResult.BSSID != null) {
+                mByBssid.put(scanResult.BSSID.toLowerCase(Locale.US), scanResult);
+            }
+            //Hidden networks have no SSID to look them up by.
+            if (scanResult.SSID == null || scanResult.SSID.isEmpty()) {
+                continue;
+            }
+            ScanResult strongest = mBySsid.get(scanResult.SSID);
+            if (strongest == null || scanResult.level > strongest.level) {
+                mBySsid.put(scanResult.SSID, scanResult);
+            }
+        }
+        mScanResults = Collections.unmodifiableList(new ArrayList<>(scanResults));
+    }
+}
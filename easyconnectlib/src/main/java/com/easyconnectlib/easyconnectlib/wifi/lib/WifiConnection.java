@@ -16,6 +16,7 @@ import android.net.wifi.WifiManager;
 import android.os.Build;
 import android.util.Log;
 
+import com.easyconnectlib.easyconnectlib.metrics.WifiMetrics;
 import com.easyconnectlib.easyconnectlib.wifi.callbacks.ApStatus;
 import com.easyconnectlib.easyconnectlib.wifi.callbacks.WifiConnectionListener;
 import com.easyconnectlib.easyconnectlib.wifi.callbacks.WifiScanListener;
@@ -29,20 +30,54 @@ import java.util.Locale;
 public class WifiConnection {
     private final String TAG = WifiConnection.class.getSimpleName();
     public static final String WIFI_AP_STATE_CHANGED_ACTION = "android.net.wifi.WIFI_AP_STATE_CHANGED";
+    public static final long DEFAULT_SCAN_CACHE_TTL_MILLIS = 30 * 1000;
+    //Longest a connect waits for the scan it started, a scan normally reports within a few seconds.
+    public static final long SCAN_TIMEOUT_MILLIS = 10 * 1000;
+    public static final long DEFAULT_ENABLE_TIMEOUT_MILLIS = 10 * 1000;
+    public static final long DEFAULT_ASSOCIATION_TIMEOUT_MILLIS = 15 * 1000;
+    //Covers the key handshake and DHCP, until the network is reported connected.
+    public static final long DEFAULT_AUTHENTICATION_TIMEOUT_MILLIS = 15 * 1000;
     private static WifiConnection ourInstance;
     private final WifiManager mWifiManager;
     private WifiConnectionListener mWifiConnectionListener;
     private WifiScanListener mWifiScanListener;
     private ApStatus mApStatus;
     private String mConnectedSSID;
-    private boolean isConnectToWifiRunning;
     private Context mContext;
+    private final WifiMetrics mMetrics = new WifiMetrics();
+    private final ScanResultCache mScanResultCache = new ScanResultCache(DEFAULT_SCAN_CACHE_TTL_MILLIS);
+    private final ConnectStateMachine mConnectStateMachine = new ConnectStateMachine();
+    private final SavedNetworkCache mSavedNetworkCache = new SavedNetworkCache();
+    private volatile long mEnableTimeoutMillis = DEFAULT_ENABLE_TIMEOUT_MILLIS;
+    private volatile long mAssociationTimeoutMillis = DEFAULT_ASSOCIATION_TIMEOUT_MILLIS;
+    private volatile long mAuthenticationTimeoutMillis = DEFAULT_AUTHENTICATION_TIMEOUT_MILLIS;
+    //Network being joined by connectToWifi and when it was asked to, for the association time.
+    private volatile String mAssociatingSSID;
+    private volatile long mAssociationStartNanos;
+    private volatile long mScanStartNanos;
+
+    //Steps of connectToWifi, each one ends with the broadcast that reports it done or after its own timeout.
+    public enum ConnectState {
+        IDLE,
+        //Wi-Fi is being turned on, ends with WIFI_STATE_ENABLED.
+        ENABLING,
+        //Looking the network up in the scan cache or scanning for it, ends with SCAN_RESULTS_AVAILABLE.
+        SCANNING,
+        //Asked the system to join, ends when the supplicant reports ASSOCIATED.
+        ASSOCIATING,
+        //Key handshake and DHCP, ends when the network is reported CONNECTED.
+        AUTHENTICATING,
+        CONNECTED,
+        FAILED
+    }
 
     private WifiConnection(Context context) {
         mWifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-        isConnectToWifiRunning = false;
         mConnectedSSID = "NONE";
         this.mContext = context;
+        IntentFilter scanResultsFilter = new IntentFilter();
+        scanResultsFilter.addAction(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
+        context.getApplicationContext().registerReceiver(mScanCacheReceiver, scanResultsFilter);
     }
 
     public static WifiConnection getInstance(Context context) {
@@ -56,13 +91,48 @@ public class WifiConnection {
             Log.i(TAG, "getConnectedSSID" + wifiInfo.getSSID());
             return wifiInfo.getSSID().replace("\"", "");
         } else {
-            if (mWifiConnectionListener != null) {
-                mWifiConnectionListener.onError(!mWifiManager.isWifiEnabled() ? WifiConnectionListener.WIFI_ERROR.WIFI_DISABLED : WifiConnectionListener.WIFI_ERROR.WIFI_NOT_CONNECTED);
-            }
+            notifyWifiError(!mWifiManager.isWifiEnabled() ? WifiConnectionListener.WIFI_ERROR.WIFI_DISABLED : WifiConnectionListener.WIFI_ERROR.WIFI_NOT_CONNECTED);
             return null;
         }
     }
 
+    public WifiMetrics.Snapshot getMetricsSnapshot() {
+        return mMetrics.snapshot();
+    }
+
+    //How long scan results are trusted by connectToWifi. Connects within this time after any scan, including scans
+    //of the system or other apps, skip scanning if the network was seen. 0 makes every connect scan.
+    public void setScanCacheTtl(long ttlMillis) {
+        mScanResultCache.setTtlMillis(ttlMillis);
+    }
+
+    //The strongest access point of ssid from a scan within the TTL, null if there is none.
+    public ScanResult getCachedScanResult(String ssid) {
+        return mScanResultCache.getFreshBySsid(ssid);
+    }
+
+    public ScanResult getCachedScanResultByBssid(String bssid) {
+        return mScanResultCache.getFreshByBssid(bssid);
+    }
+
+    public ConnectState getConnectState() {
+        return mConnectStateMachine.getState();
+    }
+
+    //Longest connectToWifi waits for Wi-Fi to turn on, for the association and for the handshake and DHCP after it.
+    //A step that takes longer fails the connect with TIME_OUT. Scans are bounded by SCAN_TIMEOUT_MILLIS.
+    public void setConnectTimeouts(long enableTimeoutMillis, long associationTimeoutMillis, long authenticationTimeoutMillis) {
+        mEnableTimeoutMillis = enableTimeoutMillis;
+        mAssociationTimeoutMillis = associationTimeoutMillis;
+        mAuthenticationTimeoutMillis = authenticationTimeoutMillis;
+    }
+
+    private void notifyWifiError(WifiConnectionListener.WIFI_ERROR wifi_error) {
+        mMetrics.recordWifiError(wifi_error);
+        if (mWifiConnectionListener != null)
+            mWifiConnectionListener.onError(wifi_error);
+    }
+
     public String getConnectedRouterIP() {
         if (mWifiManager.getWifiState() == WifiManager.WIFI_STATE_ENABLED) {
             DhcpInfo dhcpInfo = mWifiManager.getDhcpInfo();
@@ -79,6 +149,7 @@ public class WifiConnection {
                 IntentFilter scanResultsFilters = new IntentFilter();
                 scanResultsFilters.addAction(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
                 mContext.registerReceiver(mWifiScanReceiver, scanResultsFilters);
+                mScanStartNanos = System.nanoTime();
                 mWifiManager.startScan();
             } else {
                 if (mWifiScanListener != null)
@@ -169,25 +240,24 @@ public class WifiConnection {
         if (isWifiConnectedTo(ssid))
             disconnectFrom(ssid);
 
+        mSavedNetworkCache.remove(ssid);
+        boolean isRemoved = false;
         if (list != null) {
             for (WifiConfiguration wifiConfiguration : list) {
                 if (wifiConfiguration.SSID.replace("\"", "").equals(ssid)) {
-                    mWifiManager.removeNetwork(wifiConfiguration.networkId);
-                    mWifiManager.saveConfiguration();
+                    isRemoved |= mWifiManager.removeNetwork(wifiConfiguration.networkId);
                 }
             }
         }
+        if (isRemoved) {
+            mWifiManager.saveConfiguration();
+        }
     }
 
     public void forgetConnectedNetwork() {
         String ssid = getConnectedSSID();
-        List<WifiConfiguration> list = mWifiManager.getConfiguredNetworks();
-        disconnectFrom(ssid);
-        for (WifiConfiguration wifiConfiguration : list) {
-            if (wifiConfiguration.SSID.replace("\"", "").equals(ssid)) {
-                mWifiManager.removeNetwork(wifiConfiguration.networkId);
-                mWifiManager.saveConfiguration();
-            }
+        if (ssid != null) {
+            forgetNetwork(ssid);
         }
     }
 
@@ -201,118 +271,169 @@ public class WifiConnection {
     }
 
     public void connectToWifi(final String ssid, final String password) {
-        Log.i(TAG, "thread status" + isConnectToWifiRunning);
-        if (!isConnectToWifiRunning) {
-            isConnectToWifiRunning = true;
-            final Thread thread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    Log.i(TAG, "thread status" + isConnectToWifiRunning);
-                    try {
-                        if (!isApModeOn()) {
-                            if (isLocationServiceOn()) {
+        if (!mConnectStateMachine.start(ssid)) {
+            Log.i(TAG, "connect already running, " + mConnectStateMachine.getState());
+            return;
+        }
+        IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+        intentFilter.addAction(WifiManager.SUPPLICANT_STATE_CHANGED_ACTION);
+        intentFilter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        mContext.getApplicationContext().registerReceiver(mConnectStateReceiver, intentFilter);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ConnectState state = ConnectState.FAILED;
+                try {
+                    state = runConnect(ssid, password);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    notifyWifiError(WifiConnectionListener.WIFI_ERROR.INTERNAL_ERROR);
+                } finally {
+                    //Unregistered before finishing, a connect started right after registers it again.
+                    mContext.getApplicationContext().unregisterReceiver(mConnectStateReceiver);
+                    mConnectStateMachine.finish(state);
+                }
+            }
+        });
+        thread.start();
+    }
 
-                                if (mWifiConnectionListener != null)
-                                    mWifiConnectionListener.onWifiConnecting();
+    //Runs on the connect thread, returns CONNECTED or FAILED. Each step moves on as soon as its broadcast arrives.
+    private ConnectState runConnect(String ssid, String password) throws InterruptedException {
+        if (isApModeOn()) {
+            notifyWifiError(WifiConnectionListener.WIFI_ERROR.AP_MODE_ON);
+            return ConnectState.FAILED;
+        }
+        if (!isLocationServiceOn()) {
+            if (mWifiConnectionListener != null)
+                mWifiConnectionListener.onLocationServiceOff();
+            return ConnectState.FAILED;
+        }
+        if (mWifiConnectionListener != null)
+            mWifiConnectionListener.onWifiConnecting();
 
-                                //makeWifiStable(): It will enable wifi if not and allow the OS to connect to previous wifi network
-                                if (!mWifiManager.isWifiEnabled()) {
-                                    mWifiManager.setWifiEnabled(true);
-                                    try {
-                                        Thread.sleep(7000);
-                                    } catch (InterruptedException e) {
-                                        e.printStackTrace();
-                                    }
-                                }
+        if (mWifiManager.isWifiEnabled()) {
+            mConnectStateMachine.moveTo(ConnectState.SCANNING);
+        } else {
+            mWifiManager.setWifiEnabled(true);
+            if (mConnectStateMachine.awaitStepEnd(ConnectState.ENABLING, mEnableTimeoutMillis) == ConnectState.ENABLING) {
+                return timedOut(ConnectState.ENABLING);
+            }
+        }
 
-                                if (!isWifiConnectedTo(ssid)) {
-
-
-                                    ScanResult scanResult = getNetworkObject(ssid);
-
-                                    if (scanResult != null) {
-                                        String mode = getSecurityMode(scanResult);
-
-                                        forgetNetwork(ssid);
-                                        WifiConfiguration config = new WifiConfiguration();
-                                        config.SSID = "\"".concat(ssid).concat("\"");
-                                        config.status = WifiConfiguration.Status.DISABLED;
-
-                                        switch (mode) {
-                                            case "OPEN":
-                                                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
-                                                break;
-                                            case "WEP":
-                                                config.wepKeys[0] = "\"" + password + "\"";
-                                                config.wepTxKeyIndex = 0;
-                                                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
-                                                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP40);
-                                                break;
-                                            case "WPA":
-                                            case "EAP":
-                                                if (password == null || password.length() < 8) {
-                                                    if (mWifiConnectionListener != null)
-                                                        mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.MINIMUM_PASSWORD_LENGTH_EIGHT);
-                                                    return;
-                                                }
-                                              /*  config.hiddenSSID = true;
-                                                config.status = WifiConfiguration.Status.ENABLED;
-                                                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
-                                                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);*/
-                                                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
-                                                /*config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.TKIP);
-                                                config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.CCMP);
-                                                config.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
-                                                config.allowedProtocols.set(WifiConfiguration.Protocol.WPA);*/
-                                                config.preSharedKey = "\"" + password + "\"";
-                                                break;
-
-                                        }
-
-                                        int res = mWifiManager.addNetwork(config);
-                                        mWifiManager.saveConfiguration();
-                                        if (res == -1) {
-                                            //Internal error from android, as we are unable to add wifi configuration in WIFIMANAGER
-                                            Log.e(TAG, "addNetwork: returns -1");
-                                            if (mWifiConnectionListener != null)
-                                                mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.INTERNAL_ERROR);
-                                            return;
-                                        } else {
-                                            mWifiManager.disconnect();
-                                            mWifiManager.enableNetwork(res, true);
-                                            mWifiManager.reconnect();
-
-                                        }
-                                    } else {
-                                        if (mWifiConnectionListener != null)
-                                            mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.SSID_NOT_FOUND);
-                                    }
-                                } else {
-                                    if (mWifiConnectionListener != null)
-                                        mWifiConnectionListener.onWifiConnected(ssid);
-                                }
-                            } else {
-                                if (mWifiConnectionListener != null)
-                                    mWifiConnectionListener.onLocationServiceOff();
-                            }
-                        } else {
-                            if (mWifiConnectionListener != null)
-                                mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.AP_MODE_ON);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        if (mWifiConnectionListener != null)
-                            mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.INTERNAL_ERROR);
-                    } finally {
-                        isConnectToWifiRunning = false;
-                        Log.i(TAG, "thread status" + isConnectToWifiRunning);
-                    }
+        if (isWifiConnectedTo(ssid)) {
+            if (mWifiConnectionListener != null)
+                mWifiConnectionListener.onWifiConnected(ssid);
+            return ConnectState.CONNECTED;
+        }
+
+        ScanResult scanResult = getNetworkObject(ssid);
+        if (scanResult == null) {
+            notifyWifiError(WifiConnectionListener.WIFI_ERROR.SSID_NOT_FOUND);
+            return ConnectState.FAILED;
+        }
+        String mode = getSecurityMode(scanResult);
+
+        if ((mode.equals("WPA") || mode.equals("EAP")) && (password == null || password.length() < 8)) {
+            notifyWifiError(WifiConnectionListener.WIFI_ERROR.MINIMUM_PASSWORD_LENGTH_EIGHT);
+            return ConnectState.FAILED;
+        }
+
+        //A configuration this instance saved with the same credentials is joined as it is, nothing is written.
+        int networkId = mSavedNetworkCache.getNetworkId(ssid, mode, password);
+        mConnectStateMachine.moveTo(ConnectState.ASSOCIATING);
+        mMetrics.recordAssociationAttempt();
+        mAssociationStartNanos = System.nanoTime();
+        mAssociatingSSID = ssid;
+        if (networkId == -1 || !mWifiManager.enableNetwork(networkId, true)) {
+            //Not saved yet, saved with other credentials or removed since by the user or another app.
+            networkId = saveNetwork(ssid, mode, password);
+            if (networkId == -1) {
+                //Internal error from android, as we are unable to add wifi configuration in WIFIMANAGER
+                Log.e(TAG, "addNetwork: returns -1");
+                mSavedNetworkCache.remove(ssid);
+                notifyWifiError(WifiConnectionListener.WIFI_ERROR.INTERNAL_ERROR);
+                return ConnectState.FAILED;
+            }
+            mSavedNetworkCache.put(ssid, networkId, mode, password);
+            mWifiManager.enableNetwork(networkId, true);
+        }
+        mWifiManager.reconnect();
+
+        ConnectState state = mConnectStateMachine.awaitStepEnd(ConnectState.ASSOCIATING, mAssociationTimeoutMillis);
+        if (state == ConnectState.AUTHENTICATING) {
+            state = mConnectStateMachine.awaitStepEnd(ConnectState.AUTHENTICATING, mAuthenticationTimeoutMillis);
+        }
+        if (state == ConnectState.ASSOCIATING || state == ConnectState.AUTHENTICATING) {
+            return timedOut(state);
+        }
+        //onWifiConnected and AUTHENTICATING_ERROR are reported by mWifiConnectivityState.
+        return state;
+    }
+
+    //Updates the configuration saved for ssid, or adds one if there is none or it belongs to another app, and writes
+    //the change once. Any further configurations of ssid are removed. Returns the networkId, -1 on failure.
+    private int saveNetwork(String ssid, String mode, String password) {
+        WifiConfiguration config = new WifiConfiguration();
+        config.SSID = "\"".concat(ssid).concat("\"");
+        config.status = WifiConfiguration.Status.DISABLED;
+
+        switch (mode) {
+            case "OPEN":
+                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+                break;
+            case "WEP":
+                config.wepKeys[0] = "\"" + password + "\"";
+                config.wepTxKeyIndex = 0;
+                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP40);
+                break;
+            case "WPA":
+            case "EAP":
+              /*  config.hiddenSSID = true;
+                config.status = WifiConfiguration.Status.ENABLED;
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);*/
+                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+                /*config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.TKIP);
+                config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.CCMP);
+                config.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
+                config.allowedProtocols.set(WifiConfiguration.Protocol.WPA);*/
+                config.preSharedKey = "\"" + password + "\"";
+                break;
+
+        }
+
+        int networkId = -1;
+        List<WifiConfiguration> list = mWifiManager.getConfiguredNetworks();
+        if (list != null) {
+            for (WifiConfiguration wifiConfiguration : list) {
+                if (!wifiConfiguration.SSID.replace("\"", "").equals(ssid)) {
+                    continue;
                 }
-            });
-            thread.start();
-        } else {
-            Log.i(TAG, "thread already running");
+                if (networkId == -1) {
+                    config.networkId = wifiConfiguration.networkId;
+                    networkId = mWifiManager.updateNetwork(config);
+                } else {
+                    mWifiManager.removeNetwork(wifiConfiguration.networkId);
+                }
+            }
+        }
+        if (networkId == -1) {
+            config.networkId = -1;
+            networkId = mWifiManager.addNetwork(config);
         }
+        if (networkId != -1) {
+            mWifiManager.saveConfiguration();
+        }
+        return networkId;
+    }
+
+    private ConnectState timedOut(ConnectState step) {
+        Log.e(TAG, "connect timed out while " + step);
+        notifyWifiError(WifiConnectionListener.WIFI_ERROR.TIME_OUT);
+        return ConnectState.FAILED;
     }
 
 
@@ -435,6 +556,7 @@ public class WifiConnection {
                             mWifiConnectionListener.onWifiStateChanged(true);
                     } else if (intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE, WifiManager.WIFI_STATE_UNKNOWN) == WifiManager.WIFI_STATE_DISABLED) {
                         Log.i(TAG, "wifi disabled");
+                        mScanResultCache.clear();
                         if (mWifiConnectionListener != null)
                             mWifiConnectionListener.onWifiStateChanged(false);
                     }
@@ -447,6 +569,11 @@ public class WifiConnection {
                                 if (getWifiInfo() != null)
                                     mConnectedSSID = getWifiInfo().getSSID();
                                 Log.i(TAG, "Wifi connected:" + mConnectedSSID);
+                                String associatingSSID = mAssociatingSSID;
+                                if (associatingSSID != null && associatingSSID.equals(mConnectedSSID.replace("\"", ""))) {
+                                    mAssociatingSSID = null;
+                                    mMetrics.recordAssociated(System.nanoTime() - mAssociationStartNanos);
+                                }
                                 if (mWifiConnectionListener != null) {
                                     mWifiConnectionListener.onWifiConnected(mConnectedSSID.replace("\"", ""));
                                 }
@@ -458,6 +585,7 @@ public class WifiConnection {
                                 break;
                             case DISCONNECTED:
                                 Log.i(TAG, "Wifi disconnected:" + mConnectedSSID);
+                                mMetrics.recordDisconnected();
                                 if (mWifiConnectionListener != null)
                                     mWifiConnectionListener.onWifiDisconnected(mConnectedSSID);
                                 break;
@@ -467,8 +595,7 @@ public class WifiConnection {
                             case SUSPENDED:
                             case UNKNOWN:
                                 Log.i(TAG, "Suspended or unknown error occurred");
-                                if (mWifiConnectionListener != null)
-                                    mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.INTERNAL_ERROR);
+                                notifyWifiError(WifiConnectionListener.WIFI_ERROR.INTERNAL_ERROR);
                                 break;
                         }
                     }
@@ -555,8 +682,7 @@ public class WifiConnection {
                     int suplError = intent.getIntExtra(WifiManager.EXTRA_SUPPLICANT_ERROR, -1);
                     if (suplError == WifiManager.ERROR_AUTHENTICATING) {
                         Log.i(TAG, "ERROR_AUTHENTICATING!");
-                        if (mWifiConnectionListener != null)
-                            mWifiConnectionListener.onError(WifiConnectionListener.WIFI_ERROR.AUTHENTICATING_ERROR);
+                        notifyWifiError(WifiConnectionListener.WIFI_ERROR.AUTHENTICATING_ERROR);
                     }
                     break;
                 case WIFI_AP_STATE_CHANGED_ACTION:
@@ -583,6 +709,7 @@ public class WifiConnection {
             switch (action) {
                 case WifiManager.SCAN_RESULTS_AVAILABLE_ACTION:
                     Log.i(TAG, "Wifi scan result");
+                    mMetrics.recordScan(System.nanoTime() - mScanStartNanos);
                     if (mWifiScanListener != null)
                         mWifiScanListener.onWifiScanList(mWifiManager.getScanResults());
                     mContext.unregisterReceiver(mWifiScanReceiver);
@@ -591,6 +718,52 @@ public class WifiConnection {
         }
     };
 
+    //Registered only while connectToWifi runs, hands the broadcasts its steps wait for to the state machine.
+    private final BroadcastReceiver mConnectStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context c, Intent intent) {
+            String action = intent.getAction();
+            switch (action) {
+                case WifiManager.WIFI_STATE_CHANGED_ACTION:
+                    if (intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE, WifiManager.WIFI_STATE_UNKNOWN) == WifiManager.WIFI_STATE_ENABLED) {
+                        mConnectStateMachine.onWifiEnabled();
+                    }
+                    break;
+                case WifiManager.SUPPLICANT_STATE_CHANGED_ACTION:
+                    SupplicantState supplicantState = intent.getParcelableExtra(WifiManager.EXTRA_NEW_STATE);
+                    if (supplicantState != null) {
+                        mConnectStateMachine.onSupplicantStateChanged(supplicantState);
+                    }
+                    if (intent.getIntExtra(WifiManager.EXTRA_SUPPLICANT_ERROR, -1) == WifiManager.ERROR_AUTHENTICATING) {
+                        mConnectStateMachine.onAuthenticationFailed();
+                    }
+                    break;
+                case ConnectivityManager.CONNECTIVITY_ACTION:
+                    NetworkInfo networkInfo = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
+                    if (networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_WIFI
+                            && networkInfo.getState() == NetworkInfo.State.CONNECTED) {
+                        WifiInfo wifiInfo = getWifiInfo();
+                        if (wifiInfo != null) {
+                            mConnectStateMachine.onNetworkConnected(wifiInfo.getSSID().replace("\"", ""));
+                        }
+                    }
+                    break;
+            }
+        }
+    };
+
+    //Registered for the lifetime of the instance, keeps the scan cache current with every scan the system makes.
+    private final BroadcastReceiver mScanCacheReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context c, Intent intent) {
+            if (WifiManager.SCAN_RESULTS_AVAILABLE_ACTION.equals(intent.getAction())) {
+                //Before M every broadcast carries new results.
+                boolean isUpdated = intent.getBooleanExtra(WifiManager.EXTRA_RESULTS_UPDATED, true);
+                mScanResultCache.onScanFinished(mWifiManager.getScanResults(), isUpdated);
+            }
+        }
+    };
+
     private final BroadcastReceiver mApStateReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context c, Intent intent) {
@@ -617,14 +790,27 @@ public class WifiConnection {
         }
     };
 
+    //Starts a scan and returns as soon as its SCAN_RESULTS_AVAILABLE broadcast filled the cache.
     private List<ScanResult> getAvailableNetworkList() {
         if (isLocationServiceOn()) {
             enableWiFi(true);
-            mWifiManager.startScan();
-            synchronized (mWifiManager) {
-                pause(mWifiManager, 3000);
-                return mWifiManager.getScanResults();
+            long scanCount = mScanResultCache.getScanCount();
+            long scanStartNanos = System.nanoTime();
+            if (mWifiManager.startScan()) {
+                try {
+                    if (mScanResultCache.awaitScan(scanCount, SCAN_TIMEOUT_MILLIS)) {
+                        mMetrics.recordScan(System.nanoTime() - scanStartNanos);
+                        return mScanResultCache.getScanResults();
+                    }
+                    Log.i(TAG, "no scan results after " + SCAN_TIMEOUT_MILLIS + " ms");
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
             }
+            //The scan was throttled or never reported, use whatever the system last saw.
+            List<ScanResult> scanResults = mWifiManager.getScanResults();
+            mScanResultCache.onScanFinished(scanResults, false);
+            return scanResults;
         } else {
             if (mWifiConnectionListener != null)
                 mWifiConnectionListener.onLocationServiceOff();
@@ -666,48 +852,22 @@ public class WifiConnection {
         mContext.unregisterReceiver(mApStateReceiver);
     }
 
-    private void pause(Object object, int timeout) {
-        synchronized (object) {
-            try {
-                object.wait(timeout);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private void resume(Object object) {
-        try {
-            synchronized (object) {
-                object.notifyAll();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
     private boolean isNetworkAvailable(String ssid) {
-        List<ScanResult> scanResults = getAvailableNetworkList();
-        if (scanResults != null) {
-            for (ScanResult sc : scanResults) {
-                if ((sc.SSID).equals(ssid)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return getNetworkObject(ssid) != null;
     }
 
+    //A network seen by a scan within the TTL is used at once, otherwise a new scan is made and waited for.
     private ScanResult getNetworkObject(String ssid) {
-        List<ScanResult> scanResults = getAvailableNetworkList();
-        if (scanResults != null) {
-            for (ScanResult sc : scanResults) {
-                if ((sc.SSID).equals(ssid)) {
-                    return sc;
-                }
-            }
+        ScanResult scanResult = mScanResultCache.getFreshBySsid(ssid);
+        if (scanResult != null) {
+            mMetrics.recordScanCacheHit();
+            return scanResult;
+        }
+        mMetrics.recordScanCacheMiss();
+        if (getAvailableNetworkList() == null) {
+            return null;
         }
-        return null;
+        return mScanResultCache.getBySsid(ssid);
     }
 
     private String getSecurityMode(ScanResult scanResult) {
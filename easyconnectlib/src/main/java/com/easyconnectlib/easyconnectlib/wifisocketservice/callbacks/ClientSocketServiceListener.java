@@ -10,6 +10,7 @@ public interface ClientSocketServiceListener {
 
     void onSocketConnecting(String clientIpAddress,int port);
 
+    //dataBuffer is read-only and reused once this returns, copy what has to be kept.
     void onDataReceived(ByteBuffer dataBuffer, String data);
 
     void onDisconnected();
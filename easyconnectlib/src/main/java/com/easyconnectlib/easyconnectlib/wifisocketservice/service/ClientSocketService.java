@@ -9,8 +9,24 @@ import android.os.IBinder;
 import android.os.Looper;
 import android.util.Log;
 
+import com.easyconnectlib.easyconnectlib.client.callbacks.ResponseListener;
 import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.TextRecordListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.WritabilityListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.WriteListener;
 import com.easyconnectlib.easyconnectlib.client.socket.lib.ClientSocketConnection;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.CompressionStats;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.DatagramConnection;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.DatagramStreamStats;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.LengthFieldFrameCodec;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.PooledBuffer;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.ReconnectPolicy;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.RequestCorrelator;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.ResponseFuture;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.WriteFuture;
+import com.easyconnectlib.easyconnectlib.metrics.ConnectionMetrics;
+import com.easyconnectlib.easyconnectlib.metrics.WifiMetrics;
 import com.easyconnectlib.easyconnectlib.wifi.callbacks.WifiConnectionListener;
 import com.easyconnectlib.easyconnectlib.wifi.callbacks.WifiScanListener;
 import com.easyconnectlib.easyconnectlib.wifi.lib.WifiConnection;
@@ -18,20 +34,46 @@ import com.easyconnectlib.easyconnectlib.wifisocketservice.callbacks.ClientSocke
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
 
 public class ClientSocketService extends Service {
     private final String TAG = ClientSocketService.class.getSimpleName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private ClientSocketServiceListener mClientSocketServiceListener;
+    private volatile WritabilityListener mWritabilityListener;
     private IBinder clientSocketServiceBinder = new ClientSocketServiceBinder();
     private WifiConnection mWifiConnection;
     private ClientSocketConnection mClientSocketConnection;
+    private DatagramConnection mDatagramConnection;
+    private volatile Transport mTransport = Transport.TCP;
     private String mSSID, mPassword, mIpAddress;
     private int mPort;
     private int mRetry;
     private int mRetried;
     private boolean mIsRetryEnabled;
     private CountDownTimer countDownTimer;
+    private final ServiceEventDispatcher mServiceEventDispatcher = new ServiceEventDispatcher();
+    private volatile RequestCorrelator mRequestCorrelator;
+    private volatile ReconnectPolicy mReconnectPolicy;
+    private final AtomicInteger mReconnectAttempts = new AtomicInteger();
+    private volatile boolean mIsClosedByUser;
+    private final Handler mReconnectHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mReconnectTask = new Runnable() {
+        @Override
+        public void run() {
+            reconnect();
+        }
+    };
+
+    public enum Transport {
+        //ClientSocketConnection, reliable and ordered, supports requests, TLS and delimited text.
+        TCP,
+        //DatagramConnection, every write is one datagram that may be lost or reordered but is never waited for.
+        UDP
+    }
 
     public ClientSocketService() {
         mRetried = 0;
@@ -44,6 +86,8 @@ public class ClientSocketService extends Service {
         super.onCreate();
         Log.i(TAG, "oncreate");
         mClientSocketConnection = new ClientSocketConnection();
+        mClientSocketConnection.registerWritabilityListener(writabilityListener);
+        mDatagramConnection = new DatagramConnection();
         mWifiConnection = WifiConnection.getInstance(this);
     }
 
@@ -71,101 +115,112 @@ public class ClientSocketService extends Service {
     public void onDestroy() {
         super.onDestroy();
         Log.i(TAG, "ondestroy");
-        mClientSocketConnection.closeSocket();
+        if (mTransport == Transport.UDP) {
+            mDatagramConnection.close();
+        } else {
+            mClientSocketConnection.closeSocket();
+        }
     }
 
+    private WritabilityListener writabilityListener = new WritabilityListener() {
+        @Override
+        public void onWritabilityChanged(boolean isWritable) {
+            if (mWritabilityListener != null) {
+                mServiceEventDispatcher.dispatchWritabilityChanged(isWritable);
+            }
+        }
+    };
+
     private SocketConnectionListener socketConnectionListener = new SocketConnectionListener() {
         @Override
         public void onClientConnected(String serverIpAddress, final int port) {
+            mReconnectAttempts.set(0);
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mClientSocketServiceListener.onConnected(mSSID, mIpAddress,port);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+                mServiceEventDispatcher.dispatchConnected(mSSID, mIpAddress, port);
             }
         }
 
         @Override
         public void onClientConnecting(final String clientIpAddress,final int port) {
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mClientSocketServiceListener.onSocketConnecting( clientIpAddress, port);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+                mServiceEventDispatcher.dispatchSocketConnecting(clientIpAddress, port);
             }
         }
 
         @Override
         public void onDataReceived(final ByteBuffer dataBuffer, final String data) {
-            if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mClientSocketServiceListener.onDataReceived(dataBuffer, data);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
-            }
+            dispatchDataReceived(dataBuffer, data);
         }
 
         @Override
         public void onClientSocketClose() {
+            failPendingRequests(ResponseListener.REQUEST_ERROR.NOT_CONNECTED);
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mClientSocketServiceListener.onDisconnected();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+                mServiceEventDispatcher.dispatchDisconnected();
             }
         }
 
         @Override
         public void onClientSocketError(final SOCKET_ERROR socket_error) {
+            if (socket_error == SOCKET_ERROR.CONNECTION_ERROR) {
+                failPendingRequests(ResponseListener.REQUEST_ERROR.CONNECTION_ERROR);
+            }
+            if (socket_error == SOCKET_ERROR.CONNECTION_ERROR || socket_error == SOCKET_ERROR.TIME_OUT) {
+                scheduleReconnect();
+            }
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            switch (socket_error) {
-                                case CONNECTION_ERROR:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.CONNECTION_ERROR);
-                                    break;
-                                case INTERNAL_ERROR:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.INTERNAL_ERROR);
-                                    break;
-                                case NOT_CONNECTED:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.NOT_CONNECTED);
-                                    break;
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+                switch (socket_error) {
+                    case CONNECTION_ERROR:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.CONNECTION_ERROR);
+                        break;
+                    case INTERNAL_ERROR:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.INTERNAL_ERROR);
+                        break;
+                    case NOT_CONNECTED:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.NOT_CONNECTED);
+                        break;
+                    case TIME_OUT:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.TIME_OUT);
+                        break;
+                }
+            }
+        }
+    };
+
+    //DATA frames when requests are enabled, delivered like raw reads.
+    private SocketFrameListener dataFrameListener = new SocketFrameListener() {
+        @Override
+        public void onFrameReceived(ByteBuffer frameBuffer) {
+            dispatchDataReceived(frameBuffer, null);
+        }
+    };
+
+    //Records when delimited text is enabled, delivered with a null ByteBuffer.
+    private TextRecordListener textRecordListener = new TextRecordListener() {
+        @Override
+        public void onRecordReceived(CharSequence record) {
+            if (mClientSocketServiceListener != null) {
+                mServiceEventDispatcher.dispatchDataReceived(null, record.toString());
             }
         }
     };
 
+    private void dispatchDataReceived(ByteBuffer dataBuffer, String data) {
+        if (mClientSocketServiceListener != null) {
+            //The reader reuses dataBuffer for the next read, so hand a pooled copy to the dispatcher.
+            PooledBuffer dataCopy = mClientSocketConnection.getBufferPool().acquire(dataBuffer.remaining());
+            dataCopy.buffer().put(dataBuffer.duplicate()).flip();
+            mServiceEventDispatcher.dispatchDataReceived(dataCopy, data);
+        }
+    }
+
+    private void failPendingRequests(ResponseListener.REQUEST_ERROR request_error) {
+        RequestCorrelator requestCorrelator = mRequestCorrelator;
+        if (requestCorrelator != null) {
+            requestCorrelator.failPendingRequests(request_error);
+        }
+    }
+
     private WifiConnectionListener wifiConnectionListener = new WifiConnectionListener() {
         @Override
         public void onWifiStateChanged(boolean isEnabled) {
@@ -176,6 +231,8 @@ public class ClientSocketService extends Service {
         public void onWifiConnected(String connectedSSID) {
             Log.i(TAG, "onWifiConnected :" + connectedSSID);
             if (connectedSSID.equals(mSSID)) {
+                mReconnectHandler.removeCallbacks(mReconnectTask);
+                mReconnectAttempts.set(0);
                 startSocketConnection();
                 mIsRetryEnabled = false;
                 stopCountDownTimer();
@@ -186,16 +243,7 @@ public class ClientSocketService extends Service {
                         mWifiConnection.connectToWifi(mSSID, mPassword);
                         mRetried++;
                     } else if (mClientSocketServiceListener != null) {
-                        new Handler(Looper.getMainLooper()).post(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.MAX_RETRY_EXCEED);
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        });
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.MAX_RETRY_EXCEED);
                     }
                 }
             }
@@ -204,25 +252,17 @@ public class ClientSocketService extends Service {
         @Override
         public void onWifiDisconnected(final String ssid) {
             Log.i(TAG, "onWifiDisconnected :" + ssid);
+            //Nothing to reconnect to until the Wi-Fi is back, onWifiConnected then opens the socket again.
+            mReconnectHandler.removeCallbacks(mReconnectTask);
             if (mClientSocketServiceListener != null && ssid.equals(mSSID)) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        mClientSocketServiceListener.onDisconnected();
-                    }
-                });
+                mServiceEventDispatcher.dispatchDisconnected();
             }
         }
 
         @Override
         public void onWifiConnecting() {
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        mClientSocketServiceListener.onWifiConnecting(mSSID);
-                    }
-                });
+                mServiceEventDispatcher.dispatchWifiConnecting(mSSID);
             }
         }
 
@@ -231,53 +271,38 @@ public class ClientSocketService extends Service {
             mIsRetryEnabled = false;
             stopCountDownTimer();
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            switch (wifi_error) {
-                                case AP_MODE_ON:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.AP_MODE_ON);
-                                    break;
-                                case SSID_NOT_FOUND:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.SSID_NOT_FOUND);
-                                    break;
-                                case AUTHENTICATING_ERROR:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.AUTHENTICATING_ERROR);
-                                    break;
-                                case INTERNAL_ERROR:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.INTERNAL_ERROR);
-                                    break;
-                                case MINIMUM_PASSWORD_LENGTH_EIGHT:
-                                    mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.MINIMUM_PASSWORD_LENGTH_EIGHT);
-                                    break;
-                               /* case WIFI_DISABLED:
-                                    break;
-                                case WIFI_NOT_CONNECTED:
-                                    break;*/
-
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+                switch (wifi_error) {
+                    case AP_MODE_ON:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.AP_MODE_ON);
+                        break;
+                    case SSID_NOT_FOUND:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.SSID_NOT_FOUND);
+                        break;
+                    case AUTHENTICATING_ERROR:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.AUTHENTICATING_ERROR);
+                        break;
+                    case INTERNAL_ERROR:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.INTERNAL_ERROR);
+                        break;
+                    case MINIMUM_PASSWORD_LENGTH_EIGHT:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.MINIMUM_PASSWORD_LENGTH_EIGHT);
+                        break;
+                    case TIME_OUT:
+                        mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.TIME_OUT);
+                        break;
+                   /* case WIFI_DISABLED:
+                        break;
+                    case WIFI_NOT_CONNECTED:
+                        break;*/
+
+                }
             }
         }
 
         @Override
         public void onLocationServiceOff() {
             if (mClientSocketServiceListener != null) {
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.LOCATION_SERVICE_OFF);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+                mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.LOCATION_SERVICE_OFF);
             }
         }
     };
@@ -290,6 +315,8 @@ public class ClientSocketService extends Service {
         mRetry = retry;
         mIsRetryEnabled = true;
         mRetried = 0;
+        mIsClosedByUser = false;
+        mReconnectAttempts.set(0);
         startWifiConnection();
     }
 
@@ -303,9 +330,53 @@ public class ClientSocketService extends Service {
     }
 
     private void startSocketConnection() {
+        if (mTransport == Transport.UDP) {
+            mDatagramConnection.open(mIpAddress, mPort);
+            return;
+        }
         mClientSocketConnection.openSocket(mIpAddress, mPort);
     }
 
+    //Called from the socket threads when the connection is lost or a connect failed.
+    private void scheduleReconnect() {
+        ReconnectPolicy reconnectPolicy = mReconnectPolicy;
+        if (mIsClosedByUser) {
+            //Writes retained by a connection that was lost while closing would otherwise wait for a connect that never comes.
+            mClientSocketConnection.failUnsentWrites();
+            return;
+        }
+        if (reconnectPolicy == null || mIpAddress == null) {
+            return;
+        }
+        int attempt = mReconnectAttempts.getAndIncrement();
+        if (!reconnectPolicy.shouldRetry(attempt)) {
+            Log.i(TAG, "giving up reconnecting after " + attempt + " attempts");
+            mClientSocketConnection.failUnsentWrites();
+            if (mClientSocketServiceListener != null) {
+                mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.MAX_RETRY_EXCEED);
+            }
+            return;
+        }
+        (mTransport == Transport.UDP ? mDatagramConnection.getMetrics() : mClientSocketConnection.getMetrics())
+                .recordReconnectAttempt();
+        long delayMillis = reconnectPolicy.getDelayMillis(attempt);
+        Log.i(TAG, "reconnecting in " + delayMillis + " ms, attempt " + (attempt + 1));
+        mReconnectHandler.removeCallbacks(mReconnectTask);
+        mReconnectHandler.postDelayed(mReconnectTask, delayMillis);
+    }
+
+    private void reconnect() {
+        if (mIsClosedByUser || mReconnectPolicy == null) {
+            return;
+        }
+        if (!mWifiConnection.isWifiConnectedTo(mSSID)) {
+            //onWifiConnected opens the socket once the Wi-Fi is back, an attempt now would only fail.
+            Log.i(TAG, "not reconnecting while Wi-Fi is not connected to " + mSSID);
+            return;
+        }
+        startSocketConnection();
+    }
+
     private void startWifiConnection() {
         if (mWifiConnection.isWifiConnectedTo(mSSID)) {
             startSocketConnection();
@@ -322,18 +393,242 @@ public class ClientSocketService extends Service {
         }
     }
 
+    //Queues the data and returns at once, safe to call from the main thread.
     public void write(String data) {
-        try {
-            mClientSocketConnection.writeData(ByteBuffer.wrap(data.getBytes(Charset.forName("UTF-8"))));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (ExecutionException e) {
-            e.printStackTrace();
+        writeAsync(data);
+    }
+
+    //The writeAsync methods never block. The returned future, or the listener, reports the outcome of the write.
+    //Listeners without an executor are called on the main thread. With enableRequests the data goes out as a DATA frame.
+    public WriteFuture writeAsync(String data) {
+        if (mTransport == Transport.UDP) {
+            return mDatagramConnection.send(ByteBuffer.wrap(data.getBytes(UTF_8)));
+        }
+        RequestCorrelator requestCorrelator = mRequestCorrelator;
+        if (requestCorrelator != null) {
+            return requestCorrelator.send(data, UTF_8);
         }
+        return mClientSocketConnection.writeDataAsync(data, UTF_8);
+    }
+
+    public WriteFuture writeAsync(String data, WriteListener writeListener) {
+        return writeAsync(data, writeListener, mServiceEventDispatcher.getMainThreadExecutor());
+    }
+
+    public WriteFuture writeAsync(String data, WriteListener writeListener, Executor executor) {
+        WriteFuture writeFuture = writeAsync(data);
+        writeFuture.addListener(writeListener, executor);
+        return writeFuture;
+    }
+
+    //data is copied, the array can be reused as soon as this returns.
+    public WriteFuture writeAsync(byte[] data) {
+        if (mTransport == Transport.UDP) {
+            //Sent before send returns, so the array needs no copy.
+            return mDatagramConnection.send(ByteBuffer.wrap(data));
+        }
+        PooledBuffer pooledBuffer = mClientSocketConnection.getBufferPool().acquire(data.length);
+        pooledBuffer.buffer().put(data).flip();
+        RequestCorrelator requestCorrelator = mRequestCorrelator;
+        if (requestCorrelator != null) {
+            return requestCorrelator.send(pooledBuffer);
+        }
+        return mClientSocketConnection.writeDataAsync(pooledBuffer);
+    }
+
+    public WriteFuture writeAsync(byte[] data, WriteListener writeListener) {
+        return writeAsync(data, writeListener, mServiceEventDispatcher.getMainThreadExecutor());
+    }
+
+    public WriteFuture writeAsync(byte[] data, WriteListener writeListener, Executor executor) {
+        WriteFuture writeFuture = writeAsync(data);
+        writeFuture.addListener(writeListener, executor);
+        return writeFuture;
+    }
+
+    //dataBuffer is not copied and must not be modified until the write is done.
+    public WriteFuture writeAsync(ByteBuffer dataBuffer) {
+        if (mTransport == Transport.UDP) {
+            return mDatagramConnection.send(dataBuffer);
+        }
+        RequestCorrelator requestCorrelator = mRequestCorrelator;
+        if (requestCorrelator != null) {
+            return requestCorrelator.send(dataBuffer);
+        }
+        return mClientSocketConnection.writeDataAsync(dataBuffer);
+    }
+
+    public WriteFuture writeAsync(ByteBuffer dataBuffer, WriteListener writeListener) {
+        return writeAsync(dataBuffer, writeListener, mServiceEventDispatcher.getMainThreadExecutor());
+    }
+
+    public WriteFuture writeAsync(ByteBuffer dataBuffer, WriteListener writeListener, Executor executor) {
+        WriteFuture writeFuture = writeAsync(dataBuffer);
+        writeFuture.addListener(writeListener, executor);
+        return writeFuture;
+    }
+
+    //BINARY skips building a String for every read, onDataReceived then gets a null String.
+    //Use ClientSocketConnection.decodeText to decode a buffer on demand.
+    public void setReceiveMode(ClientSocketConnection.ReceiveMode receiveMode) {
+        mClientSocketConnection.setReceiveMode(receiveMode);
+        mDatagramConnection.setReceiveMode(receiveMode);
+    }
+
+    public void setReceiveMode(ClientSocketConnection.ReceiveMode receiveMode, Charset charset) {
+        mClientSocketConnection.setReceiveMode(receiveMode, charset);
+        mDatagramConnection.setReceiveMode(receiveMode, charset);
+    }
+
+    //Must be called before connect. UDP delivers every datagram through onDataReceived and sends every write as one
+    //datagram, requests, delimited text and TLS only apply to TCP. Reconnecting reopens the datagram socket.
+    public void setTransport(Transport transport) {
+        mTransport = transport;
+    }
+
+    public Transport getTransport() {
+        return mTransport;
+    }
+
+    //Prefixes UDP datagrams with a stream id and sequence number, see DatagramConnection.enableSequenceNumbers.
+    //Must be called before connect, the server has to add and strip the same header.
+    public void enableDatagramSequenceNumbers() {
+        mDatagramConnection.enableSequenceNumbers();
+    }
+
+    //Received, lost, reordered and duplicate datagrams of one UDP stream, writes of the service use stream 0.
+    public DatagramStreamStats getDatagramStreamStats(int streamId) {
+        return mDatagramConnection.getStreamStats(streamId);
+    }
+
+    public DatagramConnection getDatagramConnection() {
+        return mDatagramConnection;
+    }
+
+    //See ClientSocketConnection.setWriteBufferWaterMarks and setMaxQueuedBytes.
+    public void setWriteBufferWaterMarks(int lowWaterMark, int highWaterMark) {
+        mClientSocketConnection.setWriteBufferWaterMarks(lowWaterMark, highWaterMark);
+    }
+
+    public void setMaxQueuedBytes(long maxQueuedBytes, ClientSocketConnection.OverflowPolicy overflowPolicy) {
+        mClientSocketConnection.setMaxQueuedBytes(maxQueuedBytes, overflowPolicy);
+    }
+
+    public boolean isWritable() {
+        return mClientSocketConnection.isWritable();
+    }
+
+    //Switches the socket to length-prefixed frames and enables request(). Must be called before connect, the server
+    //has to speak the same framing. Frames that are not responses arrive through onDataReceived with a null String.
+    public void enableRequests(LengthFieldFrameCodec.LengthPrefix lengthPrefix) {
+        mClientSocketConnection.enableFraming(lengthPrefix);
+        RequestCorrelator requestCorrelator = new RequestCorrelator(mClientSocketConnection);
+        requestCorrelator.registerSocketFrameListener(dataFrameListener);
+        mRequestCorrelator = requestCorrelator;
+    }
+
+    //Runs the socket over TLS, see ClientSocketConnection.enableTls. Must be called before connect, reconnects reuse
+    //sslContext and resume the session.
+    public void enableTls(SSLContext sslContext) {
+        mClientSocketConnection.enableTls(sslContext);
+    }
+
+    //Splits the received text at delimiter, e.g. "\n", and delivers every record through onDataReceived with a null
+    //ByteBuffer. Must be called before connect, turns requests off.
+    public void enableDelimitedText(String delimiter, Charset charset) {
+        mRequestCorrelator = null;
+        mClientSocketConnection.enableDelimitedText(delimiter, charset);
+        mClientSocketConnection.registerTextRecordListener(textRecordListener);
+    }
+
+    //Sends data as a request and completes the future with the server's response, or fails it after timeoutMillis.
+    //data is copied, the array can be reused as soon as this returns.
+    public ResponseFuture request(byte[] data, long timeoutMillis) {
+        RequestCorrelator requestCorrelator = mRequestCorrelator;
+        if (requestCorrelator == null) {
+            throw new IllegalStateException("Requests are not enabled, call enableRequests first");
+        }
+        return requestCorrelator.request(ByteBuffer.wrap(data.clone()), timeoutMillis);
+    }
+
+    //responseListener is called on the main thread.
+    public ResponseFuture request(byte[] data, long timeoutMillis, ResponseListener responseListener) {
+        ResponseFuture responseFuture = request(data, timeoutMillis);
+        responseFuture.addListener(responseListener, mServiceEventDispatcher.getMainThreadExecutor());
+        return responseFuture;
+    }
+
+    //Compresses written data and requests of at least thresholdBytes, see ClientSocketConnection.enableCompression.
+    //Needs enableRequests, the peer has to inflate frames flagged with FrameType.COMPRESSED.
+    public void enableCompression(int thresholdBytes) {
+        if (mRequestCorrelator == null) {
+            throw new IllegalStateException("Requests are not enabled, call enableRequests first");
+        }
+        mClientSocketConnection.enableCompression(thresholdBytes);
+    }
+
+    public void disableCompression() {
+        mClientSocketConnection.disableCompression();
+    }
+
+    public CompressionStats getCompressionStats() {
+        return mClientSocketConnection.getCompressionStats();
+    }
+
+    //See ClientSocketConnection.enableHeartbeat, needs enableRequests and a server that answers PING.
+    public void enableHeartbeat(long intervalMillis, int maxMissedHeartbeats) {
+        if (mRequestCorrelator == null) {
+            throw new IllegalStateException("Requests are not enabled, call enableRequests first");
+        }
+        mClientSocketConnection.enableHeartbeat(intervalMillis, maxMissedHeartbeats);
+    }
+
+    public long getSmoothedRttMicros() {
+        return mClientSocketConnection.getSmoothedRttMicros();
+    }
+
+    public long getRttJitterMicros() {
+        return mClientSocketConnection.getRttJitterMicros();
+    }
+
+    //Opens the socket again after CONNECTION_ERROR or TIME_OUT, waiting as the policy says between attempts, and
+    //reports MAX_RETRY_EXCEED once it gives up. Writes queued when the connection dropped are sent after it is back.
+    //No attempt is made while the Wi-Fi is down or after closeConnection. null turns reconnecting off.
+    public void enableReconnect(ReconnectPolicy reconnectPolicy) {
+        mReconnectPolicy = reconnectPolicy;
+        mClientSocketConnection.setRetainUnsentWrites(reconnectPolicy != null);
+        if (reconnectPolicy == null) {
+            mReconnectHandler.removeCallbacks(mReconnectTask);
+            mClientSocketConnection.failUnsentWrites();
+        }
+    }
+
+    //Traffic, write latency, queue depth, connect times and errors of the socket, kept across reconnects.
+    public ConnectionMetrics.Snapshot getConnectionMetrics() {
+        if (mTransport == Transport.UDP) {
+            return mDatagramConnection.getMetricsSnapshot();
+        }
+        return mClientSocketConnection.getMetricsSnapshot();
+    }
+
+    //Association and scan times, disconnects and errors of the Wi-Fi side.
+    public WifiMetrics.Snapshot getWifiMetrics() {
+        return mWifiConnection.getMetricsSnapshot();
     }
 
     public void closeConnection() {
+        mIsClosedByUser = true;
+        mReconnectHandler.removeCallbacks(mReconnectTask);
         try {
+            if (mTransport == Transport.UDP) {
+                mDatagramConnection.close();
+                return;
+            }
+            if (mClientSocketConnection.isConnecting()) {
+                mClientSocketConnection.cancelConnect();
+                mClientSocketConnection.failUnsentWrites();
+                return;
+            }
             mClientSocketConnection.closeSocket();
         } catch (Exception e) {
             e.printStackTrace();
@@ -343,7 +638,9 @@ public class ClientSocketService extends Service {
 
     public void registerClientSocketServiceStatus(ClientSocketServiceListener clientSocketServiceListener) {
         this.mClientSocketServiceListener = clientSocketServiceListener;
+        mServiceEventDispatcher.setListener(clientSocketServiceListener);
         mClientSocketConnection.registerSocketConnectionListener(socketConnectionListener);
+        mDatagramConnection.registerSocketConnectionListener(socketConnectionListener);
         mWifiConnection.registerWifiStatusListener(wifiConnectionListener);
     }
 
@@ -362,9 +659,28 @@ public class ClientSocketService extends Service {
         mWifiConnection.unRegisterWifiScanListener();
     }
 
+    //Delivers ClientSocketServiceListener callbacks on executor instead of the main thread, null restores the main thread.
+    //Callbacks stay in order and never run concurrently, whatever executor is used.
+    public void setCallbackExecutor(Executor executor) {
+        mServiceEventDispatcher.setCallbackExecutor(executor);
+    }
+
+    //Delivered like the ClientSocketServiceListener callbacks, on the main thread or the callback executor.
+    public void registerWritabilityListener(WritabilityListener writabilityListener) {
+        mWritabilityListener = writabilityListener;
+        mServiceEventDispatcher.setWritabilityListener(writabilityListener);
+    }
+
+    public void unRegisterWritabilityListener() {
+        mWritabilityListener = null;
+        mServiceEventDispatcher.setWritabilityListener(null);
+    }
+
     public void unRegisterClientSocketServiceStatus() {
         this.mClientSocketServiceListener = null;
+        mServiceEventDispatcher.setListener(null);
         mClientSocketConnection.unRegisterSocketConnectionListener();
+        mDatagramConnection.unRegisterSocketConnectionListener();
         mWifiConnection.unRegisterWifiStatusListener();
     }
 
@@ -377,16 +693,7 @@ public class ClientSocketService extends Service {
 
             public void onFinish() {
                 if (mClientSocketServiceListener != null) {
-                    new Handler(Looper.getMainLooper()).post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                mClientSocketServiceListener.onError(ClientSocketServiceListener.ERRORS.TIME_OUT);
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    });
+                    mServiceEventDispatcher.dispatchError(ClientSocketServiceListener.ERRORS.TIME_OUT);
                 }
 
             }
@@ -0,0 +1,258 @@
+package com.easyconnectlib.easyconnectlib.wifisocketservice.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.WritabilityListener;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.PooledBuffer;
+import com.easyconnectlib.easyconnectlib.wifisocketservice.callbacks.ClientSocketServiceListener;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Delivers ClientSocketService callbacks to the app listener. Events go through a lock-free queue and are drained in
+//batches by one reusable task, on the main thread through a single Handler or on an executor set by the app.
+//Event objects are recycled, so a burst of reads does not allocate a Runnable and a Handler per chunk.
+class ServiceEventDispatcher {
+
+    //Upper bound for one drain so a burst of data cannot hold the main looper for long.
+    static final int MAX_EVENTS_PER_DRAIN = 32;
+    private static final int MAX_POOLED_EVENTS = 64;
+
+    private static final int CONNECTED = 0;
+    private static final int WIFI_CONNECTING = 1;
+    private static final int SOCKET_CONNECTING = 2;
+    private static final int DATA_RECEIVED = 3;
+    private static final int DISCONNECTED = 4;
+    private static final int ERROR = 5;
+    private static final int WRITABILITY_CHANGED = 6;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mMainThreadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    };
+    private volatile Executor mCallbackExecutor = mMainThreadExecutor;
+    private volatile ClientSocketServiceListener mClientSocketServiceListener;
+    private volatile WritabilityListener mWritabilityListener;
+
+    //Intrusive multi-producer single-consumer queue: producers swap the tail, only the drain task moves the head.
+    private final Event mStub = new Event();
+    private final AtomicReference<Event> mTail = new AtomicReference<>(mStub);
+    private Event mHead = mStub;
+    //Events queued and not yet drained. The producer that moves it off 0 schedules the drain, which keeps
+    //rescheduling itself while it is above 0, so exactly one drain is ever in flight.
+    private final AtomicInteger mPendingEvents = new AtomicInteger();
+
+    private final Event[] mEventPool = new Event[MAX_POOLED_EVENTS];
+    private int mPooledEvents;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            int drained = 0;
+            Event event;
+            while (drained < MAX_EVENTS_PER_DRAIN && (event = poll()) != null) {
+                drained++;
+                try {
+                    deliver(event);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    recycle(event);
+                }
+            }
+            if (mPendingEvents.addAndGet(-drained) > 0) {
+                mCallbackExecutor.execute(this);
+            }
+        }
+    };
+
+    Executor getMainThreadExecutor() {
+        return mMainThreadExecutor;
+    }
+
+    void setListener(ClientSocketServiceListener clientSocketServiceListener) {
+        mClientSocketServiceListener = clientSocketServiceListener;
+    }
+
+    void setWritabilityListener(WritabilityListener writabilityListener) {
+        mWritabilityListener = writabilityListener;
+    }
+
+    //null restores delivery on the main thread.
+    void setCallbackExecutor(Executor executor) {
+        mCallbackExecutor = executor != null ? executor : mMainThreadExecutor;
+    }
+
+    void dispatchConnected(String ssid, String ipAddress, int port) {
+        Event event = obtain(CONNECTED);
+        event.ssid = ssid;
+        event.ipAddress = ipAddress;
+        event.port = port;
+        enqueue(event);
+    }
+
+    void dispatchWifiConnecting(String ssid) {
+        Event event = obtain(WIFI_CONNECTING);
+        event.ssid = ssid;
+        enqueue(event);
+    }
+
+    void dispatchSocketConnecting(String ipAddress, int port) {
+        Event event = obtain(SOCKET_CONNECTING);
+        event.ipAddress = ipAddress;
+        event.port = port;
+        enqueue(event);
+    }
+
+    //Takes over the lease, the buffer is released once the listener returns.
+    void dispatchDataReceived(PooledBuffer dataBuffer, String data) {
+        Event event = obtain(DATA_RECEIVED);
+        event.dataBuffer = dataBuffer;
+        event.data = data;
+        enqueue(event);
+    }
+
+    void dispatchDisconnected() {
+        enqueue(obtain(DISCONNECTED));
+    }
+
+    void dispatchError(ClientSocketServiceListener.ERRORS error) {
+        Event event = obtain(ERROR);
+        event.error = error;
+        enqueue(event);
+    }
+
+    void dispatchWritabilityChanged(boolean isWritable) {
+        Event event = obtain(WRITABILITY_CHANGED);
+        event.isWritable = isWritable;
+        enqueue(event);
+    }
+
+    private void deliver(Event event) {
+        if (event.type == WRITABILITY_CHANGED) {
+            WritabilityListener writabilityListener = mWritabilityListener;
+            if (writabilityListener != null) {
+                writabilityListener.onWritabilityChanged(event.isWritable);
+            }
+            return;
+        }
+        ClientSocketServiceListener clientSocketServiceListener = mClientSocketServiceListener;
+        if (clientSocketServiceListener == null) {
+            return;
+        }
+        switch (event.type) {
+            case CONNECTED:
+                clientSocketServiceListener.onConnected(event.ssid, event.ipAddress, event.port);
+                break;
+            case WIFI_CONNECTING:
+                clientSocketServiceListener.onWifiConnecting(event.ssid);
+                break;
+            case SOCKET_CONNECTING:
+                clientSocketServiceListener.onSocketConnecting(event.ipAddress, event.port);
+                break;
+            case DATA_RECEIVED:
+                clientSocketServiceListener.onDataReceived(
+                        event.dataBuffer == null ? null : event.dataBuffer.readOnlyBuffer(), event.data);
+                break;
+            case DISCONNECTED:
+                clientSocketServiceListener.onDisconnected();
+                break;
+            case ERROR:
+                clientSocketServiceListener.onError(event.error);
+                break;
+        }
+    }
+
+    private void enqueue(Event event) {
+        event.next = null;
+        Event previous = mTail.getAndSet(event);
+        previous.next = event;
+        if (mPendingEvents.getAndIncrement() == 0) {
+            mCallbackExecutor.execute(mDrainTask);
+        }
+    }
+
+    //Only called by the drain task. Returns null when empty or when a producer has swapped the tail but not linked yet,
+    //the drain is then rescheduled since the pending count is still above 0.
+    private Event poll() {
+        Event head = mHead;
+        Event next = head.next;
+        if (head == mStub) {
+            if (next == null) {
+                return null;
+            }
+            mHead = next;
+            head = next;
+            next = next.next;
+        }
+        if (next != null) {
+            mHead = next;
+            return head;
+        }
+        if (head != mTail.get()) {
+            return null;
+        }
+        //head is the last event, put the stub behind it so head can be handed out.
+        enqueueStub();
+        next = head.next;
+        if (next != null) {
+            mHead = next;
+            return head;
+        }
+        return null;
+    }
+
+    private void enqueueStub() {
+        mStub.next = null;
+        Event previous = mTail.getAndSet(mStub);
+        previous.next = mStub;
+    }
+
+    private Event obtain(int type) {
+        Event event = null;
+        synchronized (mEventPool) {
+            if (mPooledEvents > 0) {
+                event = mEventPool[--mPooledEvents];
+                mEventPool[mPooledEvents] = null;
+            }
+        }
+        if (event == null) {
+            event = new Event();
+        }
+        event.type = type;
+        return event;
+    }
+
+    private void recycle(Event event) {
+        if (event.dataBuffer != null) {
+            event.dataBuffer.release();
+        }
+        event.dataBuffer = null;
+        event.data = null;
+        event.ssid = null;
+        event.ipAddress = null;
+        event.error = null;
+        synchronized (mEventPool) {
+            if (mPooledEvents < MAX_POOLED_EVENTS) {
+                mEventPool[mPooledEvents++] = event;
+            }
+        }
+    }
+
+    private static class Event {
+        private volatile Event next;
+        private int type;
+        private String ssid;
+        private String ipAddress;
+        private int port;
+        private PooledBuffer dataBuffer;
+        private String data;
+        private ClientSocketServiceListener.ERRORS error;
+        private boolean isWritable;
+    }
+}
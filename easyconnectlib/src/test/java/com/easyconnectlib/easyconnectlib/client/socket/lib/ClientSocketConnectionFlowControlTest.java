@@ -0,0 +1,210 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.WritabilityListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ClientSocketConnectionFlowControlTest {
+
+    //Larger than what the loopback socket buffers absorb, so the writer stays busy with it until the peer reads.
+    private static final int PLUG_BYTES = 16 * 1024 * 1024;
+    private static final int WRITE_BYTES = 16 * 1024;
+
+    private ServerSocketChannel mServerChannel;
+    private SocketChannel mPeerChannel;
+    private ClientSocketConnection mConnection;
+    private long mReceivedBytes;
+
+    @Before
+    public void setUp() throws IOException {
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.socket().setReceiveBufferSize(4096);
+        mServerChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        mConnection = new ClientSocketConnection(new SocketConnectionListener() {
+            @Override
+            public void onClientConnected(String serverIpAddress, int port) {
+            }
+
+            @Override
+            public void onClientConnecting(String serverIpAddress, int port) {
+            }
+
+            @Override
+            public void onDataReceived(ByteBuffer dataBuffer, String data) {
+            }
+
+            @Override
+            public void onClientSocketClose() {
+            }
+
+            @Override
+            public void onClientSocketError(SOCKET_ERROR socket_error) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mConnection.closeSocket();
+        if (mPeerChannel != null) {
+            mPeerChannel.close();
+        }
+        mServerChannel.close();
+    }
+
+    @Test
+    public void reject_failsWritesOverTheBound() throws Exception {
+        mConnection.setMaxQueuedBytes(PLUG_BYTES + 4 * WRITE_BYTES, ClientSocketConnection.OverflowPolicy.REJECT);
+        connectAndPlug();
+        List<WriteFuture> accepted = writeMany(4);
+        WriteFuture rejected = mConnection.writeDataAsync(ByteBuffer.allocate(WRITE_BYTES));
+        assertTrue(rejected.isDone());
+        assertTrue(rejected.getCause() instanceof WriteQueueFullException);
+        assertEquals(PLUG_BYTES + 4 * WRITE_BYTES, mConnection.getQueuedBytes());
+        drain(PLUG_BYTES + 4 * WRITE_BYTES);
+        assertAllWritten(accepted);
+    }
+
+    @Test
+    public void dropOldest_cancelsTheOldestQueuedWrite() throws Exception {
+        mConnection.setMaxQueuedBytes(PLUG_BYTES + 4 * WRITE_BYTES, ClientSocketConnection.OverflowPolicy.DROP_OLDEST);
+        connectAndPlug();
+        List<WriteFuture> writes = writeMany(5);
+        //The plug is already being written, so the first write behind it is the oldest one that can go.
+        assertTrue(writes.get(0).isCancelled());
+        assertEquals(PLUG_BYTES + 4 * WRITE_BYTES, mConnection.getQueuedBytes());
+        drain(PLUG_BYTES + 4 * WRITE_BYTES);
+        assertAllWritten(writes.subList(1, writes.size()));
+    }
+
+    @Test
+    public void block_waitsUntilTheQueueDrained() throws Exception {
+        mConnection.setMaxQueuedBytes(PLUG_BYTES + 4 * WRITE_BYTES, ClientSocketConnection.OverflowPolicy.BLOCK);
+        mConnection.setWriteBufferWaterMarks(PLUG_BYTES, PLUG_BYTES + 4 * WRITE_BYTES);
+        connectAndPlug();
+        List<WriteFuture> writes = writeMany(4);
+        final AtomicReference<WriteFuture> blocked = new AtomicReference<>();
+        final CountDownLatch admitted = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                blocked.set(mConnection.writeDataAsync(ByteBuffer.allocate(WRITE_BYTES)));
+                admitted.countDown();
+            }
+        }).start();
+        assertFalse(admitted.await(300, TimeUnit.MILLISECONDS));
+        drain(PLUG_BYTES + 5 * WRITE_BYTES);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        writes.add(blocked.get());
+        assertAllWritten(writes);
+    }
+
+    @Test
+    public void writability_flipsAtTheWaterMarks() throws Exception {
+        mConnection.setMaxQueuedBytes(PLUG_BYTES + 4 * WRITE_BYTES, ClientSocketConnection.OverflowPolicy.REJECT);
+        mConnection.setWriteBufferWaterMarks(PLUG_BYTES + WRITE_BYTES, PLUG_BYTES + 2 * WRITE_BYTES);
+        final List<Boolean> changes = new ArrayList<>();
+        final CountDownLatch writableAgain = new CountDownLatch(1);
+        mConnection.registerWritabilityListener(new WritabilityListener() {
+            @Override
+            public void onWritabilityChanged(boolean isWritable) {
+                synchronized (changes) {
+                    changes.add(isWritable);
+                }
+                if (isWritable) {
+                    writableAgain.countDown();
+                }
+            }
+        });
+        connectAndPlug();
+        List<WriteFuture> writes = writeMany(1);
+        synchronized (changes) {
+            assertTrue(changes.isEmpty());
+        }
+        writes.addAll(writeMany(1));
+        synchronized (changes) {
+            assertEquals(1, changes.size());
+            assertFalse(changes.get(0));
+        }
+        drain(PLUG_BYTES + 2 * WRITE_BYTES);
+        assertTrue(writableAgain.await(5, TimeUnit.SECONDS));
+        assertAllWritten(writes);
+        synchronized (changes) {
+            assertEquals(2, changes.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxQueuedBytes_belowHighWaterMark_isRejected() {
+        mConnection.setWriteBufferWaterMarks(1024, 64 * 1024);
+        mConnection.setMaxQueuedBytes(32 * 1024, ClientSocketConnection.OverflowPolicy.BLOCK);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void highWaterMark_aboveMaxQueuedBytes_isRejected() {
+        mConnection.setMaxQueuedBytes(64 * 1024, ClientSocketConnection.OverflowPolicy.BLOCK);
+        mConnection.setWriteBufferWaterMarks(1024, 128 * 1024);
+    }
+
+    //Connects, then queues the plug and waits until the writer has started on it, so the writes queued next stay
+    //behind it and count against the bound.
+    private void connectAndPlug() throws Exception {
+        mConnection.openSocket("127.0.0.1", mServerChannel.socket().getLocalPort());
+        mPeerChannel = mServerChannel.accept();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        WriteFuture plug;
+        while ((plug = mConnection.writeDataAsync(ByteBuffer.allocate(PLUG_BYTES))).getCause() != null) {
+            assertTrue("Not connected in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        ByteBuffer firstByte = ByteBuffer.allocate(1);
+        while (firstByte.hasRemaining()) {
+            mPeerChannel.read(firstByte);
+        }
+        mReceivedBytes = 1;
+        assertFalse(plug.isDone());
+    }
+
+    private List<WriteFuture> writeMany(int count) {
+        List<WriteFuture> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(mConnection.writeDataAsync(ByteBuffer.allocate(WRITE_BYTES)));
+        }
+        return writes;
+    }
+
+    private void drain(long totalBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (mReceivedBytes < totalBytes) {
+            buffer.clear();
+            int read = mPeerChannel.read(buffer);
+            assertTrue("Peer closed after " + mReceivedBytes + " bytes", read >= 0);
+            mReceivedBytes += read;
+        }
+        assertEquals(totalBytes, mReceivedBytes);
+    }
+
+    private static void assertAllWritten(List<WriteFuture> writes) throws InterruptedException, ExecutionException, TimeoutException {
+        for (WriteFuture write : writes) {
+            assertEquals(Integer.valueOf(WRITE_BYTES), write.get(5, TimeUnit.SECONDS));
+        }
+    }
+}
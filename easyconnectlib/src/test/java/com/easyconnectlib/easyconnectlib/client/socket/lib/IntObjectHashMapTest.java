@@ -0,0 +1,154 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntObjectHashMapTest {
+
+    //Capacity of a map created with the default constructor.
+    private static final int CAPACITY = 64;
+
+    @Test
+    public void putGetRemove() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertNull(map.get(2));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(0, map.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_rejectsNullValue() {
+        new IntObjectHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void remove_shiftsBackCollidingChain() {
+        //Keys homed on slot 7 and 8 share one run, the ones homed on 8 must not move in front of their home.
+        List<Integer> keys = keysWithHome(7, 4);
+        keys.addAll(keysWithHome(8, 3));
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        List<Integer> present = new ArrayList<>(keys);
+        //Removes from the front, the middle and the end of the run, the rest must stay reachable after each step.
+        for (int index : new int[]{0, 2, 5, 3}) {
+            Integer key = keys.get(index);
+            assertEquals(key, map.remove(key));
+            present.remove(key);
+            assertNull(map.get(key));
+            assertContainsOnly(map, present.toArray(new Integer[present.size()]));
+        }
+        //Reinserting fills the freed slots again.
+        for (int index : new int[]{3, 0}) {
+            map.put(keys.get(index), keys.get(index));
+            present.add(keys.get(index));
+            assertContainsOnly(map, present.toArray(new Integer[present.size()]));
+        }
+    }
+
+    @Test
+    public void remove_shiftsBackChainThatWrapsAround() {
+        //Homed on the last slot, so the run continues at slot 0.
+        List<Integer> keys = keysWithHome(CAPACITY - 1, 4);
+        List<Integer> others = keysWithHome(0, 2);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        for (int key : others) {
+            map.put(key, key);
+        }
+        map.remove(keys.get(0));
+        assertContainsOnly(map, keys.get(1), keys.get(2), keys.get(3), others.get(0), others.get(1));
+        map.remove(keys.get(2));
+        map.remove(others.get(0));
+        assertContainsOnly(map, keys.get(1), keys.get(3), others.get(1));
+        map.put(keys.get(0), keys.get(0));
+        map.put(others.get(0), others.get(0));
+        assertContainsOnly(map, keys.get(0), keys.get(1), keys.get(3), others.get(0), others.get(1));
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(7);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        Map<Integer, Integer> reference = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            //A small key range keeps the map crowded, so most operations hit a probe run.
+            int key = random.nextInt(i < 100000 ? 48 : 4096) - 16;
+            int operation = random.nextInt(3);
+            if (operation == 0) {
+                assertEquals(reference.put(key, i), map.put(key, i));
+            } else if (operation == 1) {
+                assertEquals(reference.remove(key), map.remove(key));
+            } else {
+                assertEquals(reference.get(key), map.get(key));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void resize_keepsEveryMapping() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>(4);
+        for (int key = 0; key < 10000; key++) {
+            map.put(key, key);
+        }
+        assertEquals(10000, map.size());
+        for (int key = 0; key < 10000; key++) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void removeAll_emptiesTheMap() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        for (int key = 0; key < 20; key++) {
+            map.put(key, key);
+        }
+        List<Integer> values = map.removeAll();
+        assertEquals(20, values.size());
+        assertEquals(20, new HashSet<>(values).size());
+        assertEquals(0, map.size());
+        assertNull(map.get(5));
+        map.put(5, 5);
+        assertEquals(Integer.valueOf(5), map.get(5));
+    }
+
+    private static void assertContainsOnly(IntObjectHashMap<Integer> map, Integer... keys) {
+        assertEquals(keys.length, map.size());
+        for (Integer key : keys) {
+            assertEquals(key, map.get(key));
+        }
+    }
+
+    //Keys whose home slot in a map of CAPACITY slots is home, found with the same spreading as IntObjectHashMap.
+    private static List<Integer> keysWithHome(int home, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; keys.size() < count; key++) {
+            int hash = key * 0x9E3779B9;
+            if (((hash ^ (hash >>> 16)) & (CAPACITY - 1)) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,208 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LengthFieldFrameCodecTest {
+
+    private static final int[] FRAME_LENGTHS = {0, 1, 127, 128, 300, 16383, 16384, 65535};
+
+    @Test
+    public void frames_surviveEveryChunkSize() throws IOException {
+        for (LengthFieldFrameCodec.LengthPrefix lengthPrefix : LengthFieldFrameCodec.LengthPrefix.values()) {
+            List<byte[]> frames = randomFrames(new Random(lengthPrefix.ordinal()));
+            byte[] stream = encode(new LengthFieldFrameCodec(lengthPrefix), frames);
+            for (int chunkSize = 1; chunkSize <= 9; chunkSize++) {
+                assertFrames(frames, decodeInChunks(new LengthFieldFrameCodec(lengthPrefix), stream, chunkSize));
+            }
+            assertFrames(frames, decodeInChunks(new LengthFieldFrameCodec(lengthPrefix), stream, stream.length));
+        }
+    }
+
+    @Test
+    public void frames_surviveRandomSplits() throws IOException {
+        Random random = new Random(42);
+        for (LengthFieldFrameCodec.LengthPrefix lengthPrefix : LengthFieldFrameCodec.LengthPrefix.values()) {
+            List<byte[]> frames = randomFrames(random);
+            byte[] stream = encode(new LengthFieldFrameCodec(lengthPrefix), frames);
+            for (int round = 0; round < 50; round++) {
+                LengthFieldFrameCodec codec = new LengthFieldFrameCodec(lengthPrefix);
+                FrameCollector collector = new FrameCollector();
+                int offset = 0;
+                while (offset < stream.length) {
+                    int length = Math.min(stream.length - offset, 1 + random.nextInt(70000));
+                    codec.decode(ByteBuffer.wrap(stream, offset, length), collector);
+                    offset += length;
+                }
+                assertFrames(frames, collector.frames);
+            }
+        }
+    }
+
+    @Test
+    public void varintHeader_splitAcrossReads() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        byte[] payload = new byte[20000];
+        new Random(1).nextBytes(payload);
+        byte[] stream = encode(codec, singleFrame(payload));
+        assertEquals(3, codec.getHeaderLength(payload.length));
+        FrameCollector collector = new FrameCollector();
+        codec.decode(ByteBuffer.wrap(stream, 0, 1), collector);
+        codec.decode(ByteBuffer.wrap(stream, 1, 1), collector);
+        assertTrue(collector.frames.isEmpty());
+        codec.decode(ByteBuffer.wrap(stream, 2, stream.length - 2), collector);
+        assertFrames(singleFrame(payload), collector.frames);
+    }
+
+    @Test
+    public void fixedHeader_splitAfterEveryByte() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.FIXED_32);
+        byte[] payload = {1, 2, 3};
+        byte[] stream = encode(codec, singleFrame(payload));
+        FrameCollector collector = new FrameCollector();
+        for (int i = 0; i < stream.length; i++) {
+            codec.decode(ByteBuffer.wrap(stream, i, 1), collector);
+            assertEquals(i == stream.length - 1 ? 1 : 0, collector.frames.size());
+        }
+        assertFrames(singleFrame(payload), collector.frames);
+    }
+
+    @Test
+    public void frameInsideOneRead_isDeliveredAsView() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.FIXED_16);
+        final ByteBuffer in = ByteBuffer.wrap(encode(codec, singleFrame(new byte[]{7, 8})));
+        final boolean[] isView = new boolean[1];
+        codec.decode(in, new SocketFrameListener() {
+            @Override
+            public void onFrameReceived(ByteBuffer frameBuffer) {
+                isView[0] = frameBuffer == in && frameBuffer.remaining() == 2;
+            }
+        });
+        assertTrue(isView[0]);
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedFrame_isRejected() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.FIXED_32, 1024);
+        ByteBuffer in = ByteBuffer.allocate(8);
+        in.putInt(1025).putInt(0).flip();
+        codec.decode(in, new FrameCollector());
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeFixed32Length_isRejected() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.FIXED_32);
+        ByteBuffer in = ByteBuffer.allocate(4);
+        in.putInt(0x80000000).flip();
+        codec.decode(in, new FrameCollector());
+    }
+
+    @Test(expected = IOException.class)
+    public void varintLongerThanFiveBytes_isRejected() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        codec.decode(ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}),
+                new FrameCollector());
+    }
+
+    @Test
+    public void oversizedFrame_isRejectedWhenHeaderArrivesSplit() {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.FIXED_16, 100);
+        FrameCollector collector = new FrameCollector();
+        try {
+            codec.decode(ByteBuffer.wrap(new byte[]{0}), collector);
+            codec.decode(ByteBuffer.wrap(new byte[]{101}), collector);
+            fail("Frame of 101 bytes was accepted");
+        } catch (IOException e) {
+            assertTrue(collector.frames.isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeHeader_rejectsOversizedFrame() {
+        new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.FIXED_16).encodeHeader(0x10000, ByteBuffer.allocate(8));
+    }
+
+    @Test
+    public void reset_dropsPartialFrame() throws IOException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        byte[] stream = encode(codec, singleFrame(new byte[]{1, 2, 3, 4}));
+        FrameCollector collector = new FrameCollector();
+        codec.decode(ByteBuffer.wrap(stream, 0, 3), collector);
+        codec.reset();
+        codec.decode(ByteBuffer.wrap(stream), collector);
+        assertFrames(singleFrame(new byte[]{1, 2, 3, 4}), collector.frames);
+    }
+
+    private static List<byte[]> randomFrames(Random random) {
+        List<byte[]> frames = new ArrayList<>();
+        for (int frameLength : FRAME_LENGTHS) {
+            byte[] frame = new byte[frameLength];
+            random.nextBytes(frame);
+            frames.add(frame);
+        }
+        for (int i = 0; i < 200; i++) {
+            byte[] frame = new byte[random.nextInt(2000)];
+            random.nextBytes(frame);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static List<byte[]> singleFrame(byte[] payload) {
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(payload);
+        return frames;
+    }
+
+    private static byte[] encode(LengthFieldFrameCodec codec, List<byte[]> frames) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(LengthFieldFrameCodec.MAX_HEADER_LENGTH);
+        for (byte[] frame : frames) {
+            header.clear();
+            codec.encodeHeader(frame.length, header);
+            assertEquals(codec.getHeaderLength(frame.length), header.position());
+            stream.write(header.array(), 0, header.position());
+            stream.write(frame, 0, frame.length);
+        }
+        return stream.toByteArray();
+    }
+
+    private static List<byte[]> decodeInChunks(LengthFieldFrameCodec codec, byte[] stream, int chunkSize) throws IOException {
+        FrameCollector collector = new FrameCollector();
+        for (int offset = 0; offset < stream.length; offset += chunkSize) {
+            ByteBuffer chunk = ByteBuffer.wrap(stream, offset, Math.min(chunkSize, stream.length - offset));
+            codec.decode(chunk, collector);
+            assertFalse(chunk.hasRemaining());
+        }
+        return collector.frames;
+    }
+
+    private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("frame " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static class FrameCollector implements SocketFrameListener {
+        private final List<byte[]> frames = new ArrayList<>();
+
+        @Override
+        public void onFrameReceived(ByteBuffer frameBuffer) {
+            byte[] frame = new byte[frameBuffer.remaining()];
+            frameBuffer.duplicate().get(frame);
+            frames.add(frame);
+        }
+    }
+}
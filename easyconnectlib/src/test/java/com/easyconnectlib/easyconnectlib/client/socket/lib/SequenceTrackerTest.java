@@ -0,0 +1,141 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SequenceTrackerTest {
+
+    @Test
+    public void inOrder_countsNoLoss() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, 100, 200);
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(100, stats.getReceived());
+        assertEquals(0, stats.getLost());
+        assertEquals(0, stats.getReordered());
+        assertEquals(199, stats.getHighestSequence());
+    }
+
+    @Test
+    public void wrapAround_isContinuous() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, Integer.MAX_VALUE - 4, Integer.MIN_VALUE + 5);
+        assertTrue(tracker.onReceived(Integer.MIN_VALUE + 7));
+        //MIN_VALUE + 5 and + 6 are missing, + 6 turns up late.
+        assertTrue(tracker.onReceived(Integer.MIN_VALUE + 6));
+        assertFalse(tracker.onReceived(Integer.MAX_VALUE));
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(12, stats.getReceived());
+        assertEquals(1, stats.getLost());
+        assertEquals(1, stats.getReordered());
+        assertEquals(1, stats.getDuplicates());
+        assertEquals(Integer.MIN_VALUE + 7, stats.getHighestSequence());
+    }
+
+    @Test
+    public void reorderWithinWindow_movesLossToReordered() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        tracker.onReceived(0);
+        tracker.onReceived(1);
+        tracker.onReceived(4);
+        assertEquals(2, tracker.snapshot().getLost());
+        assertTrue(tracker.onReceived(3));
+        assertTrue(tracker.onReceived(2));
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(5, stats.getReceived());
+        assertEquals(0, stats.getLost());
+        assertEquals(2, stats.getReordered());
+        assertEquals(4, stats.getHighestSequence());
+    }
+
+    @Test
+    public void lateBeyondBitWindow_isCountedAsReordered() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        tracker.onReceived(0);
+        tracker.onReceived(200);
+        assertTrue(tracker.onReceived(100));
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(198, stats.getLost());
+        assertEquals(1, stats.getReordered());
+        assertEquals(200, stats.getHighestSequence());
+    }
+
+    @Test
+    public void duplicates_areDropped() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, 0, 10);
+        assertFalse(tracker.onReceived(9));
+        assertFalse(tracker.onReceived(3));
+        assertTrue(tracker.onReceived(10));
+        assertFalse(tracker.onReceived(10));
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(11, stats.getReceived());
+        assertEquals(3, stats.getDuplicates());
+        assertEquals(0, stats.getReordered());
+    }
+
+    @Test
+    public void strayFarBehind_doesNotMoveTheStreamBack() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, 5000, 5010);
+        assertTrue(tracker.onReceived(10));
+        assertTrue(tracker.onReceived(5010));
+        //The duplicate window survived the stray datagram.
+        assertFalse(tracker.onReceived(5009));
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(12, stats.getReceived());
+        assertEquals(0, stats.getLost());
+        assertEquals(1, stats.getReordered());
+        assertEquals(1, stats.getDuplicates());
+        assertEquals(5010, stats.getHighestSequence());
+    }
+
+    @Test
+    public void farBehindDatagramsOutOfOrder_doNotRestart() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, 5000, 5010);
+        for (int sequence : new int[]{10, 500, 20, 30, 5010, 40}) {
+            tracker.onReceived(sequence);
+        }
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(5010, stats.getHighestSequence());
+        assertEquals(0, stats.getLost());
+        assertEquals(5, stats.getReordered());
+    }
+
+    @Test
+    public void runOfFarBehindDatagrams_restartsTheStream() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, 5000, 5010);
+        receiveRange(tracker, 0, DatagramConnection.RESTART_RUN_LENGTH);
+        assertEquals(DatagramConnection.RESTART_RUN_LENGTH - 1, tracker.snapshot().getHighestSequence());
+        receiveRange(tracker, DatagramConnection.RESTART_RUN_LENGTH, 20);
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(30, stats.getReceived());
+        assertEquals(0, stats.getLost());
+        assertEquals(0, stats.getReordered());
+        assertEquals(19, stats.getHighestSequence());
+    }
+
+    @Test
+    public void restart_startsFromTheNextDatagram() {
+        DatagramConnection.SequenceTracker tracker = new DatagramConnection.SequenceTracker(0);
+        receiveRange(tracker, 5000, 5010);
+        tracker.restart();
+        assertTrue(tracker.onReceived(5005));
+        assertTrue(tracker.onReceived(5006));
+        DatagramStreamStats stats = tracker.snapshot();
+        assertEquals(12, stats.getReceived());
+        assertEquals(0, stats.getLost());
+        assertEquals(0, stats.getDuplicates());
+        assertEquals(5006, stats.getHighestSequence());
+    }
+
+    //Receives from to end, end excluded, in order. The range may wrap.
+    private static void receiveRange(DatagramConnection.SequenceTracker tracker, int from, int end) {
+        for (int sequence = from; sequence != end; sequence++) {
+            assertTrue(tracker.onReceived(sequence));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.TextRecordListener;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamingTextDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    //Grinning face, four bytes in UTF-8 and a surrogate pair in Java.
+    private static final String EMOJI = "\uD83D\uDE00";
+
+    @Test
+    public void fourByteCharacter_splitAtEveryByte() throws IOException {
+        String text = "a" + EMOJI + "b";
+        byte[] bytes = text.getBytes(UTF_8);
+        assertEquals(6, bytes.length);
+        for (int split = 1; split < bytes.length; split++) {
+            StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8);
+            RecordCollector collector = new RecordCollector();
+            decoder.decode(ByteBuffer.wrap(bytes, 0, split), collector);
+            decoder.decode(ByteBuffer.wrap(bytes, split, bytes.length - split), collector);
+            assertEquals("split at " + split, text, collector.joined());
+            assertFalse(collector.joined().contains("\uFFFD"));
+        }
+    }
+
+    @Test
+    public void fourByteCharacter_deliveredOneByteAtATime() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\n");
+        RecordCollector collector = new RecordCollector();
+        byte[] bytes = (EMOJI + EMOJI + "\n" + EMOJI + "\n").getBytes(UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            decoder.decode(ByteBuffer.wrap(bytes, i, 1), collector);
+        }
+        assertEquals(Arrays.asList(EMOJI + EMOJI, EMOJI), collector.records);
+    }
+
+    @Test
+    public void records_surviveEveryChunkSize() throws IOException {
+        List<String> records = Arrays.asList("", "hello", "h\u00E9llo w\u00F6rld", EMOJI, "\u4E2D\u6587" + EMOJI + "x", "", "last");
+        StringBuilder text = new StringBuilder();
+        for (String record : records) {
+            text.append(record).append("\r\n");
+        }
+        byte[] bytes = text.toString().getBytes(UTF_8);
+        for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+            StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\r\n");
+            RecordCollector collector = new RecordCollector();
+            for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+                ByteBuffer chunk = ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+                decoder.decode(chunk, collector);
+                assertFalse(chunk.hasRemaining());
+            }
+            assertEquals("chunk size " + chunkSize, records, collector.records);
+        }
+    }
+
+    @Test
+    public void delimiterSplitAcrossReads() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\r\n");
+        RecordCollector collector = new RecordCollector();
+        decoder.decode(utf8("one\r"), collector);
+        assertTrue(collector.records.isEmpty());
+        decoder.decode(utf8("\ntwo\r"), collector);
+        assertEquals(Arrays.asList("one"), collector.records);
+        //A lone \r is part of the record, only the whole delimiter ends it.
+        decoder.decode(utf8("x\r\n"), collector);
+        assertEquals(Arrays.asList("one", "two\rx"), collector.records);
+    }
+
+    @Test
+    public void longRecord_spanningManyReads() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\n");
+        RecordCollector collector = new RecordCollector();
+        Random random = new Random(3);
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            record.append(random.nextBoolean() ? EMOJI : "\u00E9");
+        }
+        byte[] bytes = (record + "\nnext\n").getBytes(UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            int length = Math.min(bytes.length - offset, 1 + random.nextInt(1500));
+            decoder.decode(ByteBuffer.wrap(bytes, offset, length), collector);
+            offset += length;
+        }
+        assertEquals(Arrays.asList(record.toString(), "next"), collector.records);
+    }
+
+    @Test
+    public void recordAtMaxLength_isAccepted() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\n", 8);
+        RecordCollector collector = new RecordCollector();
+        decoder.decode(utf8("12345678\n"), collector);
+        assertEquals(Arrays.asList("12345678"), collector.records);
+    }
+
+    @Test(expected = IOException.class)
+    public void recordOverMaxLength_isRejected() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\n", 8);
+        RecordCollector collector = new RecordCollector();
+        for (int i = 0; i < 20; i++) {
+            decoder.decode(utf8("x"), collector);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void recordOverMaxLength_isRejectedWithinOneRead() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\n", 1024);
+        decoder.decode(ByteBuffer.wrap(new byte[8192]), new RecordCollector());
+    }
+
+    @Test
+    public void reset_dropsPartialCharacterAndRecord() throws IOException {
+        StreamingTextDecoder decoder = new StreamingTextDecoder(UTF_8, "\n");
+        RecordCollector collector = new RecordCollector();
+        byte[] emoji = EMOJI.getBytes(UTF_8);
+        decoder.decode(utf8("stale"), collector);
+        decoder.decode(ByteBuffer.wrap(emoji, 0, 2), collector);
+        decoder.reset();
+        decoder.decode(utf8("fresh\n"), collector);
+        assertEquals(Arrays.asList("fresh"), collector.records);
+    }
+
+    private static ByteBuffer utf8(String text) {
+        return ByteBuffer.wrap(text.getBytes(UTF_8));
+    }
+
+    private static class RecordCollector implements TextRecordListener {
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void onRecordReceived(CharSequence record) {
+            records.add(record.toString());
+        }
+
+        private String joined() {
+            StringBuilder joined = new StringBuilder();
+            for (String record : records) {
+                joined.append(record);
+            }
+            return joined.toString();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private static final long WHEEL_MILLIS = TimerWheel.TICK_MILLIS * TimerWheel.TICKS_PER_WHEEL;
+
+    @Test
+    public void timeout_firesNotBeforeItsDelay() throws InterruptedException {
+        long[] delays = {0, 1, TimerWheel.TICK_MILLIS, 35, 120, 400};
+        final CountDownLatch fired = new CountDownLatch(delays.length);
+        final List<Long> lateness = Collections.synchronizedList(new ArrayList<Long>());
+        for (final long delayMillis : delays) {
+            final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            TimerWheel.getDefault().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    lateness.add(System.nanoTime() - deadlineNanos);
+                    fired.countDown();
+                }
+            }, delayMillis);
+        }
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        for (long latenessNanos : lateness) {
+            assertTrue("fired " + -latenessNanos + " ns early", latenessNanos >= 0);
+        }
+    }
+
+    @Test
+    public void cancelledTimeout_neverFires() throws InterruptedException {
+        final AtomicInteger fired = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        List<TimerWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            timeouts.add(TimerWheel.getDefault().schedule(task, 50 + i % 100));
+        }
+        //Cancels every other one, some while still queued and some already in their bucket.
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            assertTrue(timeouts.get(i).cancel());
+            assertFalse(timeouts.get(i).cancel());
+        }
+        Thread.sleep(20);
+        for (int i = 1; i < timeouts.size(); i += 4) {
+            assertTrue(timeouts.get(i).cancel());
+        }
+        Thread.sleep(400);
+        assertEquals(250, fired.get());
+    }
+
+    @Test
+    public void cancel_returnsFalseOnceFired() throws InterruptedException {
+        final CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel.Timeout timeout = TimerWheel.getDefault().schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.countDown();
+            }
+        }, 10);
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void failingTask_doesNotStopTheWheel() throws InterruptedException {
+        TimerWheel.getDefault().schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Thrown on purpose by the test");
+            }
+        }, 0);
+        final CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel.getDefault().schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.countDown();
+            }
+        }, 30);
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timeoutBeyondOneRotation_waitsForItsRound() throws InterruptedException {
+        //Lands in a bucket the wheel passes once before the timeout is due.
+        long delayMillis = WHEEL_MILLIS + 200;
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        final long[] firedNanos = new long[1];
+        final CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel.getDefault().schedule(new Runnable() {
+            @Override
+            public void run() {
+                firedNanos[0] = System.nanoTime();
+                fired.countDown();
+            }
+        }, delayMillis);
+        assertFalse(fired.await(delayMillis - 100, TimeUnit.MILLISECONDS));
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(firedNanos[0] - deadlineNanos >= 0);
+    }
+}
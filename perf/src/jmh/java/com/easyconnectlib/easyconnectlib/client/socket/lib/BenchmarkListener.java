@@ -0,0 +1,82 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+//Counts what the reader thread delivers so a benchmark thread can wait for it without locks.
+final class BenchmarkListener implements SocketConnectionListener, SocketFrameListener {
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long RECEIVE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final CountDownLatch mConnectedLatch = new CountDownLatch(1);
+    //Only the reader thread writes these, so a plain increment of the volatile is safe.
+    private volatile long mReceivedBytes;
+    private volatile long mReceivedMessages;
+    private volatile SOCKET_ERROR mError;
+
+    //Registers the listener, connects to server and waits until the connection is up.
+    static BenchmarkListener connect(ClientSocketConnection connection, LoopbackServer server) throws InterruptedException {
+        BenchmarkListener listener = new BenchmarkListener();
+        connection.registerSocketConnectionListener(listener);
+        connection.registerSocketFrameListener(listener);
+        connection.openSocket(LoopbackServer.HOST, server.getPort());
+        if (!listener.mConnectedLatch.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Could not connect to the loopback server: " + listener.mError);
+        }
+        return listener;
+    }
+
+    long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+
+    long getReceivedMessages() {
+        return mReceivedMessages;
+    }
+
+    //Spins until receivedBytes reached the given total. Yielding keeps the reader thread running on small machines.
+    void awaitReceivedBytes(long receivedBytes) {
+        long deadline = System.nanoTime() + RECEIVE_TIMEOUT_NANOS;
+        while (mReceivedBytes < receivedBytes) {
+            if (mError != null || System.nanoTime() > deadline) {
+                throw new IllegalStateException("Stopped receiving at " + mReceivedBytes + " of " + receivedBytes + " bytes: " + mError);
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void onClientConnected(String serverIpAddress, int port) {
+        mConnectedLatch.countDown();
+    }
+
+    @Override
+    public void onClientConnecting(String serverIpAddress, int port) {
+    }
+
+    @Override
+    public void onDataReceived(ByteBuffer dataBuffer, String data) {
+        mReceivedMessages++;
+        mReceivedBytes += dataBuffer.remaining();
+    }
+
+    @Override
+    public void onFrameReceived(ByteBuffer frameBuffer) {
+        mReceivedMessages++;
+        mReceivedBytes += frameBuffer.remaining();
+    }
+
+    @Override
+    public void onClientSocketClose() {
+    }
+
+    @Override
+    public void onClientSocketError(SOCKET_ERROR socket_error) {
+        mError = socket_error;
+    }
+}
@@ -0,0 +1,45 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//Leasing a buffer from the pool the read and write paths use, against allocating a fresh one each time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BufferPoolBenchmark {
+
+    @Param({"256", "16384"})
+    public int capacity;
+
+    private final BufferPool mDirectPool = new BufferPool(true, BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+
+    @Benchmark
+    public int acquireRelease() {
+        PooledBuffer pooledBuffer = mDirectPool.acquire(capacity);
+        int remaining = pooledBuffer.buffer().remaining();
+        pooledBuffer.release();
+        return remaining;
+    }
+
+    //Several writer threads sharing one pool, as connections of a SocketConnectionManager do.
+    @Benchmark
+    @Threads(4)
+    public int acquireReleaseContended() {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    public ByteBuffer allocateDirect() {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+}
@@ -0,0 +1,86 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//LengthFieldFrameCodec on its own, without a socket. decodeWhole sees every frame inside one read, decodeSplit
+//feeds the same bytes in READ_SIZE chunks so frames straddle reads and go through the cumulation buffer.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrameCodecBenchmark {
+
+    private static final int FRAMES = 64;
+    private static final int READ_SIZE = 1000;
+
+    @Param({"VARINT", "FIXED_32"})
+    public LengthFieldFrameCodec.LengthPrefix lengthPrefix;
+
+    @Param({"16", "256", "4096"})
+    public int frameSize;
+
+    private LengthFieldFrameCodec mCodec;
+    private ByteBuffer mStream;
+    private final ByteBuffer mHeader = ByteBuffer.allocate(LengthFieldFrameCodec.MAX_HEADER_LENGTH);
+    private long mDecodedBytes;
+
+    private final SocketFrameListener mFrameListener = new SocketFrameListener() {
+        @Override
+        public void onFrameReceived(ByteBuffer frameBuffer) {
+            mDecodedBytes += frameBuffer.remaining();
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mCodec = new LengthFieldFrameCodec(lengthPrefix);
+        mStream = ByteBuffer.allocateDirect(FRAMES * (mCodec.getHeaderLength(frameSize) + frameSize));
+        for (int i = 0; i < FRAMES; i++) {
+            mCodec.encodeHeader(frameSize, mStream);
+            for (int j = 0; j < frameSize; j++) {
+                mStream.put((byte) j);
+            }
+        }
+        mStream.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long decodeWhole() throws IOException {
+        mCodec.decode(mStream.duplicate(), mFrameListener);
+        return mDecodedBytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long decodeSplit() throws IOException {
+        ByteBuffer stream = mStream.duplicate();
+        int limit = stream.limit();
+        while (stream.position() < limit) {
+            stream.limit(Math.min(limit, stream.position() + READ_SIZE));
+            mCodec.decode(stream, mFrameListener);
+        }
+        return mDecodedBytes;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeHeader() {
+        mHeader.clear();
+        mCodec.encodeHeader(frameSize, mHeader);
+        return mHeader;
+    }
+}
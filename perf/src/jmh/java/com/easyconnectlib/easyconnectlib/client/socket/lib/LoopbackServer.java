@@ -0,0 +1,103 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+//Single connection server on the loopback interface. It serves on its own thread with blocking IO, so the only
+//selectors in a measurement are the ones of the connection under test.
+final class LoopbackServer implements Closeable {
+
+    static final String HOST = "127.0.0.1";
+
+    enum Mode {
+        //Reads and drops everything.
+        SINK,
+        //Writes back every byte it reads.
+        ECHO,
+        //Writes the whole burst once for every byte it reads.
+        BURST
+    }
+
+    private final ServerSocketChannel mServerChannel;
+    private final Mode mMode;
+    private final ByteBuffer mBurst;
+    private final Thread mServerThread;
+    private volatile SocketChannel mChannel;
+    private volatile boolean isRunning = true;
+
+    LoopbackServer(Mode mode) throws IOException {
+        this(mode, null);
+    }
+
+    LoopbackServer(Mode mode, ByteBuffer burst) throws IOException {
+        mMode = mode;
+        mBurst = burst;
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.socket().bind(new InetSocketAddress(InetAddress.getByName(HOST), 0));
+        mServerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "loopback-server");
+        mServerThread.setDaemon(true);
+        mServerThread.start();
+    }
+
+    int getPort() {
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    private void serve() {
+        ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            SocketChannel channel = mServerChannel.accept();
+            mChannel = channel;
+            channel.socket().setTcpNoDelay(true);
+            while (isRunning) {
+                in.clear();
+                int read = channel.read(in);
+                if (read < 0) {
+                    return;
+                }
+                if (mMode == Mode.ECHO) {
+                    in.flip();
+                    while (in.hasRemaining()) {
+                        channel.write(in);
+                    }
+                } else if (mMode == Mode.BURST) {
+                    for (int i = 0; i < read; i++) {
+                        ByteBuffer burst = mBurst.duplicate();
+                        while (burst.hasRemaining()) {
+                            channel.write(burst);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (isRunning) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isRunning = false;
+        SocketChannel channel = mChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        mServerChannel.close();
+        try {
+            mServerThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//Read path of ClientSocketConnection: the selector loop in ReadData, decoding and the listener callbacks. Every
+//invocation asks the server for a burst of MESSAGES_PER_BURST messages and waits until the listener has seen them.
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+    private static final int MESSAGES_PER_BURST = 256;
+
+    @Param({"64", "1024"})
+    public int messageSize;
+
+    //TEXT and BINARY deliver raw chunks through onDataReceived, FRAMED decodes length prefixed frames.
+    @Param({"TEXT", "BINARY", "FRAMED"})
+    public String receiveMode;
+
+    private LoopbackServer mServer;
+    private ClientSocketConnection mConnection;
+    private BenchmarkListener mListener;
+    private final ByteBuffer mTrigger = ByteBuffer.allocateDirect(1);
+    private long mBurstPayloadBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        boolean isFramed = "FRAMED".equals(receiveMode);
+        LengthFieldFrameCodec frameCodec = new LengthFieldFrameCodec(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        int headerLength = isFramed ? frameCodec.getHeaderLength(messageSize) : 0;
+        ByteBuffer burst = ByteBuffer.allocateDirect(MESSAGES_PER_BURST * (headerLength + messageSize));
+        for (int i = 0; i < MESSAGES_PER_BURST; i++) {
+            if (isFramed) {
+                frameCodec.encodeHeader(messageSize, burst);
+            }
+            for (int j = 0; j < messageSize; j++) {
+                burst.put((byte) ('a' + j % 26));
+            }
+        }
+        burst.flip();
+        mBurstPayloadBytes = (long) MESSAGES_PER_BURST * messageSize;
+        mServer = new LoopbackServer(LoopbackServer.Mode.BURST, burst);
+        mConnection = new ClientSocketConnection();
+        if (isFramed) {
+            mConnection.enableFraming(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        } else {
+            mConnection.setReceiveMode(ClientSocketConnection.ReceiveMode.valueOf(receiveMode));
+        }
+        mListener = BenchmarkListener.connect(mConnection, mServer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mConnection.closeSocket();
+        mServer.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(MESSAGES_PER_BURST)
+    public long receiveBurst() {
+        long receivedBytes = mListener.getReceivedBytes() + mBurstPayloadBytes;
+        mConnection.writeDataAsync(mTrigger.duplicate());
+        mListener.awaitReceivedBytes(receivedBytes);
+        return mListener.getReceivedMessages();
+    }
+}
@@ -0,0 +1,70 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//One message to an echo server and back: writer thread, loopback, reader thread and listener dispatch in series.
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    @Param({"false", "true"})
+    public boolean framed;
+
+    private LoopbackServer mServer;
+    private ClientSocketConnection mConnection;
+    private BenchmarkListener mListener;
+    private ByteBuffer mPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        mServer = new LoopbackServer(LoopbackServer.Mode.ECHO);
+        mConnection = new ClientSocketConnection();
+        if (framed) {
+            mConnection.enableFraming(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        } else {
+            mConnection.setReceiveMode(ClientSocketConnection.ReceiveMode.BINARY);
+        }
+        mListener = BenchmarkListener.connect(mConnection, mServer);
+        mPayload = ByteBuffer.allocateDirect(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            mPayload.put((byte) i);
+        }
+        mPayload.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mConnection.closeSocket();
+        mServer.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long roundTrip() {
+        long receivedBytes = mListener.getReceivedBytes() + payloadSize;
+        ByteBuffer payload = mPayload.duplicate();
+        if (framed) {
+            mConnection.writeFrameAsync(payload);
+        } else {
+            mConnection.writeDataAsync(payload);
+        }
+        mListener.awaitReceivedBytes(receivedBytes);
+        return receivedBytes;
+    }
+}
@@ -0,0 +1,104 @@
+package com.easyconnectlib.easyconnectlib.client.socket.lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//Write path of ClientSocketConnection against a server that drops everything: queueing, batching on the writer
+//thread and completing the futures.
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+    //Writes queued before waiting for the last one, enough for the writer to batch them.
+    private static final int PIPELINE_DEPTH = 64;
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    @Param({"false", "true"})
+    public boolean framed;
+
+    private LoopbackServer mServer;
+    private ClientSocketConnection mConnection;
+    private ByteBuffer mPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        mServer = new LoopbackServer(LoopbackServer.Mode.SINK);
+        mConnection = new ClientSocketConnection();
+        if (framed) {
+            mConnection.enableFraming(LengthFieldFrameCodec.LengthPrefix.VARINT);
+        }
+        BenchmarkListener.connect(mConnection, mServer);
+        mPayload = ByteBuffer.allocateDirect(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            mPayload.put((byte) i);
+        }
+        mPayload.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mConnection.closeSocket();
+        mServer.close();
+    }
+
+    //Time from queueing one write to its completion with nothing else in flight.
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int writeAndAwait() throws InterruptedException, ExecutionException {
+        return write().get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int pipelinedWrites() throws InterruptedException, ExecutionException {
+        WriteFuture writeFuture = null;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            writeFuture = write();
+        }
+        return writeFuture.get();
+    }
+
+    //Same as pipelinedWrites with every payload copied into a pooled buffer first, as writeDataAsync(String) does.
+    //Framed payloads go through writeTypedFrameAsync like the requests layer of the service.
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int pipelinedPooledWrites() throws InterruptedException, ExecutionException {
+        WriteFuture writeFuture = null;
+        BufferPool bufferPool = mConnection.getBufferPool();
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            PooledBuffer pooledBuffer = bufferPool.acquire(payloadSize);
+            pooledBuffer.buffer().put(mPayload.duplicate()).flip();
+            if (framed) {
+                writeFuture = mConnection.writeTypedFrameAsync(FrameType.DATA, 0, pooledBuffer.buffer(), pooledBuffer);
+            } else {
+                writeFuture = mConnection.writeDataAsync(pooledBuffer);
+            }
+        }
+        return writeFuture.get();
+    }
+
+    private WriteFuture write() {
+        ByteBuffer payload = mPayload.duplicate();
+        return framed ? mConnection.writeFrameAsync(payload) : mConnection.writeDataAsync(payload);
+    }
+}
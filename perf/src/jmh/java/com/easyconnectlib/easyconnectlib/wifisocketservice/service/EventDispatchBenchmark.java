@@ -0,0 +1,89 @@
+package com.easyconnectlib.easyconnectlib.wifisocketservice.service;
+
+import com.easyconnectlib.easyconnectlib.client.socket.lib.BufferPool;
+import com.easyconnectlib.easyconnectlib.wifisocketservice.callbacks.ClientSocketServiceListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//ServiceEventDispatcher from the reader thread to the app listener: queueing, batched draining on the callback
+//executor and recycling of the events and buffers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventDispatchBenchmark {
+
+    private static final int EVENTS_PER_INVOCATION = 256;
+    private static final int DATA_SIZE = 256;
+
+    //Holds a whole burst, so the buffers come back to the pool instead of being garbage.
+    private final BufferPool mBufferPool = new BufferPool(false, EVENTS_PER_INVOCATION);
+    private ServiceEventDispatcher mDispatcher;
+    private ExecutorService mCallbackExecutor;
+    private volatile long mDelivered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDispatcher = new ServiceEventDispatcher();
+        mCallbackExecutor = Executors.newSingleThreadExecutor();
+        mDispatcher.setCallbackExecutor(mCallbackExecutor);
+        mDispatcher.setListener(new ClientSocketServiceListener() {
+            @Override
+            public void onConnected(String ssid, String clientIpAddress, int port) {
+            }
+
+            @Override
+            public void onWifiConnecting(String ssid) {
+            }
+
+            @Override
+            public void onSocketConnecting(String clientIpAddress, int port) {
+            }
+
+            @Override
+            public void onDataReceived(ByteBuffer dataBuffer, String data) {
+                //Only the executor thread writes the count.
+                mDelivered++;
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+
+            @Override
+            public void onError(ERRORS socket_error) {
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCallbackExecutor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public long dispatchDataReceived() {
+        long delivered = mDelivered + EVENTS_PER_INVOCATION;
+        for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+            mDispatcher.dispatchDataReceived(mBufferPool.acquire(DATA_SIZE), null);
+        }
+        while (mDelivered < delivered) {
+            Thread.yield();
+        }
+        return delivered;
+    }
+}
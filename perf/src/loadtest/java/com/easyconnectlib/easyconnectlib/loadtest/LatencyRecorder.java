@@ -0,0 +1,127 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Microsecond latency histogram fine enough for p99.9. Values below 64 get a bucket each, every power of two above is
+//split into 32 linear buckets, so a reported percentile is at most about 3% above the real one. The library's
+//LatencyHistogram only keeps powers of two, which is enough for field metrics but not to compare runs.
+//Recording threads are spread over a few stripes like StripedCounter, hundreds of reader threads then rarely
+//touch the same cache line.
+final class LatencyRecorder {
+
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 6;
+    //2^41 us is more than three weeks, longer values land in the last bucket.
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+    private static final int STRIPES = 8;
+    //Counts followed by the sum of the recorded values.
+    private static final int STRIPE_LENGTH = BUCKET_COUNT + 1;
+
+    private final AtomicLongArray mStripes = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+    void record(long micros) {
+        long value = Math.max(micros, 0);
+        int offset = stripeOffset();
+        mStripes.getAndIncrement(offset + bucketIndex(value));
+        mStripes.getAndAdd(offset + BUCKET_COUNT, value);
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[STRIPE_LENGTH];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int offset = stripe * STRIPE_LENGTH;
+            for (int i = 0; i < STRIPE_LENGTH; i++) {
+                counts[i] += mStripes.get(offset + i);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    //Largest value that falls into the bucket.
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + MIN_EXPONENT;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static int stripeOffset() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & (STRIPES - 1)) * STRIPE_LENGTH;
+    }
+
+    static final class Snapshot {
+
+        private final long[] mCounts;
+        private final long mCount;
+
+        private Snapshot(long[] counts) {
+            mCounts = counts;
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += counts[i];
+            }
+            mCount = count;
+        }
+
+        //What was recorded between earlier and this snapshot.
+        Snapshot minus(Snapshot earlier) {
+            long[] counts = new long[STRIPE_LENGTH];
+            for (int i = 0; i < STRIPE_LENGTH; i++) {
+                counts[i] = mCounts[i] - earlier.mCounts[i];
+            }
+            return new Snapshot(counts);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        long getMeanMicros() {
+            return mCount == 0 ? 0 : mCounts[BUCKET_COUNT] / mCount;
+        }
+
+        //Upper bound of the bucket holding the given percentile, 0 when nothing was recorded.
+        long getPercentileMicros(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(BUCKET_COUNT - 1);
+        }
+
+        long getMaxMicros() {
+            for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+                if (mCounts[i] > 0) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
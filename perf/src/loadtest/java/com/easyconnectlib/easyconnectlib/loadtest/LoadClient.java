@@ -0,0 +1,203 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketFrameListener;
+import com.easyconnectlib.easyconnectlib.client.callbacks.WriteListener;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.ClientSocketConnection;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.LengthFieldFrameCodec;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.ManagedConnection;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.SocketConnectionManager;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.WriteFuture;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//One connection of the load test. Every message is a frame that starts with the System.nanoTime() it was scheduled
+//for. Against the echo server a message completes when it comes back, against the sink when its write completes.
+abstract class LoadClient implements SocketConnectionListener, SocketFrameListener {
+
+    static final int TIMESTAMP_LENGTH = 8;
+
+    private final LoadStats mStats;
+    private final boolean isEcho;
+    private final int mMessageSize;
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final CountDownLatch mConnectedLatch = new CountDownLatch(1);
+    private volatile boolean isConnected;
+    private volatile long mConnectStartNanos;
+
+    private LoadClient(LoadStats stats, boolean echo, int messageSize) {
+        mStats = stats;
+        isEcho = echo;
+        mMessageSize = Math.max(messageSize, TIMESTAMP_LENGTH);
+    }
+
+    //Two threads of its own per connection, the way ClientSocketService uses the library.
+    static LoadClient threaded(LoadStats stats, boolean echo, int messageSize) {
+        return new Threaded(stats, echo, messageSize);
+    }
+
+    //Connections share the selector threads of the manager.
+    static LoadClient managed(SocketConnectionManager socketConnectionManager, String id, LoadStats stats, boolean echo, int messageSize) {
+        return new Managed(socketConnectionManager, id, stats, echo, messageSize);
+    }
+
+    //Connect time is measured here rather than taken from the listener, which only reports whole milliseconds.
+    void connect(String host, int port) {
+        mConnectStartNanos = System.nanoTime();
+        open(host, port);
+    }
+
+    abstract void open(String host, int port);
+
+    abstract void close();
+
+    abstract WriteFuture writeFrame(ByteBuffer payload);
+
+    boolean awaitConnected(long timeout, TimeUnit unit) throws InterruptedException {
+        return mConnectedLatch.await(timeout, unit);
+    }
+
+    boolean isConnected() {
+        return isConnected;
+    }
+
+    int getInFlight() {
+        return mInFlight.get();
+    }
+
+    //Returns false without sending when window messages are already in flight.
+    boolean send(final long scheduledNanos, int window) {
+        if (mInFlight.get() >= window) {
+            mStats.messagesSkipped.increment();
+            return false;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(mMessageSize);
+        payload.putLong(0, scheduledNanos);
+        mInFlight.incrementAndGet();
+        mStats.messagesSent.increment();
+        writeFrame(payload).addListener(new WriteListener() {
+            @Override
+            public void onWriteComplete(int writtenBytes) {
+                if (!isEcho) {
+                    complete(scheduledNanos, mMessageSize);
+                }
+            }
+
+            @Override
+            public void onWriteCancelled() {
+                fail();
+            }
+
+            @Override
+            public void onWriteError(WRITE_ERROR write_error, int writtenBytes) {
+                fail();
+            }
+        });
+        return true;
+    }
+
+    private void complete(long scheduledNanos, int messageBytes) {
+        mStats.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledNanos));
+        mStats.messagesCompleted.increment();
+        mStats.bytesCompleted.add(messageBytes);
+        mInFlight.decrementAndGet();
+    }
+
+    private void fail() {
+        mStats.errors.increment();
+        mInFlight.decrementAndGet();
+    }
+
+    @Override
+    public void onFrameReceived(ByteBuffer frameBuffer) {
+        complete(frameBuffer.getLong(frameBuffer.position()), frameBuffer.remaining());
+    }
+
+    @Override
+    public void onClientConnected(String serverIpAddress, int port) {
+        mStats.connectTime.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mConnectStartNanos));
+        isConnected = true;
+        mConnectedLatch.countDown();
+    }
+
+    @Override
+    public void onClientConnecting(String serverIpAddress, int port) {
+    }
+
+    @Override
+    public void onDataReceived(ByteBuffer dataBuffer, String data) {
+    }
+
+    @Override
+    public void onClientSocketClose() {
+        isConnected = false;
+    }
+
+    @Override
+    public void onClientSocketError(SOCKET_ERROR socket_error) {
+        isConnected = false;
+        mStats.errors.increment();
+    }
+
+    private static final class Threaded extends LoadClient {
+
+        private final ClientSocketConnection mConnection;
+
+        private Threaded(LoadStats stats, boolean echo, int messageSize) {
+            super(stats, echo, messageSize);
+            mConnection = new ClientSocketConnection(this);
+            mConnection.setReceiveMode(ClientSocketConnection.ReceiveMode.BINARY);
+            mConnection.enableFraming(LengthFieldFrameCodec.LengthPrefix.VARINT);
+            mConnection.registerSocketFrameListener(this);
+        }
+
+        @Override
+        void open(String host, int port) {
+            mConnection.openSocket(host, port);
+        }
+
+        @Override
+        void close() {
+            mConnection.closeSocket();
+        }
+
+        @Override
+        WriteFuture writeFrame(ByteBuffer payload) {
+            return mConnection.writeFrameAsync(payload);
+        }
+    }
+
+    private static final class Managed extends LoadClient {
+
+        private final SocketConnectionManager mSocketConnectionManager;
+        private final String mId;
+        private volatile ManagedConnection mConnection;
+
+        private Managed(SocketConnectionManager socketConnectionManager, String id, LoadStats stats, boolean echo, int messageSize) {
+            super(stats, echo, messageSize);
+            mSocketConnectionManager = socketConnectionManager;
+            mId = id;
+        }
+
+        @Override
+        void open(String host, int port) {
+            ManagedConnection connection = mSocketConnectionManager.connect(mId, host, port, this);
+            connection.enableFraming(LengthFieldFrameCodec.LengthPrefix.VARINT);
+            connection.registerSocketFrameListener(this);
+            mConnection = connection;
+        }
+
+        @Override
+        void close() {
+            mSocketConnectionManager.disconnect(mId);
+        }
+
+        @Override
+        WriteFuture writeFrame(ByteBuffer payload) {
+            return mConnection.writeFrame(payload);
+        }
+    }
+}
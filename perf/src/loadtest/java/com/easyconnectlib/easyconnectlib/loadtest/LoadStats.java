@@ -0,0 +1,16 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import com.easyconnectlib.easyconnectlib.metrics.StripedCounter;
+
+//Counters shared by every connection of one load test run.
+final class LoadStats {
+
+    final StripedCounter messagesSent = new StripedCounter();
+    final StripedCounter messagesCompleted = new StripedCounter();
+    final StripedCounter bytesCompleted = new StripedCounter();
+    //Sends skipped because the connection already had its window of messages in flight.
+    final StripedCounter messagesSkipped = new StripedCounter();
+    final StripedCounter errors = new StripedCounter();
+    final LatencyRecorder latency = new LatencyRecorder();
+    final LatencyRecorder connectTime = new LatencyRecorder();
+}
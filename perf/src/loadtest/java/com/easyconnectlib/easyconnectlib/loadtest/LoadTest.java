@@ -0,0 +1,485 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import com.easyconnectlib.easyconnectlib.client.socket.lib.SocketConnectionManager;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//Drives many connections against a LoadTestServer in the same JVM and reports throughput, latency percentiles,
+//threads and memory. Needs no device and no network, only the loopback interface:
+//
+//  ./gradlew :perf:loadTest -PloadTestArgs="--connections 10,100,500 --size 64,1024 --rate 100"
+//
+//--connections, --size and --rate take comma separated lists and every combination is run in turn. Latency is
+//measured from the time a message was scheduled, not from when a sender got to it, so a stalled sender shows up in
+//the percentiles instead of hiding behind a lower send rate.
+public final class LoadTest {
+
+    private static final String USAGE = "Options:\n"
+            + "  --connections 100      connections, comma separated for several runs\n"
+            + "  --size 256             message size in bytes, at least 8, comma separated for several runs\n"
+            + "  --rate 100             messages per second per connection, 0 sends as fast as the window allows\n"
+            + "  --window 64            messages in flight per connection before sends are skipped\n"
+            + "  --duration 30          measured seconds\n"
+            + "  --warmup 5             seconds before measuring\n"
+            + "  --mode echo            echo: latency is the round trip, sink: latency is until the write completed\n"
+            + "  --transport threads    threads: ClientSocketConnection, eventloop: SocketConnectionManager\n"
+            + "  --event-loops N        selector threads of the eventloop transport, default the core count\n"
+            + "  --server-threads N     selector threads of the server, default half the core count\n"
+            + "  --senders N            sending threads, default the core count up to 4\n";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long DRAIN_TIMEOUT_SECONDS = 5;
+
+    private final Options mOptions;
+    private final int mConnections;
+    private final int mMessageSize;
+    private final int mRate;
+    private final LoadStats mStats = new LoadStats();
+    private volatile boolean isSending = true;
+
+    private LoadTest(Options options, int connections, int messageSize, int rate) {
+        mOptions = options;
+        mConnections = connections;
+        mMessageSize = messageSize;
+        mRate = rate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        List<Result> results = new ArrayList<>();
+        for (int connections : options.connections) {
+            for (int messageSize : options.sizes) {
+                for (int rate : options.rates) {
+                    results.add(new LoadTest(options, connections, messageSize, rate).run());
+                }
+            }
+        }
+        if (results.size() > 1) {
+            printSummary(results);
+        }
+        System.exit(0);
+    }
+
+    private Result run() throws Exception {
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%d connections, %d byte messages, %s, %s mode, %s transport",
+                mConnections, mMessageSize, mRate > 0 ? mRate + " msg/s each" : "unthrottled",
+                mOptions.isEcho ? "echo" : "sink", mOptions.isManaged ? "eventloop" : "threads"));
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threadMXBean.getThreadCount();
+        threadMXBean.resetPeakThreadCount();
+        LoadTestServer server = new LoadTestServer(mOptions.isEcho ? LoadTestServer.Mode.ECHO : LoadTestServer.Mode.SINK,
+                mOptions.serverThreads);
+        SocketConnectionManager socketConnectionManager = mOptions.isManaged ? new SocketConnectionManager(mOptions.eventLoops) : null;
+        LoadClient[] clients = new LoadClient[mConnections];
+        Thread[] senders = new Thread[Math.min(mOptions.senders, mConnections)];
+        try {
+            int connected = connect(clients, server.getPort(), socketConnectionManager);
+            LatencyRecorder.Snapshot connectTime = mStats.connectTime.snapshot();
+            System.out.println(String.format(Locale.ROOT, "  connected %d/%d, connect time p50 %s p99 %s max %s",
+                    connected, mConnections, formatMicros(connectTime.getPercentileMicros(50)),
+                    formatMicros(connectTime.getPercentileMicros(99)), formatMicros(connectTime.getMaxMicros())));
+            if (connected == 0) {
+                throw new IllegalStateException("No connection could be established, check ulimit -n");
+            }
+            for (int i = 0; i < senders.length; i++) {
+                senders[i] = new Thread(new Sender(slice(clients, i, senders.length)), "load-sender-" + i);
+                senders[i].start();
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(mOptions.warmupSeconds));
+
+            long gcCountBefore = gcCount();
+            long gcMillisBefore = gcMillis();
+            long maxHeapUsed = 0;
+            long maxDirectUsed = 0;
+            Sample start = Sample.take(mStats);
+            Sample previous = start;
+            long nextSampleNanos = start.nanos;
+            for (int second = 1; second <= mOptions.durationSeconds; second++) {
+                nextSampleNanos += TimeUnit.SECONDS.toNanos(1);
+                sleepUntil(nextSampleNanos);
+                Sample sample = Sample.take(mStats);
+                maxHeapUsed = Math.max(maxHeapUsed, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+                maxDirectUsed = Math.max(maxDirectUsed, directMemoryUsed());
+                printInterval(second, sample, previous, inFlight(clients));
+                previous = sample;
+            }
+            Sample end = previous;
+            int threadsDuringRun = threadMXBean.getThreadCount();
+            int peakThreads = threadMXBean.getPeakThreadCount();
+            long gcCount = gcCount() - gcCountBefore;
+            long gcMillis = gcMillis() - gcMillisBefore;
+
+            isSending = false;
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            awaitDrained(clients);
+
+            Result result = new Result(mConnections, mMessageSize, mRate, end, start, threadsDuringRun,
+                    threadsDuringRun - threadsBefore, peakThreads, maxHeapUsed, maxDirectUsed, gcCount, gcMillis);
+            result.print();
+            return result;
+        } finally {
+            isSending = false;
+            for (LoadClient client : clients) {
+                if (client != null) {
+                    client.close();
+                }
+            }
+            if (socketConnectionManager != null) {
+                socketConnectionManager.shutdown();
+            }
+            server.close();
+            //Lets the reader and writer threads of the closed connections end before the next run counts threads.
+            Thread.sleep(500);
+        }
+    }
+
+    private int connect(LoadClient[] clients, int port, SocketConnectionManager socketConnectionManager) throws InterruptedException {
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = socketConnectionManager != null
+                    ? LoadClient.managed(socketConnectionManager, "load-" + i, mStats, mOptions.isEcho, mMessageSize)
+                    : LoadClient.threaded(mStats, mOptions.isEcho, mMessageSize);
+            clients[i].connect(LoadTestServer.HOST, port);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECT_TIMEOUT_SECONDS);
+        int connected = 0;
+        for (LoadClient client : clients) {
+            if (client.awaitConnected(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    private void awaitDrained(LoadClient[] clients) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (inFlight(clients) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static int inFlight(LoadClient[] clients) {
+        int inFlight = 0;
+        for (LoadClient client : clients) {
+            inFlight += client.getInFlight();
+        }
+        return inFlight;
+    }
+
+    private static LoadClient[] slice(LoadClient[] clients, int index, int count) {
+        LoadClient[] slice = new LoadClient[(clients.length - index + count - 1) / count];
+        for (int i = 0; i < slice.length; i++) {
+            slice[i] = clients[index + i * count];
+        }
+        return slice;
+    }
+
+    private static void sleepUntil(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void printInterval(int second, Sample sample, Sample previous, int inFlight) {
+        double seconds = (sample.nanos - previous.nanos) / 1e9;
+        LatencyRecorder.Snapshot latency = sample.latency.minus(previous.latency);
+        System.out.println(String.format(Locale.ROOT,
+                "  %3ds  sent %9.0f/s  done %9.0f/s  %7.2f MB/s  p50 %7s  p99 %7s  in flight %6d  skipped %6d  errors %d",
+                second, (sample.sent - previous.sent) / seconds, (sample.completed - previous.completed) / seconds,
+                (sample.bytes - previous.bytes) / seconds / (1024 * 1024), formatMicros(latency.getPercentileMicros(50)),
+                formatMicros(latency.getPercentileMicros(99)), inFlight, sample.skipped - previous.skipped,
+                sample.errors - previous.errors));
+    }
+
+    private static void printSummary(List<Result> results) {
+        System.out.println();
+        System.out.println(" conns   size   rate      msg/s     MB/s      p50      p99    p99.9      max  threads  heap MB  errors");
+        for (Result result : results) {
+            System.out.println(String.format(Locale.ROOT, "%6d %6d %6s %10.0f %8.2f %8s %8s %8s %8s %8d %8d %7d",
+                    result.connections, result.messageSize, result.rate > 0 ? String.valueOf(result.rate) : "max",
+                    result.messagesPerSecond, result.megabytesPerSecond, formatMicros(result.latency.getPercentileMicros(50)),
+                    formatMicros(result.latency.getPercentileMicros(99)),
+                    formatMicros(result.latency.getPercentileMicros(99.9)), formatMicros(result.latency.getMaxMicros()),
+                    result.threads, result.maxHeapUsed / (1024 * 1024), result.errors));
+        }
+    }
+
+    static String formatMicros(long micros) {
+        if (micros < 10000) {
+            return micros + "us";
+        }
+        if (micros < 10000000) {
+            return micros / 1000 + "ms";
+        }
+        return micros / 1000000 + "s";
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, garbageCollector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    //The library reads and writes through pooled direct buffers, which do not show in the heap.
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean bufferPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(bufferPool.getName())) {
+                return bufferPool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    //Sends to its share of the connections. With a rate the sends are spread evenly over time, each message
+    //carrying the time it was due, without one it sends whenever a connection has room in its window.
+    private final class Sender implements Runnable {
+
+        private final LoadClient[] mClients;
+
+        private Sender(LoadClient[] clients) {
+            mClients = clients;
+        }
+
+        @Override
+        public void run() {
+            if (mRate > 0) {
+                sendPaced();
+            } else {
+                sendUnthrottled();
+            }
+        }
+
+        private void sendPaced() {
+            double periodNanos = 1e9 / ((double) mRate * mClients.length);
+            long startNanos = System.nanoTime();
+            long sends = 0;
+            while (isSending) {
+                long dueNanos = startNanos + (long) (sends * periodNanos);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                    continue;
+                }
+                LoadClient client = mClients[(int) (sends % mClients.length)];
+                if (client.isConnected()) {
+                    client.send(dueNanos, mOptions.window);
+                }
+                sends++;
+            }
+        }
+
+        private void sendUnthrottled() {
+            while (isSending) {
+                boolean isSent = false;
+                for (LoadClient client : mClients) {
+                    if (client.isConnected() && client.getInFlight() < mOptions.window) {
+                        isSent |= client.send(System.nanoTime(), mOptions.window);
+                    }
+                }
+                if (!isSent) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private static final class Sample {
+
+        private final long nanos;
+        private final long sent;
+        private final long completed;
+        private final long bytes;
+        private final long skipped;
+        private final long errors;
+        private final LatencyRecorder.Snapshot latency;
+
+        private Sample(LoadStats stats) {
+            nanos = System.nanoTime();
+            sent = stats.messagesSent.sum();
+            completed = stats.messagesCompleted.sum();
+            bytes = stats.bytesCompleted.sum();
+            skipped = stats.messagesSkipped.sum();
+            errors = stats.errors.sum();
+            latency = stats.latency.snapshot();
+        }
+
+        private static Sample take(LoadStats stats) {
+            return new Sample(stats);
+        }
+    }
+
+    private static final class Result {
+
+        private final int connections;
+        private final int messageSize;
+        private final int rate;
+        private final double messagesPerSecond;
+        private final double megabytesPerSecond;
+        private final long skipped;
+        private final long errors;
+        private final LatencyRecorder.Snapshot latency;
+        private final int threads;
+        private final int addedThreads;
+        private final int peakThreads;
+        private final long maxHeapUsed;
+        private final long maxDirectUsed;
+        private final long gcCount;
+        private final long gcMillis;
+
+        private Result(int connections, int messageSize, int rate, Sample end, Sample start, int threads, int addedThreads,
+                       int peakThreads, long maxHeapUsed, long maxDirectUsed, long gcCount, long gcMillis) {
+            this.connections = connections;
+            this.messageSize = messageSize;
+            this.rate = rate;
+            double seconds = (end.nanos - start.nanos) / 1e9;
+            messagesPerSecond = (end.completed - start.completed) / seconds;
+            megabytesPerSecond = (end.bytes - start.bytes) / seconds / (1024 * 1024);
+            skipped = end.skipped - start.skipped;
+            errors = end.errors - start.errors;
+            latency = end.latency.minus(start.latency);
+            this.threads = threads;
+            this.addedThreads = addedThreads;
+            this.peakThreads = peakThreads;
+            this.maxHeapUsed = maxHeapUsed;
+            this.maxDirectUsed = maxDirectUsed;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        private void print() {
+            System.out.println(String.format(Locale.ROOT, "  throughput  %.0f msg/s, %.2f MB/s%s", messagesPerSecond,
+                    megabytesPerSecond, rate > 0 ? String.format(Locale.ROOT, " of %d msg/s scheduled", rate * connections) : ""));
+            System.out.println(String.format(Locale.ROOT, "  latency     p50 %s  p99 %s  p99.9 %s  max %s  mean %s",
+                    formatMicros(latency.getPercentileMicros(50)), formatMicros(latency.getPercentileMicros(99)),
+                    formatMicros(latency.getPercentileMicros(99.9)), formatMicros(latency.getMaxMicros()),
+                    formatMicros(latency.getMeanMicros())));
+            System.out.println(String.format(Locale.ROOT, "  messages    %d done, %d skipped with a full window, %d errors",
+                    latency.getCount(), skipped, errors));
+            System.out.println(String.format(Locale.ROOT, "  threads     %d live, %d added by the test, peak %d",
+                    threads, addedThreads, peakThreads));
+            System.out.println(String.format(Locale.ROOT, "  memory      heap up to %d MB, direct up to %d MB, %d GCs taking %d ms",
+                    maxHeapUsed / (1024 * 1024), maxDirectUsed / (1024 * 1024), gcCount, gcMillis));
+        }
+    }
+
+    private static final class Options {
+
+        private int[] connections = {100};
+        private int[] sizes = {256};
+        private int[] rates = {100};
+        private int window = 64;
+        private int durationSeconds = 30;
+        private int warmupSeconds = 5;
+        private boolean isEcho = true;
+        private boolean isManaged;
+        private int eventLoops = Runtime.getRuntime().availableProcessors();
+        private int serverThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private int senders = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+        private static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i += 2) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + name);
+                }
+                String value = args[i + 1];
+                switch (name) {
+                    case "--connections":
+                        options.connections = parseList(name, value, 1);
+                        break;
+                    case "--size":
+                        options.sizes = parseList(name, value, LoadClient.TIMESTAMP_LENGTH);
+                        break;
+                    case "--rate":
+                        options.rates = parseList(name, value, 0);
+                        break;
+                    case "--window":
+                        options.window = parseInt(name, value, 1);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = parseInt(name, value, 1);
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = parseInt(name, value, 0);
+                        break;
+                    case "--mode":
+                        if (!"echo".equals(value) && !"sink".equals(value)) {
+                            throw new IllegalArgumentException("--mode must be echo or sink");
+                        }
+                        options.isEcho = "echo".equals(value);
+                        break;
+                    case "--transport":
+                        if (!"threads".equals(value) && !"eventloop".equals(value)) {
+                            throw new IllegalArgumentException("--transport must be threads or eventloop");
+                        }
+                        options.isManaged = "eventloop".equals(value);
+                        break;
+                    case "--event-loops":
+                        options.eventLoops = parseInt(name, value, 1);
+                        break;
+                    case "--server-threads":
+                        options.serverThreads = parseInt(name, value, 1);
+                        break;
+                    case "--senders":
+                        options.senders = parseInt(name, value, 1);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            return options;
+        }
+
+        private static int[] parseList(String name, String value, int min) {
+            String[] parts = value.split(",");
+            int[] values = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = parseInt(name, parts[i].trim(), min);
+            }
+            return values;
+        }
+
+        private static int parseInt(String name, String value, int min) {
+            int parsed;
+            try {
+                parsed = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " needs a number, got " + value);
+            }
+            if (parsed < min) {
+                throw new IllegalArgumentException(name + " must be at least " + min);
+            }
+            return parsed;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Echo or sink server on the loopback interface. One thread accepts and hands the connections round robin to a few
+//selector threads, so the server keeps up with hundreds of clients without a thread each.
+final class LoadTestServer implements Closeable {
+
+    static final String HOST = "127.0.0.1";
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    enum Mode {
+        //Writes back everything it reads. A client that does not read gets no more reads until it does.
+        ECHO,
+        //Reads and drops everything.
+        SINK
+    }
+
+    private final Mode mMode;
+    private final ServerSocketChannel mServerChannel;
+    private final Worker[] mWorkers;
+    private final Thread mAcceptThread;
+    private final AtomicLong mReceivedBytes = new AtomicLong();
+    private volatile boolean isRunning = true;
+
+    LoadTestServer(Mode mode, int threadCount) throws IOException {
+        mMode = mode;
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.socket().bind(new InetSocketAddress(HOST, 0), 1024);
+        mWorkers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            mWorkers[i] = new Worker();
+            Thread thread = new Thread(mWorkers[i], "load-server-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "load-server-accept");
+        mAcceptThread.setDaemon(true);
+        mAcceptThread.start();
+    }
+
+    int getPort() {
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    long getReceivedBytes() {
+        return mReceivedBytes.get();
+    }
+
+    private void accept() {
+        int next = 0;
+        while (isRunning) {
+            try {
+                SocketChannel channel = mServerChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                mWorkers[next].add(channel);
+                next = (next + 1) % mWorkers.length;
+            } catch (IOException e) {
+                if (isRunning) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isRunning = false;
+        mServerChannel.close();
+        for (Worker worker : mWorkers) {
+            worker.close();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final Selector mSelector;
+        private final Queue<SocketChannel> mNewChannels = new ConcurrentLinkedQueue<>();
+        //Only the sink reads into a shared buffer, echo connections keep their own until it is written back.
+        private final ByteBuffer mSinkBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Worker() throws IOException {
+            mSelector = Selector.open();
+        }
+
+        private void add(SocketChannel channel) {
+            mNewChannels.offer(channel);
+            mSelector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning) {
+                    mSelector.select();
+                    SocketChannel channel;
+                    while ((channel = mNewChannels.poll()) != null) {
+                        channel.register(mSelector, SelectionKey.OP_READ,
+                                mMode == Mode.ECHO ? ByteBuffer.allocateDirect(BUFFER_SIZE) : null);
+                    }
+                    Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        try {
+                            handle(key);
+                        } catch (IOException e) {
+                            closeQuietly(key.channel());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (isRunning) {
+                    e.printStackTrace();
+                }
+            } finally {
+                for (SelectionKey key : mSelector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(mSelector);
+            }
+        }
+
+        private void handle(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            if (!key.isValid()) {
+                return;
+            }
+            if (mMode == Mode.SINK) {
+                int read;
+                do {
+                    mSinkBuffer.clear();
+                    read = channel.read(mSinkBuffer);
+                    if (read > 0) {
+                        mReceivedBytes.addAndGet(read);
+                    }
+                } while (read > 0);
+                if (read < 0) {
+                    channel.close();
+                }
+                return;
+            }
+            ByteBuffer buffer = (ByteBuffer) key.attachment();
+            if (key.isWritable()) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                buffer.clear();
+                key.interestOps(SelectionKey.OP_READ);
+            } else if (key.isReadable()) {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    channel.close();
+                    return;
+                }
+                mReceivedBytes.addAndGet(read);
+                buffer.flip();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    //Stop reading until the client takes the rest, like a real peer under backpressure.
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else {
+                    buffer.clear();
+                }
+            }
+        }
+
+        //The selector thread closes its connections once it sees isRunning cleared.
+        private void close() {
+            mSelector.wakeup();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+
+//TLS echo server on the loopback interface with a thread per connection. Enough for reconnect tests, where
+//connections are short and few are open at a time. The JDK's server session cache lets clients resume.
+final class TlsEchoServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final SSLServerSocket mServerSocket;
+    private volatile boolean isRunning = true;
+
+    TlsEchoServer(SSLContext sslContext) throws IOException {
+        mServerSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                .createServerSocket(0, 1024, InetAddress.getByName(LoadTestServer.HOST));
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "tls-echo-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (isRunning) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                if (isRunning) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    echo(socket);
+                }
+            }, "tls-echo");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    //The handshake runs on the first read. A client that goes away without close_notify only ends this thread.
+    private void echo(Socket socket) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+        } catch (IOException e) {
+            //Clients close the socket without close_notify.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isRunning = false;
+        mServerSocket.close();
+    }
+}
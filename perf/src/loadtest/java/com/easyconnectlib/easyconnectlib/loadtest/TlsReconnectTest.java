@@ -0,0 +1,272 @@
+package com.easyconnectlib.easyconnectlib.loadtest;
+
+import com.easyconnectlib.easyconnectlib.client.callbacks.SocketConnectionListener;
+import com.easyconnectlib.easyconnectlib.client.socket.lib.ClientSocketConnection;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+//Reconnects one ClientSocketConnection over and over, the way ClientSocketService does after a drop, and compares
+//the connect time of plain TCP, TLS with a full handshake every time and TLS resuming through a shared SSLContext.
+//Every connection sends one message and waits for its echo before closing, so the data path is checked as well.
+//
+//  ./gradlew :perf:tlsReconnectTest -PtlsReconnectTestArgs="--reconnects 500 --size 1024"
+public final class TlsReconnectTest {
+
+    private static final String USAGE = "Options:\n"
+            + "  --reconnects 200       measured connections per scenario\n"
+            + "  --warmup 50            connections per scenario before measuring\n"
+            + "  --size 256             bytes echoed on every connection\n";
+
+    private static final String KEY_STORE = "/loadtest.p12";
+    private static final char[] KEY_STORE_PASSWORD = "loadtest".toCharArray();
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final int mReconnects;
+    private final int mWarmup;
+    private final int mMessageSize;
+
+    private TlsReconnectTest(int reconnects, int warmup, int messageSize) {
+        mReconnects = reconnects;
+        mWarmup = warmup;
+        mMessageSize = messageSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int reconnects = 200;
+        int warmup = 50;
+        int messageSize = 256;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "--reconnects":
+                        reconnects = parsePositive(args[i], args[i + 1]);
+                        break;
+                    case "--warmup":
+                        warmup = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--size":
+                        messageSize = parsePositive(args[i], args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        new TlsReconnectTest(reconnects, warmup, messageSize).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = TlsReconnectTest.class.getResourceAsStream(KEY_STORE);
+        try {
+            keyStore.load(in, KEY_STORE_PASSWORD);
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEY_STORE_PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        X509TrustManager trustManager = (X509TrustManager) trustManagerFactory.getTrustManagers()[0];
+
+        LoadTestServer tcpServer = new LoadTestServer(LoadTestServer.Mode.ECHO, 1);
+        TlsEchoServer tlsServer = new TlsEchoServer(serverContext);
+        try {
+            System.out.println(String.format(Locale.ROOT, "%d reconnects after %d warmup, %d byte echo on each",
+                    mReconnects, mWarmup, mMessageSize));
+            LatencyRecorder.Snapshot tcp = measure("tcp", tcpServer.getPort(), null, trustManager);
+            LatencyRecorder.Snapshot full = measure("tls full handshake", tlsServer.getPort(), Boolean.FALSE, trustManager);
+            LatencyRecorder.Snapshot resumed = measure("tls resumed", tlsServer.getPort(), Boolean.TRUE, trustManager);
+            System.out.println(String.format(Locale.ROOT, "  p50 connect time over tcp: full handshake %.1fx, resumed %.1fx",
+                    ratio(full, tcp), ratio(resumed, tcp)));
+        } finally {
+            tlsServer.close();
+            tcpServer.close();
+        }
+    }
+
+    //isSharedContext null runs plain TCP. Otherwise a new SSLContext per connection forces full handshakes, a shared
+    //one lets every connection after the first resume.
+    private LatencyRecorder.Snapshot measure(String name, int port, Boolean isSharedContext, X509TrustManager trustManager)
+            throws Exception {
+        CountingTrustManager countingTrustManager = new CountingTrustManager(trustManager);
+        SSLContext sharedContext = isSharedContext == Boolean.TRUE ? newClientContext(countingTrustManager) : null;
+        Connection connection = new Connection(mMessageSize);
+        LatencyRecorder connectTime = new LatencyRecorder();
+        LatencyRecorder roundTrip = new LatencyRecorder();
+        for (int i = -mWarmup; i < mReconnects; i++) {
+            if (isSharedContext == Boolean.FALSE) {
+                connection.mConnection.enableTls(newClientContext(countingTrustManager), LOOPBACK_VERIFIER);
+            } else if (sharedContext != null) {
+                connection.mConnection.enableTls(sharedContext, LOOPBACK_VERIFIER);
+            }
+            if (i == 0) {
+                countingTrustManager.mCheckedChains.set(0);
+            }
+            connection.connectAndEcho(port);
+            if (i >= 0) {
+                connectTime.record(connection.mConnectNanos / 1000);
+                roundTrip.record(connection.mRoundTripNanos / 1000);
+            }
+        }
+        LatencyRecorder.Snapshot connectSnapshot = connectTime.snapshot();
+        LatencyRecorder.Snapshot roundTripSnapshot = roundTrip.snapshot();
+        String handshakes = isSharedContext == null ? "" : String.format(Locale.ROOT, ", %d of %d verified a certificate",
+                countingTrustManager.mCheckedChains.get(), mReconnects);
+        System.out.println(String.format(Locale.ROOT, "  %-20s connect p50 %s p99 %s, first echo p50 %s%s", name,
+                LoadTest.formatMicros(connectSnapshot.getPercentileMicros(50)),
+                LoadTest.formatMicros(connectSnapshot.getPercentileMicros(99)),
+                LoadTest.formatMicros(roundTripSnapshot.getPercentileMicros(50)), handshakes));
+        return connectSnapshot;
+    }
+
+    private static SSLContext newClientContext(X509TrustManager trustManager) throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{trustManager}, null);
+        return sslContext;
+    }
+
+    private static double ratio(LatencyRecorder.Snapshot snapshot, LatencyRecorder.Snapshot baseline) {
+        return snapshot.getPercentileMicros(50) / (double) Math.max(1, baseline.getPercentileMicros(50));
+    }
+
+    private static int parsePositive(String name, String value) {
+        int parsed = Integer.parseInt(value);
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return parsed;
+    }
+
+    //The certificate is trusted explicitly and only issued for the loopback address the test connects to.
+    private static final HostnameVerifier LOOPBACK_VERIFIER = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession sslSession) {
+            return LoadTestServer.HOST.equals(hostname);
+        }
+    };
+
+    //A resumed session skips certificate verification, so the calls counted here are the full handshakes.
+    private static final class CountingTrustManager implements X509TrustManager {
+
+        private final X509TrustManager mDelegate;
+        private final AtomicInteger mCheckedChains = new AtomicInteger();
+
+        private CountingTrustManager(X509TrustManager delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            mDelegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            mCheckedChains.incrementAndGet();
+            mDelegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return mDelegate.getAcceptedIssuers();
+        }
+    }
+
+    private static final class Connection implements SocketConnectionListener {
+
+        private final ClientSocketConnection mConnection = new ClientSocketConnection(this);
+        private final ByteBuffer mMessage;
+        private final AtomicLong mEchoedBytes = new AtomicLong();
+        private volatile CountDownLatch mConnectedLatch;
+        private volatile CountDownLatch mEchoLatch;
+        private volatile boolean isFailed;
+        private long mConnectNanos;
+        private long mRoundTripNanos;
+
+        private Connection(int messageSize) {
+            mMessage = ByteBuffer.allocateDirect(messageSize);
+            mConnection.setReceiveMode(ClientSocketConnection.ReceiveMode.BINARY);
+        }
+
+        private void connectAndEcho(int port) throws Exception {
+            //openSocket is ignored until the last connect task has finished, which is just after onClientConnected.
+            while (mConnection.isConnecting()) {
+                Thread.sleep(1);
+            }
+            mConnectedLatch = new CountDownLatch(1);
+            mEchoLatch = new CountDownLatch(1);
+            mEchoedBytes.set(0);
+            isFailed = false;
+            long startNanos = System.nanoTime();
+            mConnection.openSocket(LoadTestServer.HOST, port, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            if (!mConnectedLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS) || isFailed) {
+                throw new IllegalStateException("Connect failed");
+            }
+            long connectedNanos = System.nanoTime();
+            mMessage.clear();
+            mConnection.writeDataAsync(mMessage);
+            if (!mEchoLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("No echo");
+            }
+            long echoedNanos = System.nanoTime();
+            mConnection.closeSocket();
+            mConnectNanos = connectedNanos - startNanos;
+            mRoundTripNanos = echoedNanos - connectedNanos;
+        }
+
+        @Override
+        public void onClientConnected(String serverIpAddress, int port) {
+            mConnectedLatch.countDown();
+        }
+
+        @Override
+        public void onClientConnecting(String serverIpAddress, int port) {
+        }
+
+        @Override
+        public void onDataReceived(ByteBuffer dataBuffer, String data) {
+            if (mEchoedBytes.addAndGet(dataBuffer.remaining()) >= mMessage.capacity()) {
+                mEchoLatch.countDown();
+            }
+        }
+
+        @Override
+        public void onClientSocketClose() {
+        }
+
+        @Override
+        public void onClientSocketError(SOCKET_ERROR socket_error) {
+            isFailed = true;
+            mConnectedLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package android.os;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+//Stand-in for the Android class. Posted tasks run on one shared daemon thread that plays the main thread.
+public class Handler {
+
+    private static final Executor MAIN_THREAD = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "main");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable runnable) {
+        MAIN_THREAD.execute(runnable);
+        return true;
+    }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+//Stand-in for the Android class, there is no main looper on a plain JVM.
+public final class Looper {
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package android.util;
+
+//Stand-in for the Android class so the library compiles on a plain JVM. Warnings and errors go to System.err,
+//the rest is dropped so logging does not show up in the measurements.
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        System.err.println("W/" + tag + ": " + msg);
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        System.err.println("W/" + tag + ": " + msg);
+        tr.printStackTrace();
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        System.err.println("E/" + tag + ": " + msg);
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        System.err.println("E/" + tag + ": " + msg);
+        tr.printStackTrace();
+        return 0;
+    }
+}